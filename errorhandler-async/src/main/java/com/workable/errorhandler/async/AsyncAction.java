@@ -0,0 +1,46 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler.async;
+
+import com.workable.errorhandler.HandlingContext;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A functional interface representing an asynchronous action that gets executed
+ * upon an error by an {@link com.workable.errorhandler.ErrorHandler}.
+ * <p>
+ * Register it via {@link AsyncErrorHandler#async(AsyncAction)}.
+ */
+public interface AsyncAction {
+
+    /**
+     * @param throwable The Throwable that was checked.
+     * @param context   The context of the error being handled.
+     * @return a stage that completes when the action is done, or null if it completed already
+     */
+    CompletionStage<?> execute(Throwable throwable, HandlingContext context);
+}
@@ -0,0 +1,223 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler.async;
+
+import com.workable.errorhandler.Action;
+import com.workable.errorhandler.ContextKey;
+import com.workable.errorhandler.ErrorHandler;
+import com.workable.errorhandler.HandlingCursor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Handles errors through an {@link ErrorHandler} without blocking the calling thread.
+ * <p>
+ * Actions are executed in the exact order {@link ErrorHandler#handle(Throwable)} would execute them,
+ * parent ErrorHandlers included, honoring {@code skipFollowing}, {@code skipAlways} and {@code skipDefaults}.
+ * Plain actions run on the given {@link Executor}, while an {@link AsyncAction} is awaited without blocking
+ * before moving to the next action.
+ *
+ * <pre>
+ * {@code
+ *   AsyncErrorHandler asyncErrorHandler = AsyncErrorHandler.of(
+ *      ErrorHandler
+ *          .create()
+ *          .on(500, AsyncErrorHandler.async((throwable, context) -> reporter.report(throwable)))
+ *          .always((throwable, handler) -> log(throwable)),
+ *      executor);
+ *
+ *   fetchMessages()
+ *      .exceptionally(asyncErrorHandler.exceptionally(Collections.emptyList()));
+ * }
+ * </pre>
+ */
+public final class AsyncErrorHandler {
+
+    private static final ContextKey<CompletionStage<?>> PENDING_STAGE = ContextKey.create("async.pendingStage");
+
+    private final ErrorHandler errorHandler;
+    private final Executor executor;
+
+    private AsyncErrorHandler(ErrorHandler errorHandler, Executor executor) {
+        this.errorHandler = errorHandler;
+        this.executor = executor;
+    }
+
+    /**
+     * @param errorHandler the {@link ErrorHandler} to handle errors with
+     * @param executor     the default {@link Executor} to execute actions on
+     * @return a new {@code AsyncErrorHandler}
+     */
+    public static AsyncErrorHandler of(ErrorHandler errorHandler, Executor executor) {
+        if (errorHandler == null) {
+            throw new IllegalArgumentException("errorHandler cannot be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+        return new AsyncErrorHandler(errorHandler, executor);
+    }
+
+    /**
+     * Adapt an {@link AsyncAction} to an {@link Action}, so that it can be registered through
+     * any of the {@code on}, {@code otherwise} and {@code always} methods.
+     * <p>
+     * When the error is handled via {@link #handleAsync(Throwable)} the next action is executed
+     * once the stage of this one completes. When it's handled via {@link ErrorHandler#handle(Throwable)}
+     * the stage is started and not waited for.
+     * </p>
+     *
+     * @param action the asynchronous action
+     * @return an {@link Action} to register
+     */
+    public static Action async(final AsyncAction action) {
+        if (action == null) {
+            throw new IllegalArgumentException("action cannot be null");
+        }
+        return ErrorHandler.withContext((throwable, context) -> {
+            CompletionStage<?> stage = action.execute(throwable, context);
+            if (stage != null) {
+                context.put(PENDING_STAGE, stage);
+            }
+        });
+    }
+
+    /**
+     * Handle {@code error} on the default {@link Executor}.
+     *
+     * @param error the error as a {@link Throwable}
+     * @return a stage that completes once all actions have been executed, or
+     * completes exceptionally with the failure of the first action that failed
+     */
+    public CompletionStage<Void> handleAsync(Throwable error) {
+        return handleAsync(error, executor);
+    }
+
+    /**
+     * Handle {@code error} on the given {@link Executor}.
+     *
+     * @param error    the error as a {@link Throwable}
+     * @param executor the {@link Executor} to execute actions on
+     * @return a stage that completes once all actions have been executed, or
+     * completes exceptionally with the failure of the first action that failed
+     */
+    public CompletionStage<Void> handleAsync(Throwable error, final Executor executor) {
+        HandlingCursor cursor = errorHandler.cursor(error);
+        return CompletableFuture.completedFuture(cursor)
+                .thenComposeAsync(c -> proceed(c, executor), executor);
+    }
+
+    /**
+     * A function for {@link CompletableFuture#exceptionally(Function)} that starts handling the error
+     * and recovers with {@code fallback} right away, without waiting for the handling to complete.
+     *
+     * @param <T>      the type of the value
+     * @param fallback the value to recover with
+     * @return a function to pass to {@code exceptionally}
+     */
+    public <T> Function<Throwable, T> exceptionally(final T fallback) {
+        return error -> {
+            handleAsync(unwrap(error));
+            return fallback;
+        };
+    }
+
+    /**
+     * A function for {@link CompletableFuture#handle(BiFunction)} that recovers with {@code fallback}
+     * once the error has been handled. Compose the resulting stage to get the value:
+     *
+     * <pre>
+     * {@code
+     *   future
+     *      .handle(asyncErrorHandler.handle(fallback))
+     *      .thenCompose(Function.identity());
+     * }
+     * </pre>
+     *
+     * @param <T>      the type of the value
+     * @param fallback the value to recover with
+     * @return a function to pass to {@code handle}
+     */
+    public <T> BiFunction<T, Throwable, CompletionStage<T>> handle(final T fallback) {
+        return (value, error) -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(value);
+            }
+            return handleAsync(unwrap(error)).thenApply(ignored -> fallback);
+        };
+    }
+
+    /**
+     * Route the failure of {@code stage}, if any, through the {@link ErrorHandler}.
+     *
+     * @param <T>   the type of the value
+     * @param stage the stage to watch
+     * @return a stage that completes like {@code stage}, but only after its error has been handled
+     */
+    public <T> CompletionStage<T> route(CompletionStage<T> stage) {
+        return stage
+                .handle((value, error) -> {
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(value);
+                    }
+                    return handleAsync(unwrap(error)).thenCompose(ignored -> AsyncErrorHandler.<T>failed(error));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Execute actions until one of them leaves a pending stage behind, then resume once it completes
+     */
+    private static CompletionStage<Void> proceed(final HandlingCursor cursor, final Executor executor) {
+        while (cursor.next() != null) {
+            cursor.execute();
+            CompletionStage<?> pending = cursor.getContext().remove(PENDING_STAGE);
+            if (pending != null) {
+                return pending.thenComposeAsync(ignored -> proceed(cursor, executor), executor);
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        if ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+    private static <T> CompletionStage<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler.async;
+
+import com.workable.errorhandler.BlockExecutor;
+import com.workable.errorhandler.ContextKey;
+import com.workable.errorhandler.ErrorHandler;
+import com.workable.errorhandler.HandlingCursor;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Runs many {@link BlockExecutor}s concurrently, routing each failure through an {@link ErrorHandler},
+ * like {@link ErrorHandler#run(BlockExecutor)} does for a single block.
+ * <p>
+ * {@code runAll} is structured: it returns only once every block has either completed, failed or been
+ * cancelled, so no block outlives the call. Blocks are cancelled when:
+ * <ul>
+ * <li>any block fails and the {@link Policy#FAIL_FAST} policy is used</li>
+ * <li>an action that handles a failure sets the {@link #CANCEL_SIBLINGS} flag on its {@code HandlingContext}</li>
+ * </ul>
+ * Cancelled blocks that have not started are skipped, while running ones are interrupted.
+ *
+ * <pre>
+ * {@code
+ *   ErrorHandler errorHandler = ErrorHandler
+ *      .create()
+ *      .on(401, ErrorHandler.withContext((throwable, context) -> context.set(BlockRunner.CANCEL_SIBLINGS, true)));
+ *
+ *   BlockRunner.Outcome outcome = BlockRunner.of(errorHandler).runAll(importBlocks);
+ * }
+ * </pre>
+ */
+public final class BlockRunner {
+
+    /**
+     * Set by an action to cancel all the other blocks of the same {@code runAll} call
+     */
+    public static final ContextKey.Flag CANCEL_SIBLINGS = ContextKey.flag("runAll.cancelSiblings");
+
+    /**
+     * What to do with the other blocks when a block fails
+     */
+    public enum Policy {
+        /**
+         * Cancel all other blocks on the first failure
+         */
+        FAIL_FAST,
+        /**
+         * Keep running the other blocks, unless an action sets {@link #CANCEL_SIBLINGS}
+         */
+        COLLECT_ALL
+    }
+
+    private static final Method newVirtualThreadPerTaskExecutor = findVirtualThreadFactoryMethod();
+
+    private final ErrorHandler errorHandler;
+
+    private BlockRunner(ErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * @param errorHandler the {@link ErrorHandler} to handle failures with
+     * @return a new {@code BlockRunner}
+     */
+    public static BlockRunner of(ErrorHandler errorHandler) {
+        if (errorHandler == null) {
+            throw new IllegalArgumentException("errorHandler cannot be null");
+        }
+        return new BlockRunner(errorHandler);
+    }
+
+    /**
+     * Run {@code blocks} with the {@link Policy#COLLECT_ALL} policy, see {@link #runAll(Collection, Policy)}.
+     *
+     * @param blocks the blocks to run
+     * @return the outcome of the blocks
+     */
+    public Outcome runAll(Collection<? extends BlockExecutor> blocks) {
+        return runAll(blocks, Policy.COLLECT_ALL);
+    }
+
+    /**
+     * Run {@code blocks} on one virtual thread each, when running on a JVM that supports them.
+     * Otherwise, on a thread pool that is created for this call only.
+     *
+     * @param blocks the blocks to run
+     * @param policy what to do with the other blocks when a block fails
+     * @return the outcome of the blocks
+     */
+    public Outcome runAll(Collection<? extends BlockExecutor> blocks, Policy policy) {
+        ExecutorService executor = newExecutor(blocks.size());
+        try {
+            return runAll(executor, blocks, policy);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Run {@code blocks} on {@code executor}
+     *
+     * @param executor the executor to run blocks on
+     * @param blocks   the blocks to run
+     * @param policy   what to do with the other blocks when a block fails
+     * @return the outcome of the blocks
+     */
+    public Outcome runAll(Executor executor, Collection<? extends BlockExecutor> blocks, Policy policy) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("policy cannot be null");
+        }
+
+        Run run = new Run(new ArrayList<>(blocks), policy);
+
+        for (int i = 0; i < run.blocks.size(); i++) {
+            try {
+                executor.execute(run.task(i));
+            } catch (RejectedExecutionException e) {
+                try {
+                    run.onFailure(i, e);
+                } finally {
+                    run.done.countDown();
+                }
+            }
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                run.done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                run.cancelSiblings(-1);
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        return run.outcome();
+    }
+
+    /**
+     * Handle {@code error} and tell whether an action asked to cancel the sibling blocks
+     */
+    private boolean handle(Throwable error) {
+        HandlingCursor cursor = errorHandler.cursor(error);
+        while (cursor.next() != null) {
+            cursor.execute();
+        }
+        return cursor.getContext().isSet(CANCEL_SIBLINGS);
+    }
+
+    private static ExecutorService newExecutor(int blockCount) {
+        ExecutorService virtualThreads = newVirtualThreadExecutor();
+        if (virtualThreads != null) {
+            return virtualThreads;
+        }
+        int threads = Math.max(1, Math.min(blockCount, 2 * Runtime.getRuntime().availableProcessors()));
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * @return an executor that runs each task on a new virtual thread, or null if the JVM doesn't support them
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        if (newVirtualThreadPerTaskExecutor != null) {
+            try {
+                return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+            } catch (ReflectiveOperationException ignore) {
+                // fall back to platform threads
+            }
+        }
+        return null;
+    }
+
+    private static Method findVirtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The state of a single {@code runAll} call
+     */
+    private final class Run {
+
+        private static final int NEW = 0;
+        private static final int RUNNING = 1;
+        private static final int INTERRUPTING = 2;
+        private static final int FINISHED = 3;
+
+        final List<BlockExecutor> blocks;
+        final Policy policy;
+        final CountDownLatch done;
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final AtomicIntegerArray states;
+        final Thread[] threads;
+        final Throwable[] failures;
+        final boolean[] skipped;
+
+        Run(List<BlockExecutor> blocks, Policy policy) {
+            this.blocks = blocks;
+            this.policy = policy;
+            this.done = new CountDownLatch(blocks.size());
+            this.states = new AtomicIntegerArray(blocks.size());
+            this.threads = new Thread[blocks.size()];
+            this.failures = new Throwable[blocks.size()];
+            this.skipped = new boolean[blocks.size()];
+        }
+
+        Runnable task(final int index) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        execute(index);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+        }
+
+        private void execute(int index) {
+            threads[index] = Thread.currentThread();
+            if (cancelled.get() || !states.compareAndSet(index, NEW, RUNNING)) {
+                skipped[index] = true;
+                return;
+            }
+
+            try {
+                blocks.get(index).invoke();
+            } catch (Exception exception) {
+                if (cancelled.get()) {
+                    skipped[index] = true;
+                } else {
+                    onFailure(index, exception);
+                }
+            } catch (Throwable throwable) {
+                failures[index] = throwable;
+                cancelSiblings(index);
+            } finally {
+                finish(index);
+            }
+        }
+
+        /**
+         * Leave the RUNNING state, making sure that a pending interrupt from
+         * {@link #cancelSiblings(int)} does not leak to the next task of this thread
+         */
+        private void finish(int index) {
+            if (!states.compareAndSet(index, RUNNING, FINISHED)) {
+                while (states.get(index) == INTERRUPTING) {
+                    Thread.yield();
+                }
+                Thread.interrupted();
+            }
+        }
+
+        /**
+         * Record and handle the failure of the block at {@code index}. An action that throws while handling it
+         * takes its place among the failures, with the failure of the block attached as suppressed.
+         */
+        void onFailure(int index, Exception exception) {
+            failures[index] = exception;
+            boolean cancel = policy == Policy.FAIL_FAST;
+            try {
+                cancel |= handle(exception);
+            } catch (Throwable throwable) {
+                if (throwable != exception) {
+                    throwable.addSuppressed(exception);
+                }
+                failures[index] = throwable;
+            } finally {
+                if (cancel) {
+                    cancelSiblings(index);
+                }
+            }
+        }
+
+        /**
+         * Cancel all blocks but the one at {@code index}
+         */
+        void cancelSiblings(int index) {
+            if (!cancelled.compareAndSet(false, true)) {
+                return;
+            }
+            for (int i = 0; i < blocks.size(); i++) {
+                if (i == index) {
+                    continue;
+                }
+                if (states.compareAndSet(i, RUNNING, INTERRUPTING)) {
+                    try {
+                        threads[i].interrupt();
+                    } finally {
+                        states.set(i, FINISHED);
+                    }
+                }
+            }
+        }
+
+        Outcome outcome() {
+            int succeeded = 0;
+            int cancelledCount = 0;
+            List<Throwable> failureList = new ArrayList<>();
+            for (int i = 0; i < blocks.size(); i++) {
+                if (failures[i] != null) {
+                    failureList.add(failures[i]);
+                } else if (skipped[i]) {
+                    cancelledCount++;
+                } else {
+                    succeeded++;
+                }
+            }
+            return new Outcome(succeeded, cancelledCount, failureList);
+        }
+    }
+
+    /**
+     * The aggregated outcome of a {@code runAll} call
+     */
+    public static final class Outcome {
+
+        private final int succeeded;
+        private final int cancelled;
+        private final List<Throwable> failures;
+
+        Outcome(int succeeded, int cancelled, List<Throwable> failures) {
+            this.succeeded = succeeded;
+            this.cancelled = cancelled;
+            this.failures = Collections.unmodifiableList(failures);
+        }
+
+        /**
+         * @return the number of blocks that completed without an error
+         */
+        public int getSucceeded() {
+            return succeeded;
+        }
+
+        /**
+         * @return the number of blocks that were cancelled before completing
+         */
+        public int getCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return the errors of the blocks that failed, in the order the blocks were given
+         */
+        public List<Throwable> getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return true if all blocks completed without an error
+         */
+        public boolean isSuccessful() {
+            return failures.isEmpty() && cancelled == 0;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler.async;
+
+import com.workable.errorhandler.BlockExecutor;
+import com.workable.errorhandler.ErrorHandler;
+import com.workable.errorhandler.ExceptionMatcher;
+import com.workable.errorhandler.Matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link BlockExecutor} like {@link ErrorHandler#run(BlockExecutor)} does, retrying it on failures
+ * that match a retry rule before handling them.
+ * <p>
+ * The first attempt runs on the calling thread. Retries are scheduled on the {@link RetryClock}, by the
+ * {@link RetryPolicy} of the first rule that matches the failure, and run on the executor of the Retrier, so that
+ * a slow attempt never delays the retries of others. The actions of the
+ * ErrorHandler only run for the last failure, once the policy allows no more retries, the failure matches no
+ * rule or the {@link RetryBudget} is empty.
+ *
+ * <pre>
+ * {@code
+ *   Retrier retrier = Retrier
+ *      .builder(errorHandler)
+ *      .retry(RetrofitMatcherFactory.createRange().build(Range.of(500, 599)), RetryPolicy.builder().maxRetries(3).build())
+ *      .retry(SocketTimeoutException.class, RetryPolicy.builder().maxRetries(1).build())
+ *      .budget(RetryBudget.of(0.1, 5))
+ *      .build();
+ *
+ *   retrier.run(() -> api.sync());
+ * }
+ * </pre>
+ */
+public final class Retrier {
+
+    private final ErrorHandler errorHandler;
+    private final Matcher[] matchers;
+    private final RetryPolicy[] policies;
+    private final RetryBudget budget;
+    private final RetryClock clock;
+    private final Executor executor;
+
+    private Retrier(Builder builder) {
+        this.errorHandler = builder.errorHandler;
+        this.matchers = builder.matchers.toArray(new Matcher[builder.matchers.size()]);
+        this.policies = builder.policies.toArray(new RetryPolicy[builder.policies.size()]);
+        this.budget = builder.budget;
+        this.clock = builder.clock;
+        this.executor = builder.executor != null ? builder.executor : DefaultExecutor.INSTANCE;
+    }
+
+    /**
+     * @param errorHandler the {@link ErrorHandler} to handle failures with, once retries are exhausted
+     * @return a new {@link Builder}
+     */
+    public static Builder builder(ErrorHandler errorHandler) {
+        return new Builder(errorHandler);
+    }
+
+    /**
+     * Run {@code blockExecutor}, retrying it as the rules allow.
+     * <p>
+     * Cancelling the returned future stops any retries that have not started yet, without handling the failure.
+     *
+     * @param blockExecutor the block to run
+     * @return a future that completes when an attempt succeeds, or completes exceptionally with the last failure
+     * once it has been handled
+     */
+    public CompletableFuture<Void> run(BlockExecutor blockExecutor) {
+        if (blockExecutor == null) {
+            throw new IllegalArgumentException("blockExecutor cannot be null");
+        }
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        budget.deposit();
+        try {
+            attempt(blockExecutor, 0, result);
+        } catch (Error e) {
+            result.completeExceptionally(e);
+            throw e;
+        }
+        return result;
+    }
+
+    private void attempt(BlockExecutor blockExecutor, int retries, CompletableFuture<Void> result) {
+        if (result.isDone()) {
+            return;
+        }
+
+        Exception failure;
+        try {
+            blockExecutor.invoke();
+            result.complete(null);
+            return;
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        RetryPolicy policy = policyFor(failure);
+        if (policy != null && retries < policy.getMaxRetries() && budget.tryWithdraw(clock.nanoTime())) {
+            long delay = policy.delayNanos(retries, ThreadLocalRandom.current());
+            try {
+                clock.schedule(() -> resume(blockExecutor, retries + 1, failure, result), delay, TimeUnit.NANOSECONDS);
+                return;
+            } catch (RejectedExecutionException e) {
+                // the clock is shut down, handle the failure now
+            }
+        }
+
+        handle(failure, result);
+    }
+
+    private void handle(Exception failure, CompletableFuture<Void> result) {
+        try {
+            errorHandler.handle(failure);
+        } catch (Throwable t) {
+            result.completeExceptionally(t);
+            return;
+        }
+        result.completeExceptionally(failure);
+    }
+
+    /**
+     * Hand a due attempt over to the executor, keeping the clock free to schedule others
+     */
+    private void resume(BlockExecutor blockExecutor, int retries, Exception failure, CompletableFuture<Void> result) {
+        try {
+            executor.execute(() -> retry(blockExecutor, retries, result));
+        } catch (RejectedExecutionException e) {
+            // the executor is shut down, handle the last failure instead
+            handle(failure, result);
+        } catch (Throwable t) {
+            result.completeExceptionally(t);
+        }
+    }
+
+    /**
+     * Run a scheduled attempt. Nothing thrown from it may escape to the executor, which would swallow it
+     * and leave {@code result} incomplete.
+     */
+    private void retry(BlockExecutor blockExecutor, int retries, CompletableFuture<Void> result) {
+        try {
+            attempt(blockExecutor, retries, result);
+        } catch (Throwable t) {
+            result.completeExceptionally(t);
+        }
+    }
+
+    private RetryPolicy policyFor(Exception failure) {
+        for (int i = 0; i < matchers.length; i++) {
+            if (matchers[i].matches(failure)) {
+                return policies[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds a {@link Retrier}. Retry rules are checked in the order they are added in.
+     */
+    public static final class Builder {
+
+        private final ErrorHandler errorHandler;
+        private final List<Matcher> matchers = new ArrayList<>();
+        private final List<RetryPolicy> policies = new ArrayList<>();
+        private RetryBudget budget = RetryBudget.unlimited();
+        private RetryClock clock = RetryClock.system();
+        private Executor executor;
+
+        private Builder(ErrorHandler errorHandler) {
+            if (errorHandler == null) {
+                throw new IllegalArgumentException("errorHandler cannot be null");
+            }
+            this.errorHandler = errorHandler;
+        }
+
+        /**
+         * Retry failures that match {@code matcher} according to {@code policy}
+         *
+         * @param matcher the matcher
+         * @param policy  the retry policy
+         * @return this builder
+         */
+        public Builder retry(Matcher matcher, RetryPolicy policy) {
+            if (matcher == null) {
+                throw new IllegalArgumentException("matcher cannot be null");
+            }
+            if (policy == null) {
+                throw new IllegalArgumentException("policy cannot be null");
+            }
+            matchers.add(matcher);
+            policies.add(policy);
+            return this;
+        }
+
+        /**
+         * Retry failures that are instances of {@code exceptionClass} according to {@code policy}
+         *
+         * @param exceptionClass the class of the failures
+         * @param policy         the retry policy
+         * @return this builder
+         */
+        public Builder retry(Class<? extends Exception> exceptionClass, RetryPolicy policy) {
+            return retry(new ExceptionMatcher(exceptionClass), policy);
+        }
+
+        /**
+         * @param budget the budget to take retries from, shared with other retriers if needed; unlimited by default
+         * @return this builder
+         */
+        public Builder budget(RetryBudget budget) {
+            if (budget == null) {
+                throw new IllegalArgumentException("budget cannot be null");
+            }
+            this.budget = budget;
+            return this;
+        }
+
+        /**
+         * @param clock the clock to schedule retries on, {@link RetryClock#system()} by default
+         * @return this builder
+         */
+        public Builder clock(RetryClock clock) {
+            if (clock == null) {
+                throw new IllegalArgumentException("clock cannot be null");
+            }
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @param executor the executor to run retries on; by default a virtual thread per retry when the JVM
+         *                 supports them, the {@link ForkJoinPool#commonPool() common pool} otherwise
+         * @return this builder
+         */
+        public Builder executor(Executor executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("executor cannot be null");
+            }
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @return a new {@link Retrier}
+         */
+        public Retrier build() {
+            return new Retrier(this);
+        }
+    }
+
+    /**
+     * Holds the default executor, so that it's only created when first used
+     */
+    private static final class DefaultExecutor {
+        static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            ExecutorService virtualThreads = BlockRunner.newVirtualThreadExecutor();
+            return virtualThreads != null ? virtualThreads : ForkJoinPool.commonPool();
+        }
+    }
+}
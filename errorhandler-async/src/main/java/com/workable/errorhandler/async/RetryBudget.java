@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler.async;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the retries of one or more {@link Retrier}s, so that they can't multiply the load on a failing service.
+ * <p>
+ * Every call deposits {@code retryRatio} of a retry into the budget and every retry withdraws a whole one.
+ * On top of that the budget refills by {@code minRetriesPerSecond}, so that a few retries are allowed while
+ * there are few calls. Once the budget is empty failures are handled without retrying.
+ * The balance is capped at ten seconds' worth of {@code minRetriesPerSecond}, and at least ten retries.
+ *
+ * <pre>
+ * {@code
+ *   // retries add at most 10% to the calls, plus 5 retries per second
+ *   RetryBudget budget = RetryBudget.of(0.1, 5);
+ * }
+ * </pre>
+ */
+public final class RetryBudget {
+
+    // Balances are kept in thousandths of a retry
+    private static final long RETRY = 1000;
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private static final RetryBudget UNLIMITED = new RetryBudget(0, 0, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final long deposit;
+    private final long refillIntervalNanos;
+    private final long capacity;
+
+    private final AtomicLong balance;
+    private final AtomicLong lastRefill = new AtomicLong(NEVER);
+
+    private RetryBudget(long deposit, long refillIntervalNanos, long capacity, long balance) {
+        this.deposit = deposit;
+        this.refillIntervalNanos = refillIntervalNanos;
+        this.capacity = capacity;
+        this.balance = new AtomicLong(balance);
+    }
+
+    /**
+     * @param retryRatio          the retries allowed per call, e.g. 0.1 to add at most 10% to the load
+     * @param minRetriesPerSecond the retries allowed per second regardless of the number of calls
+     * @return a new budget
+     */
+    public static RetryBudget of(double retryRatio, int minRetriesPerSecond) {
+        if (retryRatio < 0 || retryRatio > 1000) {
+            throw new IllegalArgumentException("retryRatio must be between 0 and 1000");
+        }
+        if (minRetriesPerSecond < 0) {
+            throw new IllegalArgumentException("minRetriesPerSecond cannot be negative");
+        }
+        long refillIntervalNanos = minRetriesPerSecond == 0
+                ? 0
+                : Math.max(1, TimeUnit.SECONDS.toNanos(1) / (minRetriesPerSecond * RETRY));
+        long capacity = Math.max(10, 10L * minRetriesPerSecond) * RETRY;
+        // start with a second's worth of retries
+        long balance = Math.max(1, minRetriesPerSecond) * RETRY;
+        return new RetryBudget((long) (retryRatio * RETRY), refillIntervalNanos, capacity, balance);
+    }
+
+    /**
+     * @return a budget that never runs out
+     */
+    public static RetryBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * @return the number of retries the budget currently allows
+     */
+    public long getBalance() {
+        return balance.get() / RETRY;
+    }
+
+    /**
+     * Record a call
+     */
+    void deposit() {
+        if (this != UNLIMITED && deposit > 0) {
+            add(deposit);
+        }
+    }
+
+    /**
+     * @param nowNanos the current time
+     * @return true if a retry may be made, which is then taken out of the budget
+     */
+    boolean tryWithdraw(long nowNanos) {
+        if (this == UNLIMITED) {
+            return true;
+        }
+        refill(nowNanos);
+        for (;;) {
+            long current = balance.get();
+            if (current < RETRY) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - RETRY)) {
+                return true;
+            }
+        }
+    }
+
+    private void refill(long nowNanos) {
+        if (refillIntervalNanos == 0) {
+            return;
+        }
+        long last = lastRefill.get();
+        if (last == NEVER) {
+            lastRefill.compareAndSet(NEVER, nowNanos);
+            return;
+        }
+        long amount = (nowNanos - last) / refillIntervalNanos;
+        // whoever moves lastRefill forward adds the amount, the others see nothing left to add
+        if (amount > 0 && lastRefill.compareAndSet(last, last + amount * refillIntervalNanos)) {
+            add(amount);
+        }
+    }
+
+    private void add(long amount) {
+        for (;;) {
+            long current = balance.get();
+            long next = Math.min(capacity, current + amount);
+            if (next == current || balance.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler.async;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time source and timer of a {@link Retrier}.
+ * <p>
+ * Retries are scheduled on the clock instead of sleeping on the thread of the failed attempt, and handed over
+ * to the executor of the Retrier once due, so the clock only needs a thread to keep time with.
+ * Tests may implement it to control time and run retries when they choose.
+ */
+public interface RetryClock {
+
+    /**
+     * @return the current time in nanoseconds, from an arbitrary origin, like {@link System#nanoTime()}
+     */
+    long nanoTime();
+
+    /**
+     * Run {@code task} once {@code delay} has passed
+     *
+     * @param task  the task
+     * @param delay the delay
+     * @param unit  the unit of {@code delay}
+     * @throws java.util.concurrent.RejectedExecutionException if the task cannot be scheduled
+     */
+    void schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * @param scheduler the scheduler to time retries with
+     * @return a clock that reads {@link System#nanoTime()} and schedules tasks on {@code scheduler}
+     */
+    static RetryClock of(ScheduledExecutorService scheduler) {
+        if (scheduler == null) {
+            throw new IllegalArgumentException("scheduler cannot be null");
+        }
+        return new RetryClock() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+
+            @Override
+            public void schedule(Runnable task, long delay, TimeUnit unit) {
+                scheduler.schedule(task, delay, unit);
+            }
+        };
+    }
+
+    /**
+     * @return a clock that schedules tasks on a shared daemon thread
+     */
+    static RetryClock system() {
+        return SystemClock.INSTANCE;
+    }
+
+    /**
+     * Holds the shared clock, so that its thread is only started when first used
+     */
+    final class SystemClock {
+        static final RetryClock INSTANCE = of(Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "error-handler-retry");
+            thread.setDaemon(true);
+            return thread;
+        }));
+
+        private SystemClock() {
+        }
+    }
+}
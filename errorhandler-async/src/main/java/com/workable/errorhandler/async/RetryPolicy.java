@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler.async;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How many times and how late to retry a failed block, see {@link Retrier}.
+ * <p>
+ * The delay before retry {@code n}, counting from zero, is {@code initialDelay * multiplier^n}, capped at
+ * {@code maxDelay}. Jitter then takes a random part of it away, so that clients failing together don't retry
+ * together: with a jitter of {@code 0.5} the delay is anywhere from half to all of it, with {@code 1} anywhere
+ * from zero to all of it.
+ *
+ * <pre>
+ * {@code
+ *   RetryPolicy policy = RetryPolicy
+ *      .builder()
+ *      .maxRetries(3)
+ *      .backoff(100, 5000, TimeUnit.MILLISECONDS)
+ *      .jitter(0.5)
+ *      .build();
+ * }
+ * </pre>
+ */
+public final class RetryPolicy {
+
+    private final int maxRetries;
+    private final long initialDelayNanos;
+    private final long maxDelayNanos;
+    private final double multiplier;
+    private final double jitter;
+
+    private RetryPolicy(Builder builder) {
+        this.maxRetries = builder.maxRetries;
+        this.initialDelayNanos = builder.initialDelayNanos;
+        this.maxDelayNanos = builder.maxDelayNanos;
+        this.multiplier = builder.multiplier;
+        this.jitter = builder.jitter;
+    }
+
+    /**
+     * @return a new {@link Builder}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the number of retries after the first attempt
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param retry  the number of retries made so far
+     * @param random the source of jitter
+     * @return the delay before the next retry, in nanoseconds
+     */
+    long delayNanos(int retry, Random random) {
+        double delay = initialDelayNanos * Math.pow(multiplier, retry);
+        if (delay > maxDelayNanos) {
+            delay = maxDelayNanos;
+        }
+        return (long) (delay - delay * jitter * random.nextDouble());
+    }
+
+    /**
+     * Builds a {@link RetryPolicy}
+     */
+    public static final class Builder {
+
+        private int maxRetries = 3;
+        private long initialDelayNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        private long maxDelayNanos = TimeUnit.SECONDS.toNanos(10);
+        private double multiplier = 2;
+        private double jitter = 1;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxRetries the number of retries after the first attempt, 3 by default
+         * @return this builder
+         */
+        public Builder maxRetries(int maxRetries) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("maxRetries cannot be negative");
+            }
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * @param initialDelay the delay before the first retry, 100 milliseconds by default
+         * @param maxDelay     the maximum delay before a retry, 10 seconds by default
+         * @param unit         the unit of the delays
+         * @return this builder
+         */
+        public Builder backoff(long initialDelay, long maxDelay, TimeUnit unit) {
+            if (initialDelay < 0 || maxDelay < initialDelay) {
+                throw new IllegalArgumentException("delays must satisfy 0 <= initialDelay <= maxDelay");
+            }
+            this.initialDelayNanos = unit.toNanos(initialDelay);
+            this.maxDelayNanos = unit.toNanos(maxDelay);
+            return this;
+        }
+
+        /**
+         * @param multiplier how much longer each delay is than the previous one, 2 by default
+         * @return this builder
+         */
+        public Builder multiplier(double multiplier) {
+            if (multiplier < 1) {
+                throw new IllegalArgumentException("multiplier must be at least 1");
+            }
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * @param jitter the part of each delay to randomize, from 0 for none to 1 (the default) for all of it
+         * @return this builder
+         */
+        public Builder jitter(double jitter) {
+            if (jitter < 0 || jitter > 1) {
+                throw new IllegalArgumentException("jitter must be between 0 and 1");
+            }
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * @return a new {@link RetryPolicy}
+         */
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
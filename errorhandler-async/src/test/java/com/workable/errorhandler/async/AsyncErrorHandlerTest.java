@@ -0,0 +1,142 @@
+package com.workable.errorhandler.async;
+
+import com.workable.errorhandler.ErrorHandler;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * {@link AsyncErrorHandler} unit tests
+ */
+public class AsyncErrorHandlerTest extends TestCase {
+
+    private ExecutorService executor;
+    private List<String> calls;
+
+    protected void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        calls = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    protected void tearDown() {
+        executor.shutdownNow();
+        ErrorHandler.defaultErrorHandler().clear();
+    }
+
+    @Test
+    public void testWaitsForAsyncActionsInOrder() throws Exception {
+        CompletableFuture<Void> report = new CompletableFuture<>();
+        CountDownLatch reporting = new CountDownLatch(1);
+
+        ErrorHandler.defaultErrorHandler()
+                .on(IllegalStateException.class, (throwable, handler) -> calls.add("default"));
+
+        ErrorHandler errorHandler = ErrorHandler
+                .create()
+                .on(IllegalStateException.class, AsyncErrorHandler.async((throwable, context) -> {
+                    calls.add("report");
+                    reporting.countDown();
+                    return report;
+                }))
+                .on(IllegalStateException.class, (throwable, handler) -> calls.add("after report"))
+                .always((throwable, handler) -> calls.add("always"));
+
+        CompletionStage<Void> stage = AsyncErrorHandler.of(errorHandler, executor)
+                .handleAsync(new IllegalStateException());
+
+        assertTrue(reporting.await(1, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("report"), calls);
+        assertFalse(stage.toCompletableFuture().isDone());
+
+        report.complete(null);
+        stage.toCompletableFuture().get(1, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("report", "after report", "always", "default"), calls);
+    }
+
+    @Test
+    public void testSkipFollowingFromAsyncAction() throws Exception {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(IllegalStateException.class, AsyncErrorHandler.async((throwable, context) -> {
+                    context.skipFollowing();
+                    return CompletableFuture.runAsync(() -> calls.add("report"), executor);
+                }))
+                .on(IllegalStateException.class, (throwable, handler) -> calls.add("skipped"))
+                .otherwise((throwable, handler) -> calls.add("otherwise"));
+
+        AsyncErrorHandler.of(errorHandler, executor)
+                .handleAsync(new IllegalStateException())
+                .toCompletableFuture()
+                .get(1, TimeUnit.SECONDS);
+
+        assertEquals(Collections.singletonList("report"), calls);
+    }
+
+    @Test
+    public void testFailedAsyncActionFailsHandling() throws Exception {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(IllegalStateException.class, AsyncErrorHandler.async((throwable, context) -> {
+                    CompletableFuture<Void> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(new UnsupportedOperationException());
+                    return failed;
+                }))
+                .always((throwable, handler) -> calls.add("always"));
+
+        try {
+            AsyncErrorHandler.of(errorHandler, executor)
+                    .handleAsync(new IllegalStateException())
+                    .toCompletableFuture()
+                    .get(1, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof UnsupportedOperationException);
+        }
+
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void testFutureAdapters() throws Exception {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(IllegalStateException.class, (throwable, handler) -> calls.add("handled"));
+
+        AsyncErrorHandler asyncErrorHandler = AsyncErrorHandler.of(errorHandler, executor);
+
+        String value = CompletableFuture.<String>supplyAsync(() -> {
+                    throw new IllegalStateException();
+                }, executor)
+                .handle(asyncErrorHandler.handle("fallback"))
+                .thenCompose(Function.identity())
+                .get(1, TimeUnit.SECONDS);
+
+        assertEquals("fallback", value);
+        assertEquals(Collections.singletonList("handled"), calls);
+
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException());
+
+        try {
+            asyncErrorHandler.route(failed).toCompletableFuture().get(1, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        assertEquals(Arrays.asList("handled", "handled"), calls);
+    }
+}
@@ -0,0 +1,169 @@
+package com.workable.errorhandler.async;
+
+import com.workable.errorhandler.BlockExecutor;
+import com.workable.errorhandler.ErrorHandler;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link BlockRunner} unit tests
+ */
+public class BlockRunnerTest extends TestCase {
+
+    private ExecutorService executor;
+    private AtomicInteger handled;
+
+    protected void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        handled = new AtomicInteger();
+    }
+
+    protected void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCollectAll() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(IllegalStateException.class, (throwable, handler) -> handled.incrementAndGet());
+
+        List<BlockExecutor> blocks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final int n = i;
+            blocks.add(() -> {
+                if (n % 5 == 0) {
+                    throw new IllegalStateException("block " + n);
+                }
+            });
+        }
+
+        BlockRunner.Outcome outcome = BlockRunner.of(errorHandler).runAll(blocks);
+
+        assertEquals(16, outcome.getSucceeded());
+        assertEquals(0, outcome.getCancelled());
+        assertEquals(4, outcome.getFailures().size());
+        assertEquals("block 0", outcome.getFailures().get(0).getMessage());
+        assertEquals(4, handled.get());
+        assertFalse(outcome.isSuccessful());
+    }
+
+    @Test
+    public void testFailFastCancelsSiblings() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(IllegalStateException.class, (throwable, handler) -> handled.incrementAndGet())
+                .on(InterruptedException.class, (throwable, handler) -> fail("cancellation is not an error"));
+
+        CountDownLatch started = new CountDownLatch(1);
+
+        List<BlockExecutor> blocks = Arrays.asList(
+                () -> {
+                    started.countDown();
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                },
+                () -> {
+                    started.await();
+                    throw new IllegalStateException();
+                },
+                () -> Thread.sleep(TimeUnit.SECONDS.toMillis(10))
+        );
+
+        long start = System.nanoTime();
+        BlockRunner.Outcome outcome = BlockRunner.of(errorHandler).runAll(executor, blocks, BlockRunner.Policy.FAIL_FAST);
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(0, outcome.getSucceeded());
+        assertEquals(2, outcome.getCancelled());
+        assertEquals(1, outcome.getFailures().size());
+        assertEquals(1, handled.get());
+    }
+
+    @Test
+    public void testFailingActionStillFailsFast() {
+        IllegalArgumentException actionFailure = new IllegalArgumentException("action");
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(IllegalStateException.class, (throwable, handler) -> {
+                    throw actionFailure;
+                });
+
+        CountDownLatch started = new CountDownLatch(1);
+
+        List<BlockExecutor> blocks = Arrays.asList(
+                () -> {
+                    started.countDown();
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                },
+                () -> {
+                    started.await();
+                    throw new IllegalStateException("block");
+                }
+        );
+
+        long start = System.nanoTime();
+        BlockRunner.Outcome outcome = BlockRunner.of(errorHandler).runAll(executor, blocks, BlockRunner.Policy.FAIL_FAST);
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(1, outcome.getCancelled());
+        assertEquals(Arrays.asList(actionFailure), outcome.getFailures());
+        assertEquals("block", actionFailure.getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    public void testFailingActionOnRejectedBlock() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(RejectedExecutionException.class, (throwable, handler) -> {
+                    throw new IllegalArgumentException("action");
+                });
+
+        executor.shutdown();
+        BlockRunner.Outcome outcome = BlockRunner.of(errorHandler)
+                .runAll(executor, Arrays.<BlockExecutor>asList(() -> { }, () -> { }), BlockRunner.Policy.FAIL_FAST);
+
+        assertEquals(2, outcome.getFailures().size());
+        assertEquals("action", outcome.getFailures().get(0).getMessage());
+    }
+
+    @Test
+    public void testActionCancelsSiblings() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(UnsupportedOperationException.class, (throwable, handler) -> handled.incrementAndGet())
+                .on(IllegalStateException.class, ErrorHandler.withContext((throwable, context) ->
+                        context.set(BlockRunner.CANCEL_SIBLINGS, true)));
+
+        CountDownLatch failed = new CountDownLatch(1);
+
+        List<BlockExecutor> blocks = Arrays.asList(
+                () -> {
+                    throw new UnsupportedOperationException();
+                },
+                () -> {
+                    failed.await();
+                    throw new IllegalStateException();
+                },
+                () -> {
+                    failed.countDown();
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                }
+        );
+
+        BlockRunner.Outcome outcome = BlockRunner.of(errorHandler).runAll(executor, blocks, BlockRunner.Policy.COLLECT_ALL);
+
+        assertEquals(1, outcome.getCancelled());
+        assertEquals(2, outcome.getFailures().size());
+        assertEquals(1, handled.get());
+    }
+}
@@ -0,0 +1,359 @@
+package com.workable.errorhandler.async;
+
+import com.workable.errorhandler.BlockExecutor;
+import com.workable.errorhandler.ErrorHandler;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Retrier} unit tests
+ */
+public class RetrierTest extends TestCase {
+
+    /**
+     * Runs scheduled tasks only when told to, in order of their due time
+     */
+    private static class ManualClock implements RetryClock {
+
+        private static class Task {
+            final long due;
+            final Runnable runnable;
+
+            Task(long due, Runnable runnable) {
+                this.due = due;
+                this.runnable = runnable;
+            }
+        }
+
+        private final PriorityQueue<Task> tasks = new PriorityQueue<>(16, (a, b) -> Long.compare(a.due, b.due));
+        final List<Long> delays = new ArrayList<>();
+        long now;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delay, TimeUnit unit) {
+            delays.add(unit.toMillis(delay));
+            tasks.add(new Task(now + unit.toNanos(delay), task));
+        }
+
+        void advance(long millis) {
+            now += TimeUnit.MILLISECONDS.toNanos(millis);
+            while (!tasks.isEmpty() && tasks.peek().due <= now) {
+                tasks.poll().runnable.run();
+            }
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                Task task = tasks.poll();
+                now = Math.max(now, task.due);
+                task.runnable.run();
+            }
+        }
+    }
+
+    private static final RetryPolicy NO_JITTER = RetryPolicy
+            .builder()
+            .maxRetries(3)
+            .backoff(100, 300, TimeUnit.MILLISECONDS)
+            .jitter(0)
+            .build();
+
+    private ManualClock clock;
+    private AtomicInteger handled;
+    private ErrorHandler errorHandler;
+
+    protected void setUp() {
+        clock = new ManualClock();
+        handled = new AtomicInteger();
+        errorHandler = ErrorHandler
+                .createIsolated()
+                .always((throwable, handler) -> handled.incrementAndGet());
+    }
+
+    @Test
+    public void testRetriesWithBackoffBeforeHandling() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<Void> result = Retrier
+                .builder(errorHandler)
+                .retry(IllegalStateException.class, NO_JITTER)
+                .clock(clock)
+                .executor(Runnable::run)
+                .build()
+                .run(() -> {
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException();
+                });
+
+        assertEquals(1, attempts.get());
+        assertFalse(result.isDone());
+
+        clock.advance(99);
+        assertEquals(1, attempts.get());
+        clock.advance(1);
+        assertEquals(2, attempts.get());
+        assertEquals(0, handled.get());
+
+        clock.runAll();
+
+        assertEquals(4, attempts.get());
+        assertEquals(Arrays.asList(100L, 200L, 300L), clock.delays);
+        assertEquals(1, handled.get());
+        assertTrue(result.isCompletedExceptionally());
+        try {
+            result.join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testSucceedsOnRetry() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<Void> result = Retrier
+                .builder(errorHandler)
+                .retry(IllegalStateException.class, NO_JITTER)
+                .clock(clock)
+                .executor(Runnable::run)
+                .build()
+                .run(() -> {
+                    if (attempts.incrementAndGet() < 3) {
+                        throw new IllegalStateException();
+                    }
+                });
+
+        clock.runAll();
+
+        assertEquals(3, attempts.get());
+        assertEquals(0, handled.get());
+        assertNull(result.join());
+    }
+
+    @Test
+    public void testErrorOnRetryCompletesResult() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<Void> result = Retrier
+                .builder(errorHandler)
+                .retry(IllegalStateException.class, NO_JITTER)
+                .clock(clock)
+                .executor(Runnable::run)
+                .build()
+                .run(() -> {
+                    if (attempts.incrementAndGet() == 1) {
+                        throw new IllegalStateException();
+                    }
+                    throw new AssertionError("retry");
+                });
+
+        clock.runAll();
+
+        assertEquals(2, attempts.get());
+        assertEquals(0, handled.get());
+        try {
+            result.join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+    }
+
+    @Test
+    public void testFailingHandlerCompletesResult() {
+        errorHandler.on(IllegalStateException.class, (throwable, handler) -> {
+            throw new AssertionError("handler");
+        });
+
+        CompletableFuture<Void> result = Retrier
+                .builder(errorHandler)
+                .retry(IllegalStateException.class, NO_JITTER)
+                .clock(clock)
+                .executor(Runnable::run)
+                .build()
+                .run(() -> {
+                    throw new IllegalStateException();
+                });
+
+        clock.runAll();
+
+        try {
+            result.join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+    }
+
+    @Test
+    public void testUnmatchedFailuresAreHandledAtOnce() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<Void> result = Retrier
+                .builder(errorHandler)
+                .retry(IllegalStateException.class, NO_JITTER)
+                .clock(clock)
+                .executor(Runnable::run)
+                .build()
+                .run(() -> {
+                    attempts.incrementAndGet();
+                    throw new IllegalArgumentException();
+                });
+
+        assertEquals(1, attempts.get());
+        assertEquals(1, handled.get());
+        assertTrue(result.isCompletedExceptionally());
+        assertTrue(clock.delays.isEmpty());
+    }
+
+    @Test
+    public void testBudgetIsSharedAcrossCalls() {
+        AtomicInteger attempts = new AtomicInteger();
+        Retrier retrier = Retrier
+                .builder(errorHandler)
+                .retry(IllegalStateException.class, NO_JITTER)
+                .budget(RetryBudget.of(0, 2))
+                .clock(clock)
+                .executor(Runnable::run)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            retrier.run(() -> {
+                attempts.incrementAndGet();
+                throw new IllegalStateException();
+            });
+        }
+
+        // the budget starts with 2 retries and refills by 2 per second, far slower than the backoff
+        assertEquals(1, handled.get());
+        clock.advance(100);
+        assertEquals(3, handled.get());
+        assertEquals(5, attempts.get());
+
+        clock.advance(1000);
+        retrier.run(() -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException();
+        });
+        clock.runAll();
+
+        assertEquals(4, handled.get());
+        assertEquals(8, attempts.get());
+    }
+
+    @Test
+    public void testCancelStopsRetries() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<Void> result = Retrier
+                .builder(errorHandler)
+                .retry(IllegalStateException.class, NO_JITTER)
+                .clock(clock)
+                .executor(Runnable::run)
+                .build()
+                .run(() -> {
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException();
+                });
+
+        result.cancel(false);
+        clock.runAll();
+
+        assertEquals(1, attempts.get());
+        assertEquals(0, handled.get());
+    }
+
+    @Test
+    public void testRetriesRunOnExecutor() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Retrier retrier = Retrier
+                    .builder(errorHandler)
+                    .retry(IllegalStateException.class, RetryPolicy.builder().backoff(1, 1, TimeUnit.MILLISECONDS).build())
+                    .executor(executor)
+                    .build();
+            CountDownLatch retrying = new CountDownLatch(2);
+            AtomicInteger attempts = new AtomicInteger();
+
+            // each retry waits for the other, so they only complete if they run at the same time
+            BlockExecutor block = () -> {
+                if (attempts.incrementAndGet() <= 2) {
+                    throw new IllegalStateException();
+                }
+                retrying.countDown();
+                if (!retrying.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalArgumentException();
+                }
+            };
+            CompletableFuture<Void> first = retrier.run(block);
+            CompletableFuture<Void> second = retrier.run(block);
+
+            assertNull(first.get(10, TimeUnit.SECONDS));
+            assertNull(second.get(10, TimeUnit.SECONDS));
+            assertEquals(0, handled.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejectedRetryIsHandled() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+
+        CompletableFuture<Void> result = Retrier
+                .builder(errorHandler)
+                .retry(IllegalStateException.class, NO_JITTER)
+                .clock(clock)
+                .executor(executor)
+                .build()
+                .run(() -> {
+                    throw new IllegalStateException();
+                });
+
+        clock.runAll();
+
+        assertEquals(1, handled.get());
+        assertTrue(result.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testJitteredDelays() {
+        RetryPolicy policy = RetryPolicy
+                .builder()
+                .backoff(100, 1000, TimeUnit.NANOSECONDS)
+                .multiplier(3)
+                .jitter(0.5)
+                .build();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100; i++) {
+            long first = policy.delayNanos(0, random);
+            long third = policy.delayNanos(2, random);
+            long capped = policy.delayNanos(5, random);
+
+            assertTrue(first >= 50 && first <= 100);
+            assertTrue(third >= 450 && third <= 900);
+            assertTrue(capped >= 500 && capped <= 1000);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler.benchmarks;
+
+import com.workable.errorhandler.Action;
+import com.workable.errorhandler.BlockExecutor;
+import com.workable.errorhandler.ErrorHandler;
+import com.workable.errorhandler.matchers.retrofit.RetrofitMatcherFactory;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import retrofit2.Response;
+import retrofit2.adapter.rxjava.HttpException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ErrorHandler#handle(Throwable)} and {@link ErrorHandler#run(BlockExecutor)}
+ * for a varying number of rules, parent chain depth and kind of matchers.
+ * <p>
+ * The error is created once during setup, so the stack trace capture is not part of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+
+    public enum Mix {
+        EXCEPTION,
+        ERROR_CODE,
+        MIXED
+    }
+
+    private static final List<Class<? extends Exception>> EXCEPTION_CLASSES = Arrays.asList(
+            IllegalStateException.class,
+            IllegalArgumentException.class,
+            UnsupportedOperationException.class,
+            IOException.class,
+            SocketTimeoutException.class,
+            ConnectException.class,
+            RuntimeException.class
+    );
+
+    private static final Action NO_OP = new Action() {
+        @Override
+        public void execute(Throwable throwable, ErrorHandler errorHandler) {
+            // measure the dispatch only
+        }
+    };
+
+    @Param({"1", "10", "100", "500"})
+    public int rules;
+
+    @Param({"1", "2", "4"})
+    public int depth;
+
+    @Param({"EXCEPTION", "ERROR_CODE", "MIXED"})
+    public Mix mix;
+
+    private ErrorHandler errorHandler;
+    private Exception error;
+    private BlockExecutor failingBlock;
+
+    @Setup
+    public void setUp() {
+        ErrorHandler.defaultErrorHandler().clear();
+
+        List<ErrorHandler> chain = createChain(depth);
+        chain.get(chain.size() - 1).bindClass(Integer.class, RetrofitMatcherFactory.create());
+
+        for (int i = 0; i < rules; i++) {
+            ErrorHandler level = chain.get(i % chain.size());
+            if (mix == Mix.EXCEPTION || (mix == Mix.MIXED && i % 2 == 0)) {
+                level.on(EXCEPTION_CLASSES.get(i % EXCEPTION_CLASSES.size()), NO_OP);
+            } else {
+                level.on(400 + (i % 200), NO_OP);
+            }
+        }
+
+        errorHandler = chain.get(0);
+        error = mix == Mix.EXCEPTION ? new SocketTimeoutException("Read timed out") : httpException(503);
+        failingBlock = new BlockExecutor() {
+            @Override
+            public void invoke() throws Exception {
+                throw error;
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        ErrorHandler.defaultErrorHandler().clear();
+    }
+
+    @Benchmark
+    public void handle() {
+        errorHandler.handle(error);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void handleContended() {
+        errorHandler.handle(error);
+    }
+
+    @Benchmark
+    public void run() {
+        errorHandler.run(failingBlock);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void runContended() {
+        errorHandler.run(failingBlock);
+    }
+
+    /**
+     * @param depth the number of handlers in the chain
+     * @return the handlers of the chain, starting from the one to dispatch to and ending with the root
+     */
+    private static List<ErrorHandler> createChain(int depth) {
+        List<ErrorHandler> chain = new ArrayList<>();
+        if (depth <= 1) {
+            chain.add(ErrorHandler.createIsolated());
+        } else {
+            chain.add(ErrorHandler.defaultErrorHandler());
+            chain.add(0, ErrorHandler.create());
+            while (chain.size() < depth) {
+                chain.add(0, ErrorHandler.create(chain.get(0)));
+            }
+        }
+        return chain;
+    }
+
+    private static HttpException httpException(int code) {
+        return new HttpException(Response.error(code, ResponseBody.create(MediaType.parse("text/plain"), "")));
+    }
+}
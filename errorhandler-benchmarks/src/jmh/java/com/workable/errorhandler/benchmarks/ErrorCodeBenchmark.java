@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler.benchmarks;
+
+import com.workable.errorhandler.Action;
+import com.workable.errorhandler.ErrorHandler;
+import com.workable.errorhandler.Matcher;
+import com.workable.errorhandler.MatcherFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ErrorHandler#handleCode(Object)} with {@link ErrorHandler#handle(Throwable)}
+ * for code that has an error code at hand and would otherwise create an exception for it.
+ * <p>
+ * Unlike {@link DispatchBenchmark}, the exception is created on every operation, stack trace included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ErrorCodeBenchmark {
+
+    private static final Action NO_OP = new Action() {
+        @Override
+        public void execute(Throwable throwable, ErrorHandler errorHandler) {
+            // measure the dispatch only
+        }
+    };
+
+    @Param({"10", "100"})
+    public int rules;
+
+    private ErrorHandler errorHandler;
+
+    @Setup
+    public void setUp() {
+        errorHandler = ErrorHandler
+                .createIsolated()
+                .bindClass(Integer.class, new MatcherFactory<Integer>() {
+                    @Override
+                    public Matcher build(final Integer errorCode) {
+                        return new Matcher() {
+                            @Override
+                            public boolean matches(Throwable throwable) {
+                                return throwable instanceof StatusException
+                                        && ((StatusException) throwable).status == errorCode;
+                            }
+                        };
+                    }
+                });
+
+        for (int i = 0; i < rules; i++) {
+            errorHandler.on(400 + i, NO_OP);
+        }
+    }
+
+    @Benchmark
+    public void handleException() {
+        errorHandler.handle(new StatusException(400 + rules - 1));
+    }
+
+    @Benchmark
+    public void handleCode() {
+        errorHandler.handleCode(400 + rules - 1);
+    }
+
+    private static final class StatusException extends Exception {
+        final int status;
+
+        StatusException(int status) {
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler.benchmarks;
+
+import com.workable.errorhandler.Action;
+import com.workable.errorhandler.ErrorHandler;
+import com.workable.errorhandler.specializer.Specializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ErrorHandler#handle(Throwable)} of a frozen ErrorHandler with one specialized by
+ * {@link Specializer}, for the same rules.
+ * <p>
+ * The error matches the last rule, so every rule gets checked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpecializerBenchmark {
+
+    private static final List<Class<? extends Exception>> EXCEPTION_CLASSES = Arrays.asList(
+            IllegalStateException.class,
+            IllegalArgumentException.class,
+            UnsupportedOperationException.class,
+            ArithmeticException.class,
+            ConnectException.class
+    );
+
+    private static final Action NO_OP = new Action() {
+        @Override
+        public void execute(Throwable throwable, ErrorHandler errorHandler) {
+            // measure the dispatch only
+        }
+    };
+
+    @Param({"1", "5", "20"})
+    public int rules;
+
+    private ErrorHandler frozen;
+    private ErrorHandler specialized;
+    private Exception error;
+
+    @Setup
+    public void setUp() {
+        ErrorHandler errorHandler = ErrorHandler.createIsolated();
+        for (int i = 0; i < rules - 1; i++) {
+            errorHandler.on(EXCEPTION_CLASSES.get(i % EXCEPTION_CLASSES.size()), NO_OP);
+        }
+        errorHandler.on(SocketTimeoutException.class, NO_OP);
+
+        frozen = errorHandler.freeze();
+        specialized = Specializer.specialize(errorHandler);
+        error = new SocketTimeoutException("Read timed out");
+    }
+
+    @Benchmark
+    public void frozen() {
+        frozen.handle(error);
+    }
+
+    @Benchmark
+    public void specialized() {
+        specialized.handle(error);
+    }
+}
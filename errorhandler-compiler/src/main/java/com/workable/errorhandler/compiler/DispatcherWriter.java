@@ -0,0 +1,385 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler.compiler;
+
+import com.workable.errorhandler.compiler.ErrorRulesProcessor.Rule;
+import com.workable.errorhandler.compiler.ErrorRulesProcessor.RulesClass;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.type.TypeMirror;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the source of the dispatcher of a {@link RulesClass}.
+ * <p>
+ * The dispatcher is a single {@code Matcher} and {@code ContextAction} registered via {@code on}, plus one
+ * action for the {@code otherwise} and one for the {@code always} rules, if any. Error classes are matched
+ * through {@code instanceof} checks, and error codes through a single {@code switch} that yields a bit per
+ * matching {@code @OnCode} rule, computed once per handled error and kept in its {@code HandlingContext}.
+ * The generated code sticks to Java 7, for Android.
+ */
+final class DispatcherWriter {
+
+    private static final String SUFFIX = "_Dispatcher";
+
+    private final RulesClass rulesClass;
+    private final String packageName;
+    private final String simpleName;
+    private final String rulesType;
+    private final StringBuilder out = new StringBuilder();
+
+    DispatcherWriter(RulesClass rulesClass) {
+        this.rulesClass = rulesClass;
+        this.rulesType = rulesClass.type.getQualifiedName().toString();
+
+        String name = rulesClass.type.getSimpleName().toString();
+        Element enclosing = rulesClass.type.getEnclosingElement();
+        while (enclosing.getKind() != ElementKind.PACKAGE) {
+            name = enclosing.getSimpleName() + "_" + name;
+            enclosing = enclosing.getEnclosingElement();
+        }
+        this.packageName = ((PackageElement) enclosing).getQualifiedName().toString();
+        this.simpleName = name + SUFFIX;
+    }
+
+    String getQualifiedName() {
+        return packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+    }
+
+    String write() {
+        List<Rule> onRules = rulesOf(Rule.Kind.ON_ERROR, Rule.Kind.ON_CODE);
+        List<Rule> otherwiseRules = rulesOf(Rule.Kind.OTHERWISE);
+        List<Rule> alwaysRules = rulesOf(Rule.Kind.ALWAYS);
+
+        line(0, "// Generated by ErrorRulesProcessor. Do not modify.");
+        if (!packageName.isEmpty()) {
+            line(0, "package " + packageName + ";");
+        }
+        line(0, "");
+        boolean codeRules = rulesClass.codeRuleCount > 0;
+        line(0, "import com.workable.errorhandler.ContextAction;");
+        if (codeRules) {
+            line(0, "import com.workable.errorhandler.ContextKey;");
+            line(0, "import com.workable.errorhandler.ContextMatcher;");
+        }
+        line(0, "import com.workable.errorhandler.ErrorHandler;");
+        line(0, "import com.workable.errorhandler.HandlingContext;");
+        if (!codeRules) {
+            line(0, "import com.workable.errorhandler.Matcher;");
+        }
+        line(0, "");
+        line(0, "/**");
+        line(0, " * Dispatcher for the rules of {@link " + rulesType + "}");
+        line(0, " */");
+        line(0, "public final class " + simpleName + " implements "
+                + (codeRules ? "ContextMatcher" : "Matcher") + ", ContextAction {");
+        line(0, "");
+        if (codeRules) {
+            line(1, "/**");
+            line(1, " * The code rules of the error being handled, computed once per error by its first dispatcher");
+            line(1, " */");
+            line(1, "private static final ContextKey<Long> CODE_RULES = ContextKey.create(\"" + simpleName + ".codeRules\");");
+            line(0, "");
+        }
+        line(1, "private final " + rulesType + " rules;");
+        line(0, "");
+        line(1, "public " + simpleName + "(" + rulesType + " rules) {");
+        line(2, "if (rules == null) {");
+        line(3, "throw new IllegalArgumentException(\"rules cannot be null\");");
+        line(2, "}");
+        line(2, "this.rules = rules;");
+        line(1, "}");
+        line(0, "");
+
+        writeInstall(onRules, otherwiseRules, alwaysRules);
+        writeMatches(onRules);
+        writeExecute(onRules);
+        writeRunAll("otherwise", otherwiseRules);
+        writeRunAll("always", alwaysRules);
+        if (rulesClass.codeRuleCount > 0) {
+            writeCodeRules();
+        }
+
+        // every member ends with a blank line, drop the last one
+        out.setLength(out.length() - 1);
+        line(0, "}");
+        return out.toString();
+    }
+
+    private void writeInstall(List<Rule> onRules, List<Rule> otherwiseRules, List<Rule> alwaysRules) {
+        line(1, "/**");
+        line(1, " * Register the rules of {@code rules} on {@code errorHandler}");
+        line(1, " *");
+        line(1, " * @param errorHandler the ErrorHandler to configure");
+        line(1, " * @param rules        the rules");
+        line(1, " * @return {@code errorHandler} - to use in command chains");
+        line(1, " */");
+        line(1, "public static ErrorHandler install(ErrorHandler errorHandler, " + rulesType + " rules) {");
+        line(2, "final " + simpleName + " dispatcher = new " + simpleName + "(rules);");
+        if (!onRules.isEmpty()) {
+            line(2, "errorHandler.on(dispatcher, ErrorHandler.withContext(dispatcher));");
+        }
+        writeRegistration("otherwise", otherwiseRules);
+        writeRegistration("always", alwaysRules);
+        line(2, "return errorHandler;");
+        line(1, "}");
+        line(0, "");
+    }
+
+    private void writeRegistration(String method, List<Rule> rules) {
+        if (rules.isEmpty()) {
+            return;
+        }
+        line(2, "errorHandler." + method + "(ErrorHandler.withContext(new ContextAction() {");
+        line(3, "@Override");
+        line(3, "public void execute(Throwable throwable, HandlingContext context) {");
+        line(4, "dispatcher." + method + "(throwable, context);");
+        line(3, "}");
+        line(2, "}));");
+    }
+
+    private void writeMatches(List<Rule> onRules) {
+        writeMatches(onRules, "Throwable throwable", "codeRules(throwable)");
+        if (rulesClass.codeRuleCount > 0) {
+            writeMatches(onRules, "Throwable throwable, HandlingContext context", "codeRules(throwable, context)");
+        }
+    }
+
+    private void writeMatches(List<Rule> onRules, String parameters, String codeRules) {
+        List<String> conditions = new ArrayList<>();
+        for (Rule rule : onRules) {
+            if (rule.kind == Rule.Kind.ON_ERROR) {
+                for (TypeMirror errorClass : rule.errorClasses) {
+                    String check = "throwable instanceof " + errorClass;
+                    if (!conditions.contains(check)) {
+                        conditions.add(check);
+                    }
+                }
+            }
+        }
+        if (rulesClass.codeRuleCount > 0) {
+            conditions.add(codeRules + " != 0L");
+        }
+
+        line(1, "@Override");
+        line(1, "public boolean matches(" + parameters + ") {");
+        if (conditions.isEmpty()) {
+            line(2, "return false;");
+        } else {
+            line(2, "return " + conditions.get(0) + (conditions.size() == 1 ? ";" : ""));
+            for (int i = 1; i < conditions.size(); i++) {
+                line(4, "|| " + conditions.get(i) + (i == conditions.size() - 1 ? ";" : ""));
+            }
+        }
+        line(1, "}");
+        line(0, "");
+    }
+
+    private void writeExecute(List<Rule> onRules) {
+        line(1, "@Override");
+        line(1, "public void execute(Throwable throwable, HandlingContext context) {");
+        if (rulesClass.codeRuleCount > 0) {
+            line(2, "long codeRules = codeRules(throwable, context);");
+        }
+        for (int i = 0; i < onRules.size(); i++) {
+            Rule rule = onRules.get(i);
+            String condition = rule.kind == Rule.Kind.ON_ERROR
+                    ? errorClassCondition(rule)
+                    : "(codeRules & " + bit(rule) + ") != 0L";
+            if (i > 0) {
+                condition = "!context.isSkipFollowing() && " + (rule.kind == Rule.Kind.ON_ERROR
+                        && rule.errorClasses.size() > 1 ? "(" + condition + ")" : condition);
+            }
+            line(2, "if (" + condition + ") {");
+            line(3, call(rule) + ";");
+            line(2, "}");
+        }
+        line(1, "}");
+        line(0, "");
+    }
+
+    private void writeRunAll(String method, List<Rule> rules) {
+        if (rules.isEmpty()) {
+            return;
+        }
+        line(1, "void " + method + "(Throwable throwable, HandlingContext context) {");
+        for (Rule rule : rules) {
+            line(2, call(rule) + ";");
+        }
+        line(1, "}");
+        line(0, "");
+    }
+
+    private void writeCodeRules() {
+        Map<String, Long> bitsByLabel = new LinkedHashMap<>();
+        for (Rule rule : rulesClass.rules) {
+            if (rule.kind == Rule.Kind.ON_CODE) {
+                for (String label : rule.codeLabels) {
+                    Long bits = bitsByLabel.get(label);
+                    bitsByLabel.put(label, (bits == null ? 0L : bits) | (1L << rule.codeBit));
+                }
+            }
+        }
+
+        line(1, "/**");
+        line(1, " * @return the code rules of {@code throwable}, computing them only if no matcher of the same error did");
+        line(1, " */");
+        line(1, "private long codeRules(Throwable throwable, HandlingContext context) {");
+        line(2, "Long codeRules = context.get(CODE_RULES);");
+        line(2, "if (codeRules == null) {");
+        line(3, "codeRules = codeRules(throwable);");
+        line(3, "context.put(CODE_RULES, codeRules);");
+        line(2, "}");
+        line(2, "return codeRules;");
+        line(1, "}");
+        line(0, "");
+        line(1, "/**");
+        line(1, " * @return a bit for each {@code @OnCode} rule the code of {@code throwable} matches");
+        line(1, " */");
+        line(1, "private long codeRules(Throwable throwable) {");
+        line(2, rulesClass.codeType + " code = " + target(rulesClass.errorCodeMethod.getModifiers())
+                + "." + rulesClass.errorCodeMethod.getSimpleName() + "(throwable);");
+        line(2, "if (code == null) {");
+        line(3, "return 0L;");
+        line(2, "}");
+        line(2, "switch (code) {");
+        for (Map.Entry<String, Long> entry : bitsByLabel.entrySet()) {
+            line(3, "case " + entry.getKey() + ":");
+            line(4, "return " + longLiteral(entry.getValue()) + ";");
+        }
+        line(3, "default:");
+        line(4, "return 0L;");
+        line(2, "}");
+        line(1, "}");
+        line(0, "");
+    }
+
+    private String errorClassCondition(Rule rule) {
+        StringBuilder condition = new StringBuilder();
+        for (TypeMirror errorClass : rule.errorClasses) {
+            if (condition.length() > 0) {
+                condition.append(" || ");
+            }
+            condition.append("throwable instanceof ").append(errorClass);
+        }
+        return condition.toString();
+    }
+
+    private String call(Rule rule) {
+        StringBuilder call = new StringBuilder()
+                .append(target(rule.method.getModifiers()))
+                .append('.')
+                .append(rule.method.getSimpleName())
+                .append('(');
+        for (int i = 0; i < rule.arguments.size(); i++) {
+            if (i > 0) {
+                call.append(", ");
+            }
+            switch (rule.arguments.get(i)) {
+                case ERROR:
+                    call.append(rule.errorType == null ? "throwable" : "(" + rule.errorType + ") throwable");
+                    break;
+                case CONTEXT:
+                    call.append("context");
+                    break;
+                default:
+                    call.append("context.getErrorHandler()");
+                    break;
+            }
+        }
+        return call.append(')').toString();
+    }
+
+    private String target(Set<Modifier> modifiers) {
+        return modifiers.contains(Modifier.STATIC) ? rulesType : "rules";
+    }
+
+    private List<Rule> rulesOf(Rule.Kind... kinds) {
+        List<Rule> rules = new ArrayList<>();
+        for (Rule rule : rulesClass.rules) {
+            for (Rule.Kind kind : kinds) {
+                if (rule.kind == kind) {
+                    rules.add(rule);
+                }
+            }
+        }
+        return rules;
+    }
+
+    private void line(int indent, String line) {
+        if (!line.isEmpty()) {
+            for (int i = 0; i < indent; i++) {
+                out.append("    ");
+            }
+        }
+        out.append(line).append('\n');
+    }
+
+    private static String bit(Rule rule) {
+        return longLiteral(1L << rule.codeBit);
+    }
+
+    private static String longLiteral(long value) {
+        return "0x" + Long.toHexString(value) + "L";
+    }
+
+    static String stringLiteral(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    literal.append("\\\"");
+                    break;
+                case '\\':
+                    literal.append("\\\\");
+                    break;
+                case '\n':
+                    literal.append("\\n");
+                    break;
+                case '\r':
+                    literal.append("\\r");
+                    break;
+                case '\t':
+                    literal.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        literal.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        literal.append(c);
+                    }
+            }
+        }
+        return literal.append('"').toString();
+    }
+}
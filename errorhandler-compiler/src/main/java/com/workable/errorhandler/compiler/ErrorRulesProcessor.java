@@ -0,0 +1,434 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler.compiler;
+
+import com.workable.errorhandler.annotations.Always;
+import com.workable.errorhandler.annotations.ErrorCode;
+import com.workable.errorhandler.annotations.ErrorRules;
+import com.workable.errorhandler.annotations.OnCode;
+import com.workable.errorhandler.annotations.OnError;
+import com.workable.errorhandler.annotations.Otherwise;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a dispatcher for every class annotated with {@link ErrorRules}.
+ * <p>
+ * Rules are checked while compiling, so that a misconfigured rule fails the build instead of
+ * failing at the first error handled. See {@link DispatcherWriter} for the generated code.
+ */
+public final class ErrorRulesProcessor extends AbstractProcessor {
+
+    /**
+     * Code rules of a class are tracked in the bits of a {@code long}
+     */
+    static final int MAX_CODE_RULES = 64;
+
+    private static final List<Class<? extends Annotation>> RULE_ANNOTATIONS = Arrays.asList(
+            OnError.class, OnCode.class, Otherwise.class, Always.class);
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(ErrorRules.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(ErrorRules.class)) {
+            RulesClass rulesClass = parse(element);
+            if (rulesClass != null) {
+                write(rulesClass);
+            }
+        }
+        return true;
+    }
+
+    private RulesClass parse(Element element) {
+        if (element.getKind() != ElementKind.CLASS) {
+            return error(element, "@ErrorRules can only be applied to classes");
+        }
+
+        TypeElement type = (TypeElement) element;
+        if (type.getModifiers().contains(Modifier.PRIVATE)) {
+            return error(type, "@ErrorRules classes must not be private");
+        }
+        if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            return error(type, "@ErrorRules nested classes must be static");
+        }
+        if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            return error(type, "@ErrorRules classes must be top level or nested classes");
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            return error(type, "@ErrorRules classes must not be generic");
+        }
+
+        RulesClass rulesClass = new RulesClass(type);
+        boolean valid = true;
+
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getAnnotation(ErrorCode.class) != null) {
+                valid &= parseErrorCode(rulesClass, method);
+            }
+        }
+
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            valid &= parseRule(rulesClass, method);
+        }
+
+        if (rulesClass.codeRuleCount > MAX_CODE_RULES) {
+            return error(type, "@ErrorRules classes support up to " + MAX_CODE_RULES + " @OnCode rules");
+        }
+
+        return valid ? rulesClass : null;
+    }
+
+    private boolean parseErrorCode(RulesClass rulesClass, ExecutableElement method) {
+        if (!isCallable(method)) {
+            return false;
+        }
+        if (rulesClass.errorCodeMethod != null) {
+            return fail(method, "only one @ErrorCode method is allowed per class");
+        }
+        if (ruleAnnotationCount(method) > 0) {
+            return fail(method, "@ErrorCode methods cannot be rules");
+        }
+        if (method.getParameters().size() != 1 || !isThrowable(method.getParameters().get(0).asType())) {
+            return fail(method, "@ErrorCode methods must accept a single Throwable");
+        }
+        if (throwsCheckedExceptions(method)) {
+            return fail(method, "@ErrorCode methods must not throw checked exceptions");
+        }
+
+        TypeMirror codeType = method.getReturnType();
+        CodeKind codeKind = codeKind(codeType);
+        if (codeKind == null) {
+            return fail(method, "@ErrorCode methods must return an Integer, a String or an enum");
+        }
+
+        rulesClass.errorCodeMethod = method;
+        rulesClass.codeType = codeType;
+        rulesClass.codeKind = codeKind;
+        return true;
+    }
+
+    private boolean parseRule(RulesClass rulesClass, ExecutableElement method) {
+        int count = ruleAnnotationCount(method);
+        if (count == 0) {
+            return true;
+        }
+        if (count > 1) {
+            return fail(method, "methods can have only one of @OnError, @OnCode, @Otherwise and @Always");
+        }
+        if (!isCallable(method)) {
+            return false;
+        }
+        if (method.getReturnType().getKind() != TypeKind.VOID) {
+            return fail(method, "rule methods must return void");
+        }
+        if (throwsCheckedExceptions(method)) {
+            return fail(method, "rule methods must not throw checked exceptions");
+        }
+
+        Rule rule = new Rule(method);
+
+        if (method.getAnnotation(OnError.class) != null) {
+            rule.kind = Rule.Kind.ON_ERROR;
+            for (AnnotationValue value : annotationValues(method, OnError.class)) {
+                rule.errorClasses.add((TypeMirror) value.getValue());
+            }
+            if (rule.errorClasses.isEmpty()) {
+                return fail(method, "@OnError needs at least one class");
+            }
+        } else if (method.getAnnotation(OnCode.class) != null) {
+            rule.kind = Rule.Kind.ON_CODE;
+            if (rulesClass.errorCodeMethod == null) {
+                return fail(method, "@OnCode rules need an @ErrorCode method in the same class");
+            }
+            for (String code : method.getAnnotation(OnCode.class).value()) {
+                String label = caseLabel(rulesClass, code);
+                if (label == null) {
+                    return fail(method, "\"" + code + "\" is not a valid code of type " + rulesClass.codeType);
+                }
+                if (!rule.codeLabels.contains(label)) {
+                    rule.codeLabels.add(label);
+                }
+            }
+            if (rule.codeLabels.isEmpty()) {
+                return fail(method, "@OnCode needs at least one code");
+            }
+            rule.codeBit = rulesClass.codeRuleCount++;
+        } else if (method.getAnnotation(Otherwise.class) != null) {
+            rule.kind = Rule.Kind.OTHERWISE;
+        } else {
+            rule.kind = Rule.Kind.ALWAYS;
+        }
+
+        if (!parseParameters(rule)) {
+            return false;
+        }
+
+        rulesClass.rules.add(rule);
+        return true;
+    }
+
+    private boolean parseParameters(Rule rule) {
+        Types types = processingEnv.getTypeUtils();
+        TypeMirror contextType = typeOf("com.workable.errorhandler.HandlingContext");
+        TypeMirror errorHandlerType = typeOf("com.workable.errorhandler.ErrorHandler");
+
+        for (VariableElement parameter : rule.method.getParameters()) {
+            TypeMirror type = parameter.asType();
+            Rule.Argument argument;
+
+            if (types.isSameType(type, contextType)) {
+                argument = Rule.Argument.CONTEXT;
+            } else if (types.isSameType(type, errorHandlerType)) {
+                argument = Rule.Argument.ERROR_HANDLER;
+            } else if (isThrowable(type)) {
+                argument = Rule.Argument.ERROR;
+            } else if (types.isAssignable(type, typeOf("java.lang.Throwable"))) {
+                if (rule.kind != Rule.Kind.ON_ERROR) {
+                    return fail(parameter, "only @OnError rules can accept a subclass of Throwable");
+                }
+                for (TypeMirror errorClass : rule.errorClasses) {
+                    if (!types.isAssignable(errorClass, type)) {
+                        return fail(parameter, errorClass + " cannot be passed as " + type);
+                    }
+                }
+                argument = Rule.Argument.ERROR;
+                rule.errorType = types.erasure(type);
+            } else {
+                return fail(parameter, "rule methods can only accept the error, HandlingContext and ErrorHandler");
+            }
+
+            if (rule.arguments.contains(argument)) {
+                return fail(parameter, "rule methods can accept each of the error, HandlingContext and ErrorHandler once");
+            }
+            rule.arguments.add(argument);
+        }
+        return true;
+    }
+
+    private String caseLabel(RulesClass rulesClass, String code) {
+        switch (rulesClass.codeKind) {
+            case INTEGER:
+                try {
+                    return Integer.toString(Integer.parseInt(code.trim()));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            case STRING:
+                return DispatcherWriter.stringLiteral(code);
+            default:
+                TypeElement enumType = (TypeElement) processingEnv.getTypeUtils().asElement(rulesClass.codeType);
+                for (Element constant : enumType.getEnclosedElements()) {
+                    if (constant.getKind() == ElementKind.ENUM_CONSTANT
+                            && constant.getSimpleName().contentEquals(code)) {
+                        return code;
+                    }
+                }
+                return null;
+        }
+    }
+
+    private CodeKind codeKind(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        Types types = processingEnv.getTypeUtils();
+        if (types.isSameType(type, typeOf("java.lang.Integer"))) {
+            return CodeKind.INTEGER;
+        }
+        if (types.isSameType(type, typeOf("java.lang.String"))) {
+            return CodeKind.STRING;
+        }
+        if (((DeclaredType) type).asElement().getKind() == ElementKind.ENUM) {
+            return CodeKind.ENUM;
+        }
+        return null;
+    }
+
+    private boolean isCallable(ExecutableElement method) {
+        if (method.getModifiers().contains(Modifier.PRIVATE)) {
+            return fail(method, "annotated methods must not be private");
+        }
+        if (!method.getTypeParameters().isEmpty()) {
+            return fail(method, "annotated methods must not be generic");
+        }
+        return true;
+    }
+
+    /**
+     * Generated dispatchers call rule and error code methods from {@code Matcher} and {@code ContextAction}
+     * methods, which declare no checked exceptions
+     */
+    private boolean throwsCheckedExceptions(ExecutableElement method) {
+        Types types = processingEnv.getTypeUtils();
+        for (TypeMirror thrown : method.getThrownTypes()) {
+            if (!types.isAssignable(thrown, typeOf("java.lang.RuntimeException"))
+                    && !types.isAssignable(thrown, typeOf("java.lang.Error"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isThrowable(TypeMirror type) {
+        return processingEnv.getTypeUtils().isSameType(type, typeOf("java.lang.Throwable"));
+    }
+
+    private TypeMirror typeOf(String className) {
+        return processingEnv.getElementUtils().getTypeElement(className).asType();
+    }
+
+    private static int ruleAnnotationCount(ExecutableElement method) {
+        int count = 0;
+        for (Class<? extends Annotation> annotation : RULE_ANNOTATIONS) {
+            if (method.getAnnotation(annotation) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Class values have to be read through mirrors, as the classes themselves may not be compiled yet
+     */
+    @SuppressWarnings("unchecked")
+    private static List<? extends AnnotationValue> annotationValues(Element element, Class<? extends Annotation> annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (!annotationType.getQualifiedName().contentEquals(annotation.getCanonicalName())) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("value")) {
+                    return (List<? extends AnnotationValue>) entry.getValue().getValue();
+                }
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private void write(RulesClass rulesClass) {
+        DispatcherWriter writer = new DispatcherWriter(rulesClass);
+        try {
+            JavaFileObject file = processingEnv.getFiler()
+                    .createSourceFile(writer.getQualifiedName(), rulesClass.type);
+            try (Writer out = file.openWriter()) {
+                out.write(writer.write());
+            }
+        } catch (IOException e) {
+            error(rulesClass.type, "could not write " + writer.getQualifiedName() + ": " + e.getMessage());
+        }
+    }
+
+    private <T> T error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+        return null;
+    }
+
+    private boolean fail(Element element, String message) {
+        error(element, message);
+        return false;
+    }
+
+    enum CodeKind {
+        INTEGER, STRING, ENUM
+    }
+
+    /**
+     * An {@link ErrorRules} class and its rules, in declaration order
+     */
+    static final class RulesClass {
+        final TypeElement type;
+        final List<Rule> rules = new ArrayList<>();
+        ExecutableElement errorCodeMethod;
+        TypeMirror codeType;
+        CodeKind codeKind;
+        int codeRuleCount;
+
+        RulesClass(TypeElement type) {
+            this.type = type;
+        }
+    }
+
+    /**
+     * A rule method and the arguments it accepts, in order
+     */
+    static final class Rule {
+        enum Kind {
+            ON_ERROR, ON_CODE, OTHERWISE, ALWAYS
+        }
+
+        enum Argument {
+            ERROR, CONTEXT, ERROR_HANDLER
+        }
+
+        final ExecutableElement method;
+        final List<TypeMirror> errorClasses = new ArrayList<>();
+        final List<String> codeLabels = new ArrayList<>();
+        final List<Argument> arguments = new ArrayList<>();
+        Kind kind;
+        TypeMirror errorType;
+        int codeBit;
+
+        Rule(ExecutableElement method) {
+            this.method = method;
+        }
+    }
+}
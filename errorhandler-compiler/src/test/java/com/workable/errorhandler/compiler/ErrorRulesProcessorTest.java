@@ -0,0 +1,255 @@
+package com.workable.errorhandler.compiler;
+
+import com.workable.errorhandler.ErrorHandler;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link ErrorRulesProcessor} unit tests
+ */
+public class ErrorRulesProcessorTest extends TestCase {
+
+    private static final String RULES = ""
+            + "package test;\n"
+            + "import com.workable.errorhandler.ErrorHandler;\n"
+            + "import com.workable.errorhandler.HandlingContext;\n"
+            + "import com.workable.errorhandler.annotations.*;\n"
+            + "import java.util.*;\n"
+            + "@ErrorRules\n"
+            + "public class AppErrors {\n"
+            + "  public final List<String> calls = new ArrayList<>();\n"
+            + "  public int codeCalls;\n"
+            + "  @ErrorCode Integer codeOf(Throwable throwable) {\n"
+            + "    codeCalls++;\n"
+            + "    return throwable instanceof HttpError ? ((HttpError) throwable).status : null;\n"
+            + "  }\n"
+            + "  @OnError(IllegalStateException.class) void onIllegalState(IllegalStateException error) throws IllegalStateException {\n"
+            + "    calls.add(\"illegalState:\" + error.getMessage());\n"
+            + "  }\n"
+            + "  @OnCode({\"404\", \"410\"}) void onGone(HandlingContext context, Throwable error) {\n"
+            + "    calls.add(\"gone\");\n"
+            + "  }\n"
+            + "  @OnError({HttpError.class, IllegalArgumentException.class}) void onClientError(RuntimeException e, ErrorHandler h) {\n"
+            + "    calls.add(\"client\");\n"
+            + "  }\n"
+            + "  @OnCode(\"500\") void onServerError(HandlingContext context) {\n"
+            + "    calls.add(\"server\");\n"
+            + "    context.skipFollowing();\n"
+            + "  }\n"
+            + "  @OnCode({\"500\", \"410\"}) void onUnreachable() {\n"
+            + "    calls.add(\"unreachable\");\n"
+            + "  }\n"
+            + "  @Otherwise void otherwise(Throwable error) {\n"
+            + "    calls.add(\"otherwise\");\n"
+            + "  }\n"
+            + "  @Always void always() {\n"
+            + "    calls.add(\"always\");\n"
+            + "  }\n"
+            + "}\n";
+
+    private static final String HTTP_ERROR = ""
+            + "package test;\n"
+            + "public class HttpError extends RuntimeException {\n"
+            + "  public final int status;\n"
+            + "  public HttpError(int status) { this.status = status; }\n"
+            + "}\n";
+
+    private File outputDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        outputDir = Files.createTempDirectory("error-rules").toFile();
+    }
+
+    @Test
+    public void testGeneratedDispatcher() throws Exception {
+        assertEquals(Collections.emptyList(), compile(RULES, HTTP_ERROR));
+
+        ClassLoader classLoader = new URLClassLoader(new URL[]{outputDir.toURI().toURL()}, getClass().getClassLoader());
+        Class<?> rulesClass = classLoader.loadClass("test.AppErrors");
+        Class<?> dispatcherClass = classLoader.loadClass("test.AppErrors_Dispatcher");
+        Object rules = rulesClass.newInstance();
+
+        ErrorHandler errorHandler = ErrorHandler.createIsolated();
+        dispatcherClass.getMethod("install", ErrorHandler.class, rulesClass).invoke(null, errorHandler, rules);
+        @SuppressWarnings("unchecked")
+        List<String> calls = (List<String>) rulesClass.getField("calls").get(rules);
+        Class<?> httpError = classLoader.loadClass("test.HttpError");
+
+        errorHandler.handle(new IllegalStateException("foo"));
+        assertEquals(Arrays.asList("illegalState:foo", "always"), calls);
+
+        calls.clear();
+        errorHandler.handle((Throwable) httpError.getConstructor(int.class).newInstance(410));
+        assertEquals(Arrays.asList("gone", "client", "unreachable", "always"), calls);
+        assertEquals(2, rulesClass.getField("codeCalls").getInt(rules));
+
+        calls.clear();
+        errorHandler.handle((Throwable) httpError.getConstructor(int.class).newInstance(500));
+        assertEquals(Arrays.asList("client", "server", "always"), calls);
+
+        calls.clear();
+        errorHandler.handle(new RuntimeException());
+        assertEquals(Arrays.asList("otherwise", "always"), calls);
+    }
+
+    @Test
+    public void testSkipThroughErrorHandlerParameter() throws Exception {
+        String source = ""
+                + "package test;\n"
+                + "import com.workable.errorhandler.ErrorHandler;\n"
+                + "import com.workable.errorhandler.annotations.*;\n"
+                + "import java.util.*;\n"
+                + "@ErrorRules\n"
+                + "public class SkipErrors {\n"
+                + "  public final List<String> calls = new ArrayList<>();\n"
+                + "  @ErrorCode Integer codeOf(Throwable throwable) {\n"
+                + "    return throwable instanceof HttpError ? ((HttpError) throwable).status : null;\n"
+                + "  }\n"
+                + "  @OnCode(\"401\") void onUnauthorized(ErrorHandler h) {\n"
+                + "    calls.add(\"unauthorized\");\n"
+                + "    h.skipFollowing();\n"
+                + "  }\n"
+                + "  @OnError(RuntimeException.class) void onRuntime() {\n"
+                + "    calls.add(\"runtime\");\n"
+                + "  }\n"
+                + "  @Otherwise void otherwise() {\n"
+                + "    calls.add(\"otherwise\");\n"
+                + "  }\n"
+                + "}\n";
+
+        assertEquals(Collections.emptyList(), compile(source, HTTP_ERROR));
+
+        ClassLoader classLoader = new URLClassLoader(new URL[]{outputDir.toURI().toURL()}, getClass().getClassLoader());
+        Class<?> rulesClass = classLoader.loadClass("test.SkipErrors");
+        Class<?> dispatcherClass = classLoader.loadClass("test.SkipErrors_Dispatcher");
+        Class<?> httpError = classLoader.loadClass("test.HttpError");
+
+        for (boolean frozen : new boolean[]{false, true}) {
+            Object rules = rulesClass.newInstance();
+            ErrorHandler errorHandler = ErrorHandler.createIsolated();
+            dispatcherClass.getMethod("install", ErrorHandler.class, rulesClass).invoke(null, errorHandler, rules);
+            if (frozen) {
+                errorHandler = errorHandler.freeze();
+            }
+            @SuppressWarnings("unchecked")
+            List<String> calls = (List<String>) rulesClass.getField("calls").get(rules);
+
+            errorHandler.handle((Throwable) httpError.getConstructor(int.class).newInstance(401));
+            errorHandler.handle(new IllegalStateException());
+            errorHandler.handle((Throwable) httpError.getConstructor(int.class).newInstance(401));
+            assertEquals(Arrays.asList("unauthorized", "runtime", "unauthorized"), calls);
+        }
+    }
+
+    @Test
+    public void testEnumAndStringCodes() throws Exception {
+        String source = ""
+                + "package test;\n"
+                + "import com.workable.errorhandler.annotations.*;\n"
+                + "@ErrorRules\n"
+                + "public class Codes {\n"
+                + "  enum Status { NOT_FOUND, GONE }\n"
+                + "  @ErrorRules static class ByStatus {\n"
+                + "    @ErrorCode Status codeOf(Throwable throwable) { return Status.valueOf(throwable.getMessage()); }\n"
+                + "    @OnCode(\"GONE\") static void onGone() { }\n"
+                + "  }\n"
+                + "  @ErrorCode String codeOf(Throwable throwable) { return throwable.getMessage(); }\n"
+                + "  @OnCode({\"closed:\\\"bar\\\"\", \"\u00e9\"}) void onClosed() { }\n"
+                + "}\n";
+
+        assertEquals(Collections.emptyList(), compile(source));
+        assertTrue(new File(outputDir, "test/Codes_ByStatus_Dispatcher.class").exists());
+        assertTrue(new File(outputDir, "test/Codes_Dispatcher.class").exists());
+    }
+
+    @Test
+    public void testInvalidRules() throws Exception {
+        assertErrors("@OnCode rules need an @ErrorCode method",
+                "@OnCode(\"404\") void onNotFound() { }");
+        assertErrors("annotated methods must not be private",
+                "@OnError(RuntimeException.class) private void onError() { }");
+        assertErrors("rule methods must return void",
+                "@Always String always() { return null; }");
+        assertErrors("cannot be passed as java.lang.IllegalStateException",
+                "@OnError(RuntimeException.class) void onError(IllegalStateException e) { }");
+        assertErrors("only @OnError rules can accept a subclass of Throwable",
+                "@Otherwise void otherwise(RuntimeException e) { }");
+        assertErrors("only one of @OnError, @OnCode, @Otherwise and @Always",
+                "@Otherwise @Always void both() { }");
+        assertErrors("is not a valid code of type java.lang.Integer",
+                "@ErrorCode Integer codeOf(Throwable t) { return null; }\n"
+                        + "@OnCode(\"four\") void onCode() { }");
+        assertErrors("must return an Integer, a String or an enum",
+                "@ErrorCode Long codeOf(Throwable t) { return null; }");
+        assertErrors("rule methods must not throw checked exceptions",
+                "@OnError(RuntimeException.class) void onError() throws Exception { }");
+        assertErrors("@ErrorCode methods must not throw checked exceptions",
+                "@ErrorCode Integer codeOf(Throwable t) throws java.io.IOException { return null; }");
+    }
+
+    private void assertErrors(String expected, String body) throws IOException {
+        List<String> errors = compile(""
+                + "package test;\n"
+                + "import com.workable.errorhandler.annotations.*;\n"
+                + "@ErrorRules\n"
+                + "class Invalid {\n"
+                + body + "\n"
+                + "}\n");
+
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains(expected));
+    }
+
+    private List<String> compile(String... sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singleton(outputDir));
+        fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singleton(outputDir));
+
+        List<JavaFileObject> files = new ArrayList<>();
+        for (final String source : sources) {
+            String name = source.replaceAll("(?s).*?public class (\\w+).*|(?s).*?\nclass (\\w+).*", "$1$2");
+            files.add(new SimpleJavaFileObject(URI.create("string:///test/" + name + ".java"), JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return source;
+                }
+            });
+        }
+
+        List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                "-processor", ErrorRulesProcessor.class.getName(), "-source", "8", "-target", "8", "-nowarn",
+                "-Xlint:-options");
+        compiler.getTask(null, fileManager, diagnostics, options, null, files).call();
+        fileManager.close();
+
+        List<String> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic.getMessage(null));
+            }
+        }
+        return errors;
+    }
+}
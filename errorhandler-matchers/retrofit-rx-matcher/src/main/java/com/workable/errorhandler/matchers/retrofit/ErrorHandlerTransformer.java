@@ -0,0 +1,218 @@
+package com.workable.errorhandler.matchers.retrofit;
+
+import com.workable.errorhandler.ErrorHandler;
+import com.workable.errorhandler.ExceptionMatcher;
+import com.workable.errorhandler.Matcher;
+import rx.Observable;
+import rx.functions.Func1;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routes the errors of {@link Observable}s through an {@link ErrorHandler}, via {@link Observable#compose}.
+ * <p>
+ * After handling an error the stream either propagates it, completes, or resumes with a fallback,
+ * according to the first rule that matches the error. Errors that match no rule are propagated.
+ * A transformer holds no per-stream state, so build it once and share it between any number of streams:
+ *
+ * <pre>
+ * {@code
+ *   static final ErrorHandlerTransformer<User> HANDLE_USER_ERRORS = ErrorHandlerTransformer
+ *      .<User>builder(errorHandler)
+ *      .swallow(HttpException.class)
+ *      .resumeWith(SocketTimeoutException.class, Observable.just(cachedUser))
+ *      .build();
+ *
+ *   api.getUser(id)
+ *      .compose(HANDLE_USER_ERRORS)
+ *      .subscribe(this::showUser);
+ * }
+ * </pre>
+ *
+ * A transformer is typed by the items of its fallbacks, so the compiler checks them against the streams it gets
+ * applied to. One without fallbacks fits streams of any type, through {@link #forType()}.
+ *
+ * @param <T> the type of the items of the streams
+ */
+public final class ErrorHandlerTransformer<T> implements Observable.Transformer<T, T> {
+
+    private final ErrorHandler errorHandler;
+    private final Matcher[] matchers;
+    // the stream to resume with for each rule, null to propagate the error
+    private final Observable<? extends T>[] outcomes;
+    private final boolean hasFallbacks;
+    private final Func1<Throwable, Observable<? extends T>> resume;
+
+    @SuppressWarnings("unchecked")
+    private ErrorHandlerTransformer(Builder<T> builder) {
+        this.errorHandler = builder.errorHandler;
+        this.matchers = builder.matchers.toArray(new Matcher[builder.matchers.size()]);
+        this.outcomes = builder.outcomes.toArray(new Observable[builder.outcomes.size()]);
+        this.hasFallbacks = builder.hasFallbacks;
+        this.resume = new Func1<Throwable, Observable<? extends T>>() {
+            @Override
+            public Observable<? extends T> call(Throwable throwable) {
+                return resume(throwable);
+            }
+        };
+    }
+
+    /**
+     * @param <T>          the type of the items of the streams
+     * @param errorHandler the {@link ErrorHandler} to handle errors with
+     * @return a new {@link Builder}
+     */
+    public static <T> Builder<T> builder(ErrorHandler errorHandler) {
+        return new Builder<>(errorHandler);
+    }
+
+    /**
+     * Apply this transformer to streams of a subtype of {@code T}, e.g. a shared {@code ErrorHandlerTransformer<Object>}
+     * to a stream of {@code User}. Only transformers without fallbacks can, as a fallback of {@code T}s could
+     * not be resumed with in a stream of a subtype.
+     *
+     * @param <R> the type of the items of the stream
+     * @return this transformer, typed for a stream of {@code R}
+     * @throws IllegalStateException if any rule resumes with a fallback
+     */
+    @SuppressWarnings("unchecked")
+    public <R extends T> Observable.Transformer<R, R> forType() {
+        if (hasFallbacks) {
+            throw new IllegalStateException("a transformer with fallbacks only applies to streams of its own type");
+        }
+        return (Observable.Transformer<R, R>) (Observable.Transformer<?, ?>) this;
+    }
+
+    @Override
+    public Observable<T> call(Observable<T> observable) {
+        return observable.onErrorResumeNext(resume);
+    }
+
+    /**
+     * Handle {@code throwable} and decide how the stream goes on
+     *
+     * @param throwable the error of the stream
+     * @return the stream to resume with
+     */
+    private Observable<? extends T> resume(Throwable throwable) {
+        errorHandler.handle(throwable);
+
+        for (int i = 0; i < matchers.length; i++) {
+            if (matchers[i].matches(throwable)) {
+                Observable<? extends T> outcome = outcomes[i];
+                return outcome == null ? Observable.<T>error(throwable) : outcome;
+            }
+        }
+        return Observable.error(throwable);
+    }
+
+    /**
+     * Builds an {@link ErrorHandlerTransformer}. Rules are checked in the order they are added in.
+     *
+     * @param <T> the type of the items of the streams
+     */
+    public static final class Builder<T> {
+
+        private static final Matcher ANY = new Matcher() {
+            @Override
+            public boolean matches(Throwable throwable) {
+                return true;
+            }
+        };
+
+        private final ErrorHandler errorHandler;
+        private final List<Matcher> matchers = new ArrayList<>();
+        private final List<Observable<? extends T>> outcomes = new ArrayList<>();
+        private boolean hasFallbacks;
+
+        private Builder(ErrorHandler errorHandler) {
+            if (errorHandler == null) {
+                throw new IllegalArgumentException("errorHandler cannot be null");
+            }
+            this.errorHandler = errorHandler;
+        }
+
+        /**
+         * Complete the stream after handling errors that match {@code matcher}
+         *
+         * @param matcher the matcher
+         * @return this builder
+         */
+        public Builder<T> swallow(Matcher matcher) {
+            return rule(matcher, Observable.<T>empty());
+        }
+
+        /**
+         * Complete the stream after handling errors that are instances of {@code exceptionClass}
+         *
+         * @param exceptionClass the class of the errors
+         * @return this builder
+         */
+        public Builder<T> swallow(Class<? extends Exception> exceptionClass) {
+            return swallow(new ExceptionMatcher(exceptionClass));
+        }
+
+        /**
+         * Complete the stream after handling any error that matches no earlier rule
+         *
+         * @return this builder
+         */
+        public Builder<T> swallowAll() {
+            return swallow(ANY);
+        }
+
+        /**
+         * Propagate errors that match {@code matcher} after handling them, e.g. to exclude them from a later rule
+         *
+         * @param matcher the matcher
+         * @return this builder
+         */
+        public Builder<T> propagate(Matcher matcher) {
+            return rule(matcher, null);
+        }
+
+        /**
+         * Continue with {@code fallback} after handling errors that match {@code matcher}.
+         * The fallback is subscribed to for every such error.
+         *
+         * @param matcher  the matcher
+         * @param fallback the stream to resume with
+         * @return this builder
+         */
+        public Builder<T> resumeWith(Matcher matcher, Observable<? extends T> fallback) {
+            if (fallback == null) {
+                throw new IllegalArgumentException("fallback cannot be null");
+            }
+            hasFallbacks = true;
+            return rule(matcher, fallback);
+        }
+
+        /**
+         * Continue with {@code fallback} after handling errors that are instances of {@code exceptionClass}
+         *
+         * @param exceptionClass the class of the errors
+         * @param fallback       the stream to resume with
+         * @return this builder
+         */
+        public Builder<T> resumeWith(Class<? extends Exception> exceptionClass, Observable<? extends T> fallback) {
+            return resumeWith(new ExceptionMatcher(exceptionClass), fallback);
+        }
+
+        /**
+         * @return a new {@link ErrorHandlerTransformer} with the rules added so far
+         */
+        public ErrorHandlerTransformer<T> build() {
+            return new ErrorHandlerTransformer<>(this);
+        }
+
+        private Builder<T> rule(Matcher matcher, Observable<? extends T> outcome) {
+            if (matcher == null) {
+                throw new IllegalArgumentException("matcher cannot be null");
+            }
+            matchers.add(matcher);
+            outcomes.add(outcome);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.workable.errorhandler.matchers.retrofit;
+
+import com.workable.errorhandler.Action;
+import com.workable.errorhandler.ContextAction;
+import com.workable.errorhandler.ContextKey;
+import com.workable.errorhandler.ContextMatcher;
+import com.workable.errorhandler.ErrorHandler;
+import com.workable.errorhandler.HandlingContext;
+import com.workable.errorhandler.Matcher;
+import retrofit2.adapter.rxjava.HttpException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dispatches Retrofit Rx {@link HttpException}s to actions by HTTP status, in constant time.
+ * <p>
+ * Registering many codes and {@link Range}s through {@link RetrofitMatcherFactory} costs one
+ * {@link Matcher} per rule, each checking the status again. A dispatcher instead flattens all of its rules
+ * into a table indexed by status, from {@value #MIN_STATUS} to {@value #MAX_STATUS}, which holds
+ * the actions for each status in registration order. Handling an error is a single table lookup: matching it
+ * stores the actions found in the {@link HandlingContext}, for the action of the dispatcher to execute them.
+ *
+ * <pre>
+ * {@code
+ *   HttpStatusDispatcher
+ *      .builder()
+ *      .on(401, (throwable, errorHandler) -> logout())
+ *      .on(Range.of(500, 599), (throwable, errorHandler) -> showServerError())
+ *      .build()
+ *      .registerOn(ErrorHandler.create());
+ * }
+ * </pre>
+ *
+ * The whole dispatcher is a single rule of the {@link ErrorHandler} it's registered on.
+ * Its actions can still call {@code skipFollowing()} to skip the ones after them.
+ */
+public final class HttpStatusDispatcher implements ContextMatcher {
+
+    public static final int MIN_STATUS = 100;
+    public static final int MAX_STATUS = 599;
+
+    private final Action[][] table;
+    private final ContextKey<Action[]> matched = ContextKey.create("httpStatusDispatcher.matched");
+    private final Action action;
+
+    private HttpStatusDispatcher(Action[][] table) {
+        this.table = table;
+        this.action = ErrorHandler.withContext(new ContextAction() {
+            @Override
+            public void execute(Throwable throwable, HandlingContext context) {
+                Action[] actions = context.get(matched);
+                if (actions == null) {
+                    // registered with another matcher, or executed outside of a dispatch
+                    actions = actionsFor(throwable);
+                }
+                if (actions == null) {
+                    return;
+                }
+                for (Action action : actions) {
+                    if (context.isSkipFollowing()) {
+                        break;
+                    }
+                    context.execute(action, throwable);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return a new {@link Builder}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Register this dispatcher on {@code errorHandler}
+     *
+     * @param errorHandler the {@link ErrorHandler} to register on
+     * @return the {@code errorHandler} - to use in command chains
+     */
+    public ErrorHandler registerOn(ErrorHandler errorHandler) {
+        return errorHandler.on(this, action());
+    }
+
+    /**
+     * @return the {@link Action} that executes the actions registered for the status of an error
+     */
+    public Action action() {
+        return action;
+    }
+
+    @Override
+    public boolean matches(Throwable throwable) {
+        return actionsFor(throwable) != null;
+    }
+
+    @Override
+    public boolean matches(Throwable throwable, HandlingContext context) {
+        Action[] actions = actionsFor(throwable);
+        if (actions == null) {
+            return false;
+        }
+        context.put(matched, actions);
+        return true;
+    }
+
+    private Action[] actionsFor(Throwable throwable) {
+        if (!(throwable instanceof HttpException)) {
+            return null;
+        }
+        int status = ((HttpException) throwable).code();
+        if (status < MIN_STATUS || status > MAX_STATUS) {
+            return null;
+        }
+        return table[status - MIN_STATUS];
+    }
+
+    /**
+     * Builds a {@link HttpStatusDispatcher}
+     */
+    public static final class Builder {
+
+        private final List<Range> ranges = new ArrayList<>();
+        private final List<Action> actions = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Execute {@code action} on errors with the given HTTP status
+         *
+         * @param httpStatusCode the HTTP status, from {@value HttpStatusDispatcher#MIN_STATUS} to {@value HttpStatusDispatcher#MAX_STATUS}
+         * @param action         the associated action
+         * @return this builder
+         */
+        public Builder on(int httpStatusCode, Action action) {
+            if (httpStatusCode < MIN_STATUS || httpStatusCode > MAX_STATUS) {
+                throw new IllegalArgumentException("httpStatusCode must be between " + MIN_STATUS + " and " + MAX_STATUS);
+            }
+            return on(Range.of(httpStatusCode, httpStatusCode), action);
+        }
+
+        /**
+         * Execute {@code action} on errors with an HTTP status in {@code range}.
+         * Statuses of the range outside of {@value HttpStatusDispatcher#MIN_STATUS} to {@value HttpStatusDispatcher#MAX_STATUS} are ignored.
+         *
+         * @param range  the range of HTTP statuses
+         * @param action the associated action
+         * @return this builder
+         */
+        public Builder on(Range range, Action action) {
+            if (range == null) {
+                throw new IllegalArgumentException("range cannot be null");
+            }
+            if (action == null) {
+                throw new IllegalArgumentException("action cannot be null");
+            }
+            ranges.add(range);
+            actions.add(action);
+            return this;
+        }
+
+        /**
+         * @return a new {@link HttpStatusDispatcher} with the rules registered so far
+         */
+        public HttpStatusDispatcher build() {
+            Action[][] table = new Action[MAX_STATUS - MIN_STATUS + 1][];
+            // Statuses with the same actions share the same array
+            Map<List<Action>, Action[]> shared = new HashMap<>();
+
+            for (int status = MIN_STATUS; status <= MAX_STATUS; status++) {
+                List<Action> matching = new ArrayList<>();
+                for (int i = 0; i < ranges.size(); i++) {
+                    if (ranges.get(i).contains(status)) {
+                        matching.add(actions.get(i));
+                    }
+                }
+                if (matching.isEmpty()) {
+                    continue;
+                }
+                Action[] array = shared.get(matching);
+                if (array == null) {
+                    array = matching.toArray(new Action[matching.size()]);
+                    shared.put(matching, array);
+                }
+                table[status - MIN_STATUS] = array;
+            }
+
+            return new HttpStatusDispatcher(table);
+        }
+    }
+}
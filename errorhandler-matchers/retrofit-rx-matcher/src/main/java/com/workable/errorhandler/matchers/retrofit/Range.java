@@ -19,6 +19,34 @@ public class Range {
         return new Range(lowerBound, upperBound);
     }
 
+    /**
+     * Parses a Range written as {@code lower-upper}, e.g. {@code 500-599}, or as a single status code
+     * @param value the range to parse
+     *
+     * @return a Range instance
+     * @throws IllegalArgumentException if {@code value} is not a valid range, or its lower bound is greater
+     * than its upper bound
+     */
+    public static Range parse(String value) {
+        int dash = value.indexOf('-');
+        int lowerBound;
+        int upperBound;
+        try {
+            if (dash < 0) {
+                lowerBound = upperBound = Integer.parseInt(value.trim());
+            } else {
+                lowerBound = Integer.parseInt(value.substring(0, dash).trim());
+                upperBound = Integer.parseInt(value.substring(dash + 1).trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid range: " + value);
+        }
+        if (lowerBound > upperBound) {
+            throw new IllegalArgumentException("lower bound is greater than upper bound: " + value);
+        }
+        return new Range(lowerBound, upperBound);
+    }
+
     private Range(int lowerBound, int upperBound) {
         this.lowerBound = lowerBound;
         this.upperBound = upperBound;
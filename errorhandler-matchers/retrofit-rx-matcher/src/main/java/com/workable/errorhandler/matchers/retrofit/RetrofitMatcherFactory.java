@@ -1,5 +1,6 @@
 package com.workable.errorhandler.matchers.retrofit;
 
+import com.workable.errorhandler.CauseMatcher;
 import com.workable.errorhandler.Matcher;
 import com.workable.errorhandler.MatcherFactory;
 import retrofit2.adapter.rxjava.HttpException;
@@ -47,4 +48,36 @@ public class RetrofitMatcherFactory {
             }
         };
     }
+
+    /**
+     * Creates a {@link MatcherFactory} that checks HTTP statuses of the {@link HttpException}s
+     * found in the given {@link CauseMatcher.Scope} of the error, e.g. wrapped in a {@code CompositeException}
+     *
+     * @param scope where to look for the HttpException
+     * @return new MatcherFactory for Retrofit Rx HttpException that works with Integer
+     */
+    public static MatcherFactory<Integer> create(final CauseMatcher.Scope scope) {
+        final MatcherFactory<Integer> factory = create();
+        return new MatcherFactory<Integer>() {
+            public Matcher build(Integer httpStatusCode) {
+                return CauseMatcher.of(scope, factory.build(httpStatusCode));
+            }
+        };
+    }
+
+    /**
+     * Creates a {@link MatcherFactory} that checks if HTTP status of the {@link HttpException}s
+     * found in the given {@link CauseMatcher.Scope} of the error is in given {@link Range}
+     *
+     * @param scope where to look for the HttpException
+     * @return new MatcherFactory for Retrofit Rx HttpException that works with Range
+     */
+    public static MatcherFactory<Range> createRange(final CauseMatcher.Scope scope) {
+        final MatcherFactory<Range> factory = createRange();
+        return new MatcherFactory<Range>() {
+            public Matcher build(Range range) {
+                return CauseMatcher.of(scope, factory.build(range));
+            }
+        };
+    }
 }
@@ -0,0 +1,154 @@
+package com.workable.errorhandler.matchers.retrofit;
+
+import com.workable.errorhandler.Action;
+import com.workable.errorhandler.ErrorHandler;
+import com.workable.errorhandler.Matcher;
+import junit.framework.TestCase;
+import org.junit.Test;
+import retrofit2.adapter.rxjava.HttpException;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+
+import java.net.SocketTimeoutException;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ErrorHandlerTransformerTest extends TestCase {
+
+    interface ActionDelegate {
+        void action1();
+    }
+
+    private ActionDelegate actionDelegateMock;
+    private ErrorHandler errorHandler;
+
+    protected void setUp() throws Exception {
+        actionDelegateMock = mock(ActionDelegate.class);
+        errorHandler = ErrorHandler
+                .createIsolated()
+                .always(new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        actionDelegateMock.action1();
+                    }
+                });
+    }
+
+    @Test
+    public void test_unmatched_errors_are_handled_and_propagated() {
+        ErrorHandlerTransformer<Object> transformer = ErrorHandlerTransformer
+                .builder(errorHandler)
+                .swallow(SocketTimeoutException.class)
+                .build();
+
+        IllegalStateException error = new IllegalStateException();
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        Observable.<String>error(error)
+                .compose(transformer.<String>forType())
+                .subscribe(subscriber);
+
+        subscriber.assertError(error);
+        verify(actionDelegateMock).action1();
+    }
+
+    @Test
+    public void test_swallowed_errors_complete_the_stream() {
+        ErrorHandlerTransformer<Object> transformer = ErrorHandlerTransformer
+                .builder(errorHandler)
+                .swallow(new Matcher() {
+                    @Override
+                    public boolean matches(Throwable throwable) {
+                        return throwable instanceof HttpException && ((HttpException) throwable).code() == 404;
+                    }
+                })
+                .build();
+
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+
+        Observable.just("a")
+                .concatWith(Observable.<String>error(new HttpException(RetrofitHelper.generateErrorResponseWith(404))))
+                .compose(transformer.<String>forType())
+                .subscribe(subscriber);
+
+        subscriber.assertValues("a");
+        subscriber.assertCompleted();
+        subscriber.assertNoErrors();
+        verify(actionDelegateMock).action1();
+    }
+
+    @Test
+    public void test_first_matching_rule_decides() {
+        ErrorHandlerTransformer<String> transformer = ErrorHandlerTransformer
+                .<String>builder(errorHandler)
+                .propagate(RetrofitMatcherFactory.create().build(500))
+                .resumeWith(HttpException.class, Observable.just("fallback"))
+                .swallowAll()
+                .build();
+
+        TestSubscriber<String> resumed = new TestSubscriber<>();
+        Observable.<String>error(new HttpException(RetrofitHelper.generateErrorResponseWith(503)))
+                .compose(transformer)
+                .subscribe(resumed);
+
+        resumed.assertValues("fallback");
+        resumed.assertCompleted();
+
+        TestSubscriber<String> propagated = new TestSubscriber<>();
+        Observable.<String>error(new HttpException(RetrofitHelper.generateErrorResponseWith(500)))
+                .compose(transformer)
+                .subscribe(propagated);
+
+        propagated.assertError(HttpException.class);
+
+        TestSubscriber<String> swallowed = new TestSubscriber<>();
+        Observable.<String>error(new SocketTimeoutException())
+                .compose(transformer)
+                .subscribe(swallowed);
+
+        swallowed.assertNoValues();
+        swallowed.assertCompleted();
+
+        verify(actionDelegateMock, times(3)).action1();
+    }
+
+    @Test
+    public void test_fallbacks_fit_streams_of_their_own_type_only() {
+        ErrorHandlerTransformer<CharSequence> transformer = ErrorHandlerTransformer
+                .<CharSequence>builder(errorHandler)
+                .resumeWith(HttpException.class, Observable.just("fallback"))
+                .build();
+
+        TestSubscriber<CharSequence> resumed = new TestSubscriber<>();
+        Observable.<CharSequence>error(new HttpException(RetrofitHelper.generateErrorResponseWith(503)))
+                .compose(transformer)
+                .subscribe(resumed);
+
+        resumed.assertValues("fallback");
+
+        try {
+            transformer.<StringBuilder>forType();
+            fail("expected forType to reject a transformer with fallbacks");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void test_values_pass_through() {
+        ErrorHandlerTransformer<Object> transformer = ErrorHandlerTransformer
+                .builder(errorHandler)
+                .swallowAll()
+                .build();
+
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        Observable.just(1, 2, 3)
+                .compose(transformer.<Integer>forType())
+                .subscribe(subscriber);
+
+        subscriber.assertValues(1, 2, 3);
+        subscriber.assertCompleted();
+        verify(actionDelegateMock, times(0)).action1();
+    }
+}
@@ -0,0 +1,133 @@
+package com.workable.errorhandler.matchers.retrofit;
+
+import com.workable.errorhandler.Action;
+import com.workable.errorhandler.ErrorHandler;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import retrofit2.adapter.rxjava.HttpException;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+
+public class HttpStatusDispatcherTest extends TestCase {
+
+    interface ActionDelegate {
+        void action1();
+
+        void action2();
+
+        void action3();
+
+        void otherwise();
+    }
+
+    private ActionDelegate actionDelegateMock;
+
+    protected void setUp() throws Exception {
+        actionDelegateMock = mock(ActionDelegate.class);
+    }
+
+    @Test
+    public void test_overlapping_ranges_keep_registration_order() {
+        ErrorHandler errorHandler = HttpStatusDispatcher
+                .builder()
+                .on(Range.of(500, 599), new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        actionDelegateMock.action1();
+                    }
+                })
+                .on(503, new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        actionDelegateMock.action2();
+                    }
+                })
+                .on(Range.of(400, 599), new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        actionDelegateMock.action3();
+                    }
+                })
+                .build()
+                .registerOn(ErrorHandler.createIsolated());
+
+        InOrder testVerifier = inOrder(actionDelegateMock);
+
+        errorHandler.handle(new HttpException(RetrofitHelper.generateErrorResponseWith(503)));
+
+        testVerifier.verify(actionDelegateMock).action1();
+        testVerifier.verify(actionDelegateMock).action2();
+        testVerifier.verify(actionDelegateMock).action3();
+        testVerifier.verifyNoMoreInteractions();
+
+        errorHandler.handle(new HttpException(RetrofitHelper.generateErrorResponseWith(404)));
+
+        testVerifier.verify(actionDelegateMock).action3();
+        Mockito.verifyNoMoreInteractions(actionDelegateMock);
+    }
+
+    @Test
+    public void test_skip_following_and_otherwise() {
+        ErrorHandler errorHandler = HttpStatusDispatcher
+                .builder()
+                .on(401, new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        actionDelegateMock.action1();
+                        errorHandler.skipFollowing();
+                    }
+                })
+                .on(Range.of(400, 499), new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        actionDelegateMock.action2();
+                    }
+                })
+                .build()
+                .registerOn(ErrorHandler.createIsolated())
+                .otherwise(new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        actionDelegateMock.otherwise();
+                    }
+                });
+
+        InOrder testVerifier = inOrder(actionDelegateMock);
+
+        errorHandler.handle(new HttpException(RetrofitHelper.generateErrorResponseWith(401)));
+        errorHandler.handle(new HttpException(RetrofitHelper.generateErrorResponseWith(503)));
+        errorHandler.handle(new IllegalStateException());
+
+        testVerifier.verify(actionDelegateMock).action1();
+        testVerifier.verify(actionDelegateMock, Mockito.times(2)).otherwise();
+        Mockito.verifyNoMoreInteractions(actionDelegateMock);
+    }
+
+    @Test
+    public void test_action_registered_with_another_matcher() {
+        HttpStatusDispatcher dispatcher = HttpStatusDispatcher
+                .builder()
+                .on(404, new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        actionDelegateMock.action1();
+                    }
+                })
+                .build();
+
+        dispatcher.registerOn(ErrorHandler.createIsolated())
+                .handle(new HttpException(RetrofitHelper.generateErrorResponseWith(404)));
+        ErrorHandler.createIsolated()
+                .on(HttpException.class, dispatcher.action())
+                .handle(new HttpException(RetrofitHelper.generateErrorResponseWith(404)));
+        ErrorHandler.createIsolated()
+                .on(HttpException.class, dispatcher.action())
+                .handle(new HttpException(RetrofitHelper.generateErrorResponseWith(500)));
+
+        Mockito.verify(actionDelegateMock, Mockito.times(2)).action1();
+        Mockito.verifyNoMoreInteractions(actionDelegateMock);
+    }
+}
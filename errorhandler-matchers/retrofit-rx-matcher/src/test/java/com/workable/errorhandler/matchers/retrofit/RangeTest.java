@@ -46,4 +46,20 @@ public class RangeTest {
 
     }
 
+    @Test
+    public void test_parse() {
+        Assert.assertEquals(Range.of(500, 599), Range.parse("500-599"));
+        Assert.assertEquals(Range.of(503, 503), Range.parse("503"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_parse_invalid() {
+        Range.parse("5xx");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_parse_reversed() {
+        Range.parse("599-500");
+    }
+
 }
@@ -2,11 +2,16 @@ package com.workable.errorhandler.matchers.retrofit;
 
 
 import com.workable.errorhandler.Action;
+import com.workable.errorhandler.CauseMatcher;
 import com.workable.errorhandler.ErrorHandler;
 import junit.framework.TestCase;
 import org.junit.Test;
 import retrofit2.adapter.rxjava.HttpException;
 import org.mockito.Mockito;
+import rx.exceptions.CompositeException;
+
+import java.io.IOException;
+import java.util.Arrays;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -87,4 +92,31 @@ public class RetrofitMatcherFactoryTest extends TestCase {
 
         Mockito.verify(actionDelegateMock, times(0)).action1();
     }
+
+    @Test
+    public void test_catching_wrapped_http_code() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .bindClass(Integer.class, RetrofitMatcherFactory.create(CauseMatcher.Scope.ANY_CAUSE))
+                .bindClass(Range.class, RetrofitMatcherFactory.createRange(CauseMatcher.Scope.ROOT_CAUSE))
+                .on(401, new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        actionDelegateMock.action1();
+                    }
+                })
+                .on(Range.of(400, 499), new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        actionDelegateMock.action1();
+                    }
+                });
+
+        HttpException httpException = new HttpException(RetrofitHelper.generateErrorResponseWith(401));
+
+        errorHandler.handle(new RuntimeException(httpException));
+        errorHandler.handle(new CompositeException(Arrays.asList(new IOException(), httpException)));
+
+        Mockito.verify(actionDelegateMock, times(4)).action1();
+    }
 }
@@ -0,0 +1,259 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler.metrics;
+
+import com.workable.errorhandler.Action;
+import com.workable.errorhandler.ActionEntry;
+import com.workable.errorhandler.ErrorHandler;
+import com.workable.errorhandler.ErrorHandlerListener;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@link ErrorHandlerListener} that counts what an {@link ErrorHandler} does, to see which rules fire,
+ * how often, and which actions are slow.
+ * <p>
+ * Counters are {@link LongAdder}s, so any number of threads can handle errors through the same
+ * ErrorHandler without contending on them. Reading a counter while errors are being handled gives
+ * a value that is accurate up to the updates in flight.
+ *
+ * <pre>
+ * {@code
+ *   ErrorHandlerMetrics metrics = new ErrorHandlerMetrics();
+ *
+ *   ErrorHandler
+ *      .defaultErrorHandler()
+ *      .listener(metrics);
+ *
+ *   // ...
+ *
+ *   metrics.getDispatchCount(SocketTimeoutException.class);
+ *   metrics.getActionStats(reportAction).getMaxNanos();
+ * }
+ * </pre>
+ */
+public class ErrorHandlerMetrics implements ErrorHandlerListener {
+
+    private final ConcurrentMap<Class<?>, LongAdder> dispatches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ActionEntry, LongAdder> matches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Action, ActionStats> actions = new ConcurrentHashMap<>();
+
+    private final LongAdder otherwise = new LongAdder();
+    private final LongAdder always = new LongAdder();
+    private final LongAdder parent = new LongAdder();
+
+    @Override
+    public void onDispatch(ErrorHandler errorHandler, Throwable error) {
+        adder(dispatches, error.getClass()).increment();
+    }
+
+    @Override
+    public void onMatch(ErrorHandler errorHandler, ActionEntry actionEntry, Throwable error) {
+        adder(matches, actionEntry).increment();
+    }
+
+    @Override
+    public void onOtherwise(ErrorHandler errorHandler, Throwable error) {
+        otherwise.increment();
+    }
+
+    @Override
+    public void onAlways(ErrorHandler errorHandler, Throwable error) {
+        always.increment();
+    }
+
+    @Override
+    public void onParent(ErrorHandler errorHandler, ErrorHandler parent, Throwable error) {
+        this.parent.increment();
+    }
+
+    @Override
+    public void onAction(ErrorHandler errorHandler, Action action, Throwable error, long durationNanos) {
+        ActionStats stats = actions.get(action);
+        if (stats == null) {
+            stats = actions.computeIfAbsent(action, key -> new ActionStats());
+        }
+        stats.record(durationNanos);
+    }
+
+    /**
+     * @return the number of errors handled, of any class
+     */
+    public long getDispatchCount() {
+        long sum = 0;
+        for (LongAdder adder : dispatches.values()) {
+            sum += adder.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * @param errorClass the exact class of the errors
+     * @return the number of errors of {@code errorClass} handled, not counting its subclasses
+     */
+    public long getDispatchCount(Class<? extends Throwable> errorClass) {
+        return sum(dispatches.get(errorClass));
+    }
+
+    /**
+     * @return the number of errors handled, per error class
+     */
+    public Map<Class<?>, Long> getDispatchCounts() {
+        Map<Class<?>, Long> counts = new HashMap<>();
+        for (Map.Entry<Class<?>, LongAdder> entry : dispatches.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * @param actionEntry the entry, as reported to {@link #onMatch(ErrorHandler, ActionEntry, Throwable)}
+     * @return the number of times the matcher of {@code actionEntry} matched
+     */
+    public long getMatchCount(ActionEntry actionEntry) {
+        return sum(matches.get(actionEntry));
+    }
+
+    /**
+     * @return the number of matches, per {@link ActionEntry}
+     */
+    public Map<ActionEntry, Long> getMatchCounts() {
+        Map<ActionEntry, Long> counts = new HashMap<>();
+        for (Map.Entry<ActionEntry, LongAdder> entry : matches.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * @param action the action
+     * @return the execution stats of {@code action}, or null if it has never been executed
+     */
+    public ActionStats getActionStats(Action action) {
+        return actions.get(action);
+    }
+
+    /**
+     * @return the number of times the {@code otherwise} actions were executed
+     */
+    public long getOtherwiseCount() {
+        return otherwise.sum();
+    }
+
+    /**
+     * @return the number of times the {@code always} actions were executed
+     */
+    public long getAlwaysCount() {
+        return always.sum();
+    }
+
+    /**
+     * @return the number of times the dispatch moved on to a parent ErrorHandler
+     */
+    public long getParentCount() {
+        return parent.sum();
+    }
+
+    /**
+     * Reset all counters to zero.
+     */
+    public void reset() {
+        dispatches.clear();
+        matches.clear();
+        actions.clear();
+        otherwise.reset();
+        always.reset();
+        parent.reset();
+    }
+
+    /**
+     * Look the adder up before falling back to {@code computeIfAbsent}, which may lock even when the key is present.
+     */
+    private static <K> LongAdder adder(ConcurrentMap<K, LongAdder> adders, K key) {
+        LongAdder adder = adders.get(key);
+        if (adder == null) {
+            adder = adders.computeIfAbsent(key, k -> new LongAdder());
+        }
+        return adder;
+    }
+
+    private static long sum(LongAdder adder) {
+        return adder == null ? 0L : adder.sum();
+    }
+
+    /**
+     * Execution count and timings of an {@link Action}.
+     */
+    public static final class ActionStats {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+        ActionStats() {
+        }
+
+        void record(long durationNanos) {
+            count.increment();
+            totalNanos.add(durationNanos);
+            maxNanos.accumulate(durationNanos);
+        }
+
+        /**
+         * @return the number of times the action was executed
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return the total time spent in the action, in nanoseconds
+         */
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * @return the longest single execution of the action, in nanoseconds
+         */
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * @return the average execution time of the action, in nanoseconds, or zero if never executed
+         */
+        public long getMeanNanos() {
+            long executions = count.sum();
+            return executions == 0 ? 0L : totalNanos.sum() / executions;
+        }
+    }
+}
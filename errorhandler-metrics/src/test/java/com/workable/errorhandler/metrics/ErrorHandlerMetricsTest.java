@@ -0,0 +1,142 @@
+package com.workable.errorhandler.metrics;
+
+import com.workable.errorhandler.Action;
+import com.workable.errorhandler.ActionEntry;
+import com.workable.errorhandler.ErrorHandler;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ErrorHandlerMetrics} unit tests
+ */
+public class ErrorHandlerMetricsTest extends TestCase {
+
+    @Test
+    public void testCounts() {
+        ErrorHandlerMetrics metrics = new ErrorHandlerMetrics();
+        Action stateAction = (throwable, handler) -> { };
+        Action alwaysAction = (throwable, handler) -> { };
+
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .listener(metrics)
+                .on(IllegalStateException.class, stateAction)
+                .otherwise((throwable, handler) -> { })
+                .always(alwaysAction);
+
+        errorHandler.handle(new IllegalStateException());
+        errorHandler.handle(new IllegalStateException());
+        errorHandler.handle(new IllegalArgumentException());
+
+        assertEquals(3, metrics.getDispatchCount());
+        assertEquals(2, metrics.getDispatchCount(IllegalStateException.class));
+        assertEquals(1, metrics.getDispatchCount(IllegalArgumentException.class));
+        assertEquals(0, metrics.getDispatchCount(RuntimeException.class));
+        assertEquals(1, metrics.getMatchCounts().size());
+        assertEquals(Long.valueOf(2), metrics.getMatchCounts().values().iterator().next());
+        assertEquals(1, metrics.getOtherwiseCount());
+        assertEquals(3, metrics.getAlwaysCount());
+        assertEquals(0, metrics.getParentCount());
+        assertEquals(2, metrics.getActionStats(stateAction).getCount());
+        assertEquals(3, metrics.getActionStats(alwaysAction).getCount());
+
+        metrics.reset();
+
+        assertEquals(0, metrics.getDispatchCount());
+        assertNull(metrics.getActionStats(stateAction));
+    }
+
+    @Test
+    public void testCountsErrorsPassedOnByChildren() {
+        ErrorHandlerMetrics metrics = new ErrorHandlerMetrics();
+        ErrorHandler parent = ErrorHandler
+                .createIsolated()
+                .listener(metrics)
+                .on(IllegalStateException.class, (throwable, handler) -> { });
+
+        ErrorHandler.create(parent).handle(new IllegalStateException());
+
+        assertEquals(1, metrics.getDispatchCount());
+        assertEquals(1, metrics.getDispatchCount(IllegalStateException.class));
+        assertEquals(Long.valueOf(1), metrics.getMatchCounts().values().iterator().next());
+    }
+
+    @Test
+    public void testMatchCountPerEntry() {
+        ErrorHandlerMetrics metrics = new ErrorHandlerMetrics();
+        Action action = (throwable, handler) -> { };
+        ActionEntry[] reported = new ActionEntry[1];
+
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .listener(new ErrorHandlerMetrics() {
+                    @Override
+                    public void onMatch(ErrorHandler errorHandler, ActionEntry actionEntry, Throwable error) {
+                        reported[0] = actionEntry;
+                        metrics.onMatch(errorHandler, actionEntry, error);
+                    }
+                })
+                .on(IllegalStateException.class, action);
+
+        errorHandler.handle(new IllegalStateException());
+
+        assertSame(action, reported[0].action);
+        assertEquals(1, metrics.getMatchCount(reported[0]));
+    }
+
+    @Test
+    public void testActionTimings() {
+        ErrorHandlerMetrics metrics = new ErrorHandlerMetrics();
+        Action slowAction = (throwable, handler) -> {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .listener(metrics)
+                .on(IllegalStateException.class, slowAction);
+
+        errorHandler.handle(new IllegalStateException());
+        errorHandler.handle(new IllegalStateException());
+
+        ErrorHandlerMetrics.ActionStats stats = metrics.getActionStats(slowAction);
+        assertEquals(2, stats.getCount());
+        assertTrue(stats.getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(stats.getTotalNanos() >= 2 * stats.getMeanNanos());
+    }
+
+    @Test
+    public void testConcurrentDispatch() throws InterruptedException {
+        ErrorHandlerMetrics metrics = new ErrorHandlerMetrics();
+        Action action = (throwable, handler) -> { };
+
+        ErrorHandler errorHandler = ErrorHandler
+                .create()
+                .listener(metrics)
+                .on(IllegalStateException.class, action)
+                .freeze();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    errorHandler.handle(new IllegalStateException());
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(4000, metrics.getDispatchCount(IllegalStateException.class));
+        assertEquals(4000, metrics.getActionStats(action).getCount());
+        assertEquals(4000, metrics.getParentCount());
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler.specializer;
+
+import com.workable.errorhandler.Action;
+import com.workable.errorhandler.ActionEntry;
+import com.workable.errorhandler.CompiledRules;
+import com.workable.errorhandler.ContextMatcher;
+import com.workable.errorhandler.ErrorHandler;
+import com.workable.errorhandler.ExceptionMatcher;
+import com.workable.errorhandler.HandlingContext;
+import com.workable.errorhandler.Matcher;
+import com.workable.errorhandler.RuleCompiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * A {@link RuleCompiler} that specializes the rules of a frozen ErrorHandler into a hidden class, at runtime.
+ * <p>
+ * The matchers and actions of each ErrorHandler are chained into a tree of method handles, which a hidden class
+ * holds in a {@code static final} field. The JIT treats the tree as a constant: it inlines the whole sequence of
+ * checks into straight-line code, {@link ExceptionMatcher}s into plain {@code instanceof} checks, and the calls to
+ * each matcher and action are monomorphic.
+ *
+ * <pre>
+ * {@code
+ *   ErrorHandler errorHandler = Specializer.specialize(ErrorHandler
+ *      .create()
+ *      .on(SocketTimeoutException.class, retry)
+ *      .on(HttpException.class, showError));
+ * }
+ * </pre>
+ * <p>
+ * Hidden classes need Java 16 or later. On earlier runtimes {@link #isSupported()} returns false and the
+ * specialized ErrorHandler dispatches errors the way a frozen one does. Specializing takes a few milliseconds per
+ * ErrorHandler, so it's meant for rule sets that are fixed once configured, e.g. at the boot of a server.
+ */
+public final class Specializer implements RuleCompiler {
+
+    private static final String TEMPLATE = "SpecializedRules.class";
+
+    private static final MethodType RULES_TYPE =
+            MethodType.methodType(boolean.class, Throwable.class, HandlingContext.class, boolean.class);
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final MethodHandle DEFINE_HIDDEN_CLASS;
+    private static final Method CLASS_DATA;
+    private static final byte[] TEMPLATE_BYTES;
+
+    private static final MethodHandle EXECUTE;
+    private static final MethodHandle MATCHES;
+    private static final MethodHandle CONTEXT_MATCHES;
+    private static final MethodHandle IS_INSTANCE;
+    private static final MethodHandle SKIP_FOLLOWING;
+    private static final MethodHandle DONE;
+
+    static {
+        MethodHandle defineHiddenClass = null;
+        Method classData = null;
+        byte[] templateBytes = null;
+        try {
+            Class<?> classOption = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            Class<?> classOptions = Array.newInstance(classOption, 0).getClass();
+            defineHiddenClass = LOOKUP.findVirtual(MethodHandles.Lookup.class, "defineHiddenClassWithClassData",
+                    MethodType.methodType(MethodHandles.Lookup.class, byte[].class, Object.class, boolean.class,
+                            classOptions));
+            defineHiddenClass = MethodHandles.insertArguments(defineHiddenClass, 4, Array.newInstance(classOption, 0));
+            classData = MethodHandles.class.getMethod("classData", MethodHandles.Lookup.class, String.class, Class.class);
+            templateBytes = readTemplate();
+        } catch (ReflectiveOperationException | IOException e) {
+            defineHiddenClass = null;
+        }
+        DEFINE_HIDDEN_CLASS = defineHiddenClass;
+        CLASS_DATA = classData;
+        TEMPLATE_BYTES = templateBytes;
+
+        try {
+            EXECUTE = LOOKUP.findStatic(Specializer.class, "execute",
+                    MethodType.methodType(void.class, Action.class, Throwable.class, HandlingContext.class));
+            MATCHES = LOOKUP.findVirtual(Matcher.class, "matches",
+                    MethodType.methodType(boolean.class, Throwable.class));
+            CONTEXT_MATCHES = LOOKUP.findVirtual(ContextMatcher.class, "matches",
+                    MethodType.methodType(boolean.class, Throwable.class, HandlingContext.class));
+            IS_INSTANCE = LOOKUP.findVirtual(Class.class, "isInstance",
+                    MethodType.methodType(boolean.class, Object.class));
+            SKIP_FOLLOWING = MethodHandles.dropArguments(
+                    LOOKUP.findVirtual(HandlingContext.class, "isSkipFollowing", MethodType.methodType(boolean.class)),
+                    0, Throwable.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        DONE = MethodHandles.dropArguments(MethodHandles.identity(boolean.class), 0,
+                Throwable.class, HandlingContext.class);
+    }
+
+    /**
+     * @return true if this runtime supports hidden classes, so that rules get specialized
+     */
+    public static boolean isSupported() {
+        return DEFINE_HIDDEN_CLASS != null;
+    }
+
+    /**
+     * Freeze {@code errorHandler}, along with its parent chain, specializing the rules of each of them.
+     *
+     * @param errorHandler the ErrorHandler
+     * @return a frozen copy of {@code errorHandler}
+     */
+    public static ErrorHandler specialize(ErrorHandler errorHandler) {
+        return errorHandler.freeze(new Specializer());
+    }
+
+    @Override
+    public CompiledRules compile(List<ActionEntry> entries) {
+        if (!isSupported()) {
+            return null;
+        }
+
+        MethodHandle rules = DONE;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            ActionEntry entry = entries.get(i);
+            // execute the action, then continue with the rest of the rules as handled
+            MethodHandle executed = MethodHandles.foldArguments(
+                    MethodHandles.dropArguments(MethodHandles.insertArguments(rules, 2, true), 2, boolean.class),
+                    EXECUTE.bindTo(entry.action));
+            MethodHandle matched = MethodHandles.guardWithTest(matches(entry.matcher), executed, rules);
+            rules = MethodHandles.guardWithTest(MethodHandles.dropArguments(SKIP_FOLLOWING, 2, boolean.class),
+                    DONE, matched);
+        }
+
+        try {
+            MethodHandles.Lookup hidden = (MethodHandles.Lookup) DEFINE_HIDDEN_CLASS.invoke(LOOKUP, TEMPLATE_BYTES,
+                    MethodHandles.insertArguments(rules.asType(RULES_TYPE), 2, false), true);
+            return (CompiledRules) hidden
+                    .findConstructor(hidden.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (Throwable e) {
+            // fall back to the interpreted dispatch
+            return null;
+        }
+    }
+
+    /**
+     * @return a {@code (Throwable, HandlingContext, boolean)boolean} handle that checks {@code matcher}
+     */
+    private static MethodHandle matches(Matcher matcher) {
+        MethodHandle matches;
+        if (matcher.getClass() == ExceptionMatcher.class) {
+            // a constant class folds into an instanceof check
+            matches = IS_INSTANCE.bindTo(((ExceptionMatcher) matcher).getErrorClass())
+                    .asType(MethodType.methodType(boolean.class, Throwable.class));
+            matches = MethodHandles.dropArguments(matches, 1, HandlingContext.class);
+        } else if (matcher instanceof ContextMatcher) {
+            matches = CONTEXT_MATCHES.bindTo(matcher);
+        } else {
+            matches = MethodHandles.dropArguments(MATCHES.bindTo(matcher), 1, HandlingContext.class);
+        }
+        return MethodHandles.dropArguments(matches, 2, boolean.class);
+    }
+
+    private static void execute(Action action, Throwable error, HandlingContext context) {
+        context.execute(action, error);
+    }
+
+    /**
+     * Called by the static initializer of each hidden class, to get the handle it was defined with
+     */
+    static MethodHandle classData(MethodHandles.Lookup lookup) {
+        try {
+            return (MethodHandle) CLASS_DATA.invoke(null, lookup, "_", MethodHandle.class);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("could not read the rules of " + lookup.lookupClass(), e);
+        }
+    }
+
+    private static byte[] readTemplate() throws IOException {
+        try (InputStream in = Specializer.class.getResourceAsStream(TEMPLATE)) {
+            if (in == null) {
+                throw new IOException(TEMPLATE + " not found");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
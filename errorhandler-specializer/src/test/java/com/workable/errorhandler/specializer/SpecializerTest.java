@@ -0,0 +1,106 @@
+package com.workable.errorhandler.specializer;
+
+import com.workable.errorhandler.ActionEntry;
+import com.workable.errorhandler.CompiledRules;
+import com.workable.errorhandler.ContextMatcher;
+import com.workable.errorhandler.ErrorHandler;
+import com.workable.errorhandler.HandlingContext;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link Specializer} unit tests
+ */
+public class SpecializerTest extends TestCase {
+
+    private final List<String> calls = new ArrayList<>();
+
+    @Test
+    public void testSupportedOnHiddenClassRuntimes() {
+        boolean hiddenClasses;
+        try {
+            Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            hiddenClasses = true;
+        } catch (ClassNotFoundException e) {
+            hiddenClasses = false;
+        }
+
+        assertEquals(hiddenClasses, Specializer.isSupported());
+    }
+
+    @Test
+    public void testCompile() {
+        CompiledRules rules = new Specializer().compile(Collections.singletonList(
+                new ActionEntry(throwable -> true, (throwable, errorHandler) -> calls.add("action"))));
+
+        if (Specializer.isSupported()) {
+            assertNotNull(rules);
+            // hidden classes are named after their template, with a suffix
+            assertTrue(rules.getClass().getName().startsWith(SpecializedRules.class.getName() + "/"));
+        } else {
+            assertNull(rules);
+        }
+    }
+
+    @Test
+    public void testSpecializedErrorHandler() {
+        ErrorHandler parent = ErrorHandler
+                .createIsolated()
+                .on(IllegalStateException.class, (throwable, errorHandler) -> calls.add("parent"))
+                .otherwise((throwable, errorHandler) -> calls.add("parentOtherwise"));
+
+        ErrorHandler errorHandler = Specializer.specialize(ErrorHandler
+                .create(parent)
+                .on(IllegalArgumentException.class, (throwable, errorHandler1) -> calls.add("illegalArgument"))
+                .on(throwable -> throwable.getMessage() != null, (throwable, errorHandler1) -> calls.add("message"))
+                .on(new ContextMatcher() {
+                        @Override
+                        public boolean matches(Throwable throwable, HandlingContext context) {
+                            return context.getErrorHandler() != null;
+                        }
+
+                        @Override
+                        public boolean matches(Throwable throwable) {
+                            return false;
+                        }
+                    },
+                        ErrorHandler.withContext((throwable, context) -> {
+                            calls.add("context");
+                            if ("skip".equals(throwable.getMessage())) {
+                                context.skipFollowing();
+                            }
+                        }))
+                .on(IllegalStateException.class, (throwable, errorHandler1) -> calls.add("illegalState"))
+                .always((throwable, errorHandler1) -> calls.add("always")));
+
+        errorHandler.handle(new IllegalStateException());
+        assertEquals(Arrays.asList("context", "illegalState", "always", "parent"), calls);
+
+        calls.clear();
+        errorHandler.handle(new IllegalStateException("skip"));
+        assertEquals(Arrays.asList("message", "context", "always"), calls);
+
+        calls.clear();
+        errorHandler.handle(new IllegalArgumentException("foo"));
+        assertEquals(Arrays.asList("illegalArgument", "message", "context", "always"), calls);
+        assertTrue(errorHandler.isFrozen());
+    }
+
+    @Test
+    public void testSpecializedErrorHandlerRunsOtherwise() {
+        ErrorHandler errorHandler = Specializer.specialize(ErrorHandler
+                .createIsolated()
+                .on(IllegalStateException.class, (throwable, errorHandler1) -> calls.add("illegalState"))
+                .otherwise((throwable, errorHandler1) -> calls.add("otherwise")));
+
+        errorHandler.handle(new IllegalArgumentException());
+        errorHandler.handle(new IllegalStateException());
+
+        assertEquals(Arrays.asList("otherwise", "illegalState"), calls);
+    }
+}
@@ -34,6 +34,11 @@ public class ActionEntry {
     public final Matcher matcher;
     public final Action action;
 
+    /**
+     * The error code the entry was registered with via {@link ErrorHandler#on(Object, Action)}, if any
+     */
+    final Object errorCode;
+
     /**
      * Constructor for an ActionEntry.
      *
@@ -41,8 +46,13 @@ public class ActionEntry {
      * @param action  the action object in the ActionEntry
      */
     public ActionEntry(Matcher matcher, Action action) {
+        this(matcher, action, null);
+    }
+
+    ActionEntry(Matcher matcher, Action action, Object errorCode) {
         this.matcher = matcher;
         this.action = action;
+        this.errorCode = errorCode;
     }
 
     @Override
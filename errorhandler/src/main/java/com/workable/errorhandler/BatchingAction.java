@@ -0,0 +1,470 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An {@link Action} that records the key facts of each error and hands them over to a {@link Sink} in batches,
+ * from a background thread.
+ * <p>
+ * Executing the action copies the error class, message, error code, time and thread of the error into a slot
+ * of a bounded ring buffer, allocated once. A background thread flushes the buffer to the sink once
+ * {@code batchSize} errors are waiting or {@code flushInterval} has passed since the first of them, so that
+ * the cost of reporting is spread across many errors.
+ *
+ * <pre>
+ * {@code
+ *   BatchingAction reporter = BatchingAction
+ *      .builder(records -> collector.send(toJson(records)))
+ *      .batchSize(100)
+ *      .flushInterval(5, TimeUnit.SECONDS)
+ *      .policy(BatchingAction.Policy.DROP_OLDEST)
+ *      .build();
+ *
+ *   ErrorHandler
+ *      .defaultErrorHandler()
+ *      .always(reporter);
+ * }
+ * </pre>
+ *
+ * When the buffer is full, the {@link Policy} decides whether the new error is dropped, the oldest one
+ * is overwritten or the error handling thread waits for room. Close the action to flush the remaining
+ * errors and stop its thread.
+ */
+public final class BatchingAction implements Action, Closeable {
+
+    /**
+     * What to do with an error when the buffer is full
+     */
+    public enum Policy {
+        /**
+         * Drop the new error
+         */
+        DROP_NEWEST,
+        /**
+         * Overwrite the oldest error in the buffer
+         */
+        DROP_OLDEST,
+        /**
+         * Wait until the background thread makes room
+         */
+        BLOCK
+    }
+
+    private final Sink sink;
+    private final Policy policy;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+
+    private final ErrorRecord[] buffer;
+    private final ErrorRecord[] batch;
+    private final List<ErrorRecord> batchView;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // Guarded by lock
+    private int head;
+    private int count;
+    private long dropped;
+    private boolean closed;
+
+    private final Thread flusher;
+
+    private BatchingAction(Builder builder) {
+        this.sink = builder.sink;
+        this.policy = builder.policy;
+        this.batchSize = Math.min(builder.batchSize, builder.capacity);
+        this.flushIntervalNanos = builder.flushIntervalNanos;
+        this.buffer = records(builder.capacity);
+        this.batch = records(batchSize);
+        this.batchView = Collections.unmodifiableList(Arrays.asList(batch));
+        this.flusher = builder.threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flushLoop();
+                } finally {
+                    // should the thread die anyway, don't leave producers waiting for room
+                    stop();
+                }
+            }
+        });
+        this.flusher.start();
+    }
+
+    /**
+     * @param sink the sink to flush errors to
+     * @return a new {@link Builder}
+     */
+    public static Builder builder(Sink sink) {
+        if (sink == null) {
+            throw new IllegalArgumentException("sink cannot be null");
+        }
+        return new Builder(sink);
+    }
+
+    @Override
+    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+        lock.lock();
+        try {
+            if (!awaitRoom()) {
+                dropped++;
+                return;
+            }
+
+            buffer[(head + count) % buffer.length].copy(throwable);
+            count++;
+
+            if (count == 1 || count == batchSize) {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of errors dropped so far, because the buffer was full or the action closed
+     */
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flush the errors waiting in the buffer and stop the background thread.
+     * Errors recorded after closing are dropped.
+     */
+    @Override
+    public void close() {
+        stop();
+
+        boolean interrupted = false;
+        while (flusher.isAlive() && flusher != Thread.currentThread()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stop() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Make room for a new error according to the {@link Policy}. Called while holding the lock.
+     *
+     * @return false if the new error has to be dropped
+     */
+    private boolean awaitRoom() {
+        if (closed) {
+            return false;
+        }
+        if (count < buffer.length) {
+            return true;
+        }
+
+        switch (policy) {
+            case DROP_OLDEST:
+                head = (head + 1) % buffer.length;
+                count--;
+                dropped++;
+                return true;
+            case BLOCK:
+                while (count == buffer.length && !closed) {
+                    try {
+                        notFull.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                return !closed;
+            default:
+                return false;
+        }
+    }
+
+    private void flushLoop() {
+        for (;;) {
+            int size;
+            lock.lock();
+            try {
+                while (count == 0 && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (count == 0) {
+                    return;
+                }
+
+                long remaining = flushIntervalNanos;
+                while (count < batchSize && !closed && remaining > 0) {
+                    try {
+                        remaining = notEmpty.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        remaining = 0;
+                    }
+                }
+
+                size = Math.min(count, batchSize);
+                for (int i = 0; i < size; i++) {
+                    batch[i].copy(buffer[(head + i) % buffer.length]);
+                }
+                head = (head + size) % buffer.length;
+                count -= size;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                sink.flush(batchView.subList(0, size));
+            } catch (Throwable e) {
+                Thread.UncaughtExceptionHandler handler = flusher.getUncaughtExceptionHandler();
+                if (handler != null) {
+                    handler.uncaughtException(flusher, e);
+                }
+            }
+        }
+    }
+
+    private static ErrorRecord[] records(int size) {
+        ErrorRecord[] records = new ErrorRecord[size];
+        for (int i = 0; i < size; i++) {
+            records[i] = new ErrorRecord();
+        }
+        return records;
+    }
+
+    /**
+     * Receives the errors recorded by a {@link BatchingAction}, in batches.
+     */
+    public interface Sink {
+
+        /**
+         * Called from the background thread of the {@link BatchingAction}, one batch at a time.
+         * <p>
+         * The records are reused for the following batches, so they are only valid until this method returns.
+         *
+         * @param records the errors recorded, oldest first
+         * @throws Exception if flushing failed, the batch is then lost
+         */
+        void flush(List<ErrorRecord> records) throws Exception;
+    }
+
+    /**
+     * The key facts of an error, as copied by a {@link BatchingAction}.
+     */
+    public static final class ErrorRecord {
+
+        private Class<? extends Throwable> errorClass;
+        private String message;
+        private Object errorCode;
+        private long timestamp;
+        private String threadName;
+
+        ErrorRecord() {
+        }
+
+        void copy(Throwable throwable) {
+            errorClass = throwable.getClass();
+            message = throwable.getMessage();
+            errorCode = throwable instanceof ErrorCodeSignal ? ((ErrorCodeSignal) throwable).getErrorCode() : null;
+            timestamp = System.currentTimeMillis();
+            threadName = Thread.currentThread().getName();
+        }
+
+        void copy(ErrorRecord record) {
+            errorClass = record.errorClass;
+            message = record.message;
+            errorCode = record.errorCode;
+            timestamp = record.timestamp;
+            threadName = record.threadName;
+            record.message = null;
+            record.errorCode = null;
+        }
+
+        /**
+         * @return the class of the error
+         */
+        public Class<? extends Throwable> getErrorClass() {
+            return errorClass;
+        }
+
+        /**
+         * @return the message of the error
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * @return the error code, for errors handled via {@link ErrorHandler#handleCode(Object)}, otherwise null
+         */
+        public Object getErrorCode() {
+            return errorCode;
+        }
+
+        /**
+         * @return the time the error was recorded, in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return the name of the thread that handled the error
+         */
+        public String getThreadName() {
+            return threadName;
+        }
+    }
+
+    /**
+     * Builder of {@link BatchingAction}s, see {@link BatchingAction#builder(Sink)}.
+     */
+    public static final class Builder {
+
+        private static final int DEFAULT_CAPACITY = 1024;
+        private static final int DEFAULT_BATCH_SIZE = 64;
+
+        private final Sink sink;
+        private int capacity = DEFAULT_CAPACITY;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private long flushIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+        private Policy policy = Policy.DROP_NEWEST;
+        private ThreadFactory threadFactory;
+
+        private Builder(Sink sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * @param capacity the number of errors the buffer holds, {@value #DEFAULT_CAPACITY} by default
+         * @return this builder
+         */
+        public Builder capacity(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity must be positive");
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param batchSize the most errors flushed at once, {@value #DEFAULT_BATCH_SIZE} by default.
+         *                  Capped to the capacity.
+         * @return this builder
+         */
+        public Builder batchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize must be positive");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param interval the longest an error waits for a batch to fill up, one second by default
+         * @param unit     the unit of {@code interval}
+         * @return this builder
+         */
+        public Builder flushInterval(long interval, TimeUnit unit) {
+            if (interval < 0) {
+                throw new IllegalArgumentException("interval cannot be negative");
+            }
+            this.flushIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        /**
+         * @param policy what to do when the buffer is full, {@link Policy#DROP_NEWEST} by default
+         * @return this builder
+         */
+        public Builder policy(Policy policy) {
+            if (policy == null) {
+                throw new IllegalArgumentException("policy cannot be null");
+            }
+            this.policy = policy;
+            return this;
+        }
+
+        /**
+         * @param threadFactory creates the background thread, a daemon thread by default
+         * @return this builder
+         */
+        public Builder threadFactory(ThreadFactory threadFactory) {
+            this.threadFactory = threadFactory;
+            return this;
+        }
+
+        /**
+         * Build the action and start its background thread
+         *
+         * @return a new {@link BatchingAction}
+         */
+        public BatchingAction build() {
+            if (threadFactory == null) {
+                threadFactory = new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                        thread.setName("error-handler-batching");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                };
+            }
+            return new BatchingAction(this);
+        }
+    }
+}
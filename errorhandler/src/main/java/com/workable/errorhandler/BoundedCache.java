@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A concurrent cache of up to {@code capacity} entries, that evicts an entry not used recently to make room for
+ * a new one.
+ * <p>
+ * Recency is tracked the CLOCK way, with a single flag per entry that hits set and eviction clears as it goes
+ * round the entries, so that hits never lock or allocate. Only inserts into a full cache take a lock.
+ * Concurrent inserts may briefly take the cache over its capacity.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+final class BoundedCache<K, V> {
+
+    private final int capacity;
+    private final ConcurrentMap<K, Node<V>> map = new ConcurrentHashMap<>();
+
+    private final Object evictionLock = new Object();
+    // Guarded by evictionLock
+    private Iterator<Node<V>> hand;
+
+    BoundedCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param key the key
+     * @return the value cached for {@code key}, or null if none
+     */
+    V get(K key) {
+        Node<V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (!node.used) {
+            node.used = true;
+        }
+        return node.value;
+    }
+
+    /**
+     * Cache {@code value} for {@code key}, unless another thread cached one first
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the value cached for {@code key}
+     */
+    V putIfAbsent(K key, V value) {
+        if (map.size() >= capacity) {
+            synchronized (evictionLock) {
+                while (map.size() >= capacity) {
+                    evict();
+                }
+            }
+        }
+        Node<V> existing = map.putIfAbsent(key, new Node<>(value));
+        return existing == null ? value : existing.value;
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    int size() {
+        return map.size();
+    }
+
+    /**
+     * Evict the next entry not used since the hand last passed it, clearing the flags of the used ones on the way
+     */
+    private void evict() {
+        for (;;) {
+            if (hand == null || !hand.hasNext()) {
+                hand = map.values().iterator();
+                if (!hand.hasNext()) {
+                    return;
+                }
+            }
+            Node<V> node = hand.next();
+            if (node.used) {
+                node.used = false;
+            } else {
+                hand.remove();
+                return;
+            }
+        }
+    }
+
+    private static final class Node<V> {
+        final V value;
+        volatile boolean used;
+
+        Node(V value) {
+            this.value = value;
+        }
+    }
+}
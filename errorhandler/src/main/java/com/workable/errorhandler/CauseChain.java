@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An error followed by its causes, as returned by successive {@link Throwable#getCause()} calls.
+ * <p>
+ * The chain stops at {@link #MAX_DEPTH} causes, or at the first cause already seen, so that a cyclic
+ * cause chain cannot loop forever. It's computed once per handled error and shared by all the
+ * {@link CauseMatcher}s checked for it, see {@link HandlingContext#getCauseChain()}.
+ */
+public final class CauseChain {
+
+    /**
+     * The most causes followed below the error itself
+     */
+    public static final int MAX_DEPTH = 32;
+
+    private final Throwable[] chain;
+    private final int size;
+    private List<Throwable> suppressed;
+    private int[] suppressedEnds;
+
+    private CauseChain(Throwable[] chain, int size) {
+        this.chain = chain;
+        this.size = size;
+    }
+
+    /**
+     * @param error the error
+     * @return the cause chain of {@code error}
+     */
+    public static CauseChain of(Throwable error) {
+        Throwable cause = error.getCause();
+        if (cause == null || cause == error) {
+            return new CauseChain(new Throwable[]{error}, 1);
+        }
+
+        Throwable[] chain = new Throwable[4];
+        chain[0] = error;
+        int size = 1;
+
+        while (cause != null && size <= MAX_DEPTH && !contains(chain, size, cause)) {
+            if (size == chain.length) {
+                Throwable[] grown = new Throwable[Math.min(chain.length * 2, MAX_DEPTH + 1)];
+                System.arraycopy(chain, 0, grown, 0, size);
+                chain = grown;
+            }
+            chain[size++] = cause;
+            cause = cause.getCause();
+        }
+        return new CauseChain(chain, size);
+    }
+
+    /**
+     * @return the number of throwables in the chain, the error itself included
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param depth the number of causes below the error, zero for the error itself
+     * @return the throwable at {@code depth}
+     */
+    public Throwable get(int depth) {
+        if (depth < 0 || depth >= size) {
+            throw new IndexOutOfBoundsException("depth: " + depth + ", size: " + size);
+        }
+        return chain[depth];
+    }
+
+    /**
+     * @return the last cause of the chain, or the error itself if it has no cause
+     */
+    public Throwable getRootCause() {
+        return chain[size - 1];
+    }
+
+    /**
+     * @return the suppressed exceptions of the error and of each of its causes, in chain order
+     */
+    public List<Throwable> getSuppressed() {
+        if (suppressed == null) {
+            List<Throwable> all = new ArrayList<>();
+            int[] ends = new int[size];
+            for (int i = 0; i < size; i++) {
+                Collections.addAll(all, chain[i].getSuppressed());
+                ends[i] = all.size();
+            }
+            suppressedEnds = ends;
+            suppressed = Collections.unmodifiableList(all);
+        }
+        return suppressed;
+    }
+
+    /**
+     * @param size the number of throwables of the chain to take into account
+     * @return the number of suppressed exceptions of the first {@code size} throwables of the chain
+     */
+    int suppressedCount(int size) {
+        getSuppressed();
+        return size == 0 ? 0 : suppressedEnds[size - 1];
+    }
+
+    private static boolean contains(Throwable[] chain, int size, Throwable throwable) {
+        for (int i = 0; i < size; i++) {
+            if (chain[i] == throwable) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
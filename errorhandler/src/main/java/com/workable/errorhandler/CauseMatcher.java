@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler;
+
+import java.util.List;
+
+/**
+ * A {@link Matcher} that looks past the error itself, into its causes or its suppressed exceptions.
+ * <p>
+ * Most errors arrive wrapped, e.g. an {@code HttpException} inside a {@code CompositeException} or an
+ * {@code SQLException} inside a framework exception. A cause matcher applies a plain matcher to:
+ * <ul>
+ * <li>{@link Scope#ANY_CAUSE} the error or any of its causes</li>
+ * <li>{@link Scope#ROOT_CAUSE} the last of its causes, or the error itself if it has none</li>
+ * <li>{@link Scope#SUPPRESSED} any suppressed exception of the error or of its causes</li>
+ * </ul>
+ * When dispatched by an {@link ErrorHandler}, all cause matchers share the {@link CauseChain} of the error,
+ * which is computed once.
+ *
+ * <pre>
+ * {@code
+ *   ErrorHandler
+ *      .create()
+ *      .on(CauseMatcher.anyCause(new ExceptionMatcher(SQLException.class)).maxDepth(3), (throwable, errorHandler) -> {
+ *          // ...
+ *      });
+ * }
+ * </pre>
+ */
+public final class CauseMatcher implements ContextMatcher {
+
+    /**
+     * Which throwables of the {@link CauseChain} a {@link CauseMatcher} checks
+     */
+    public enum Scope {
+        ANY_CAUSE,
+        ROOT_CAUSE,
+        SUPPRESSED
+    }
+
+    private final Scope scope;
+    private final Matcher matcher;
+    private final int maxDepth;
+
+    private CauseMatcher(Scope scope, Matcher matcher, int maxDepth) {
+        this.scope = scope;
+        this.matcher = matcher;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @param scope   the throwables to check
+     * @param matcher the matcher to apply to each of them
+     * @return a new cause matcher, following up to {@link CauseChain#MAX_DEPTH} causes
+     */
+    public static CauseMatcher of(Scope scope, Matcher matcher) {
+        if (scope == null) {
+            throw new IllegalArgumentException("scope cannot be null");
+        }
+        if (matcher == null) {
+            throw new IllegalArgumentException("matcher cannot be null");
+        }
+        return new CauseMatcher(scope, matcher, CauseChain.MAX_DEPTH);
+    }
+
+    /**
+     * @param matcher the matcher to apply
+     * @return a matcher for the error or any of its causes
+     */
+    public static CauseMatcher anyCause(Matcher matcher) {
+        return of(Scope.ANY_CAUSE, matcher);
+    }
+
+    /**
+     * @param matcher the matcher to apply
+     * @return a matcher for the root cause of the error
+     */
+    public static CauseMatcher rootCause(Matcher matcher) {
+        return of(Scope.ROOT_CAUSE, matcher);
+    }
+
+    /**
+     * @param matcher the matcher to apply
+     * @return a matcher for the suppressed exceptions of the error and its causes
+     */
+    public static CauseMatcher suppressed(Matcher matcher) {
+        return of(Scope.SUPPRESSED, matcher);
+    }
+
+    /**
+     * Limit the causes checked to the first {@code maxDepth} ones below the error.
+     * With {@link Scope#ROOT_CAUSE}, the deepest cause within the limit is taken as the root.
+     *
+     * @param maxDepth the most causes to follow, zero for the error itself only
+     * @return a new cause matcher with the given limit
+     */
+    public CauseMatcher maxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth cannot be negative");
+        }
+        return new CauseMatcher(scope, matcher, Math.min(maxDepth, CauseChain.MAX_DEPTH));
+    }
+
+    @Override
+    public boolean matches(Throwable throwable) {
+        return matches(CauseChain.of(throwable));
+    }
+
+    @Override
+    public boolean matches(Throwable throwable, HandlingContext context) {
+        return matches(context.getCauseChain());
+    }
+
+    /**
+     * @param chain the cause chain of the error
+     * @return true if the error matches
+     */
+    public boolean matches(CauseChain chain) {
+        int size = Math.min(chain.size(), maxDepth + 1);
+
+        switch (scope) {
+            case ROOT_CAUSE:
+                return matcher.matches(chain.get(size - 1));
+            case SUPPRESSED:
+                List<Throwable> suppressed = chain.getSuppressed();
+                for (int i = 0, count = chain.suppressedCount(size); i < count; i++) {
+                    if (matcher.matches(suppressed.get(i))) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                for (int i = 0; i < size; i++) {
+                    if (matcher.matches(chain.get(i))) {
+                        return true;
+                    }
+                }
+                return false;
+        }
+    }
+}
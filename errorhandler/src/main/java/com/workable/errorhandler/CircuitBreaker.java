@@ -0,0 +1,403 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs blocks through an {@link ErrorHandler}, and stops running them for a while once too many of them fail with
+ * errors matching a {@link Matcher}, such as server errors or timeouts.
+ * <p>
+ * While the circuit is closed, blocks run as with {@link ErrorHandler#run(BlockExecutor)}, and matching failures are
+ * counted in a sliding window. Once {@code threshold} of them fall within the window, the circuit opens: blocks are
+ * short circuited to the fallback if one is set, or else a {@link CircuitOpenException} is handled in their place.
+ * After the open duration, the circuit turns half open and lets a few probes through. It closes when all probes
+ * succeed, and opens again as soon as one of them fails with a matching error or an {@link Error}. Probes that do
+ * not complete within the probe timeout are given up on, and a new round of probes is let through.
+ *
+ * <pre>
+ * {@code
+ *   CircuitBreaker breaker = CircuitBreaker
+ *      .builder(errorHandler)
+ *      .trip(RetrofitMatcherFactory.createRange().build(Range.of(500, 599)))
+ *      .threshold(5, 10, TimeUnit.SECONDS)
+ *      .openFor(30, TimeUnit.SECONDS)
+ *      .fallback(() -> showCachedFeed())
+ *      .build();
+ *
+ *   breaker.run(() -> loadFeed());
+ * }
+ * </pre>
+ *
+ * The state is kept in atomic fields and changes without locks. A closed circuit costs a single volatile read per
+ * run, and successful runs record nothing.
+ */
+public final class CircuitBreaker {
+
+    /**
+     * Buckets of the sliding window
+     */
+    private static final int BUCKETS = 10;
+
+    /**
+     * Bits of a bucket holding its failure count, the rest hold the bucket epoch
+     */
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private static final State CLOSED = new State(false, 0L, 0);
+
+    private final ErrorHandler errorHandler;
+    private final Matcher matcher;
+    private final int threshold;
+    private final long bucketNanos;
+    private final long openNanos;
+    private final long probeTimeoutNanos;
+    private final int probes;
+    private final BlockExecutor fallback;
+    private final long origin = System.nanoTime();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicReference<State> state = new AtomicReference<>(CLOSED);
+    private final CircuitOpenException openException = new CircuitOpenException(this);
+
+    private CircuitBreaker(Builder builder) {
+        this.errorHandler = builder.errorHandler;
+        this.matcher = builder.matcher;
+        this.threshold = builder.threshold;
+        this.bucketNanos = Math.max(1L, builder.windowNanos / BUCKETS);
+        this.openNanos = builder.openNanos;
+        this.probeTimeoutNanos = builder.probeTimeoutNanos < 0 ? builder.openNanos : builder.probeTimeoutNanos;
+        this.probes = builder.probes;
+        this.fallback = builder.fallback;
+    }
+
+    /**
+     * @param errorHandler the ErrorHandler to handle failures with
+     * @return a new {@link Builder}
+     */
+    public static Builder builder(ErrorHandler errorHandler) {
+        if (errorHandler == null) {
+            throw new IllegalArgumentException("errorHandler cannot be null");
+        }
+        return new Builder(errorHandler);
+    }
+
+    /**
+     * Run {@code blockExecutor} unless the circuit is open, and handle its failure if any.
+     * While the circuit is open, run the fallback instead, or handle a {@link CircuitOpenException}.
+     *
+     * @param blockExecutor the block to run
+     */
+    public void run(BlockExecutor blockExecutor) {
+        State current = acquire();
+        if (current == null) {
+            shortCircuit();
+            return;
+        }
+
+        try {
+            blockExecutor.invoke();
+        } catch (Exception exception) {
+            if (matcher.matches(exception)) {
+                onFailure(current);
+            } else {
+                onSuccess(current);
+            }
+            errorHandler.handle(exception);
+            return;
+        } catch (Error error) {
+            if (current != CLOSED) {
+                onFailure(current);
+            }
+            throw error;
+        }
+        onSuccess(current);
+    }
+
+    /**
+     * @return true if runs are currently short circuited, false if the circuit is closed or half open
+     */
+    public boolean isOpen() {
+        State current = state.get();
+        return current != CLOSED && !current.halfOpen && System.nanoTime() - current.openedAt < openNanos;
+    }
+
+    /**
+     * Close the circuit and forget the failures recorded so far
+     */
+    public void reset() {
+        state.set(CLOSED);
+        clearWindow();
+    }
+
+    /**
+     * @return the state the run belongs to, or null if the run should be short circuited
+     */
+    private State acquire() {
+        State current = state.get();
+        while (current != CLOSED) {
+            long now = System.nanoTime();
+            if (current.halfOpen) {
+                if (current.tryProbe()) {
+                    return current;
+                }
+                if (now - current.openedAt < probeTimeoutNanos) {
+                    return null;
+                }
+            } else if (now - current.openedAt < openNanos) {
+                return null;
+            }
+            // let a new round of probes through, once the open duration is over or the last round timed out
+            State probing = new State(true, now, probes);
+            if (state.compareAndSet(current, probing)) {
+                current = probing;
+            } else {
+                current = state.get();
+            }
+        }
+        return CLOSED;
+    }
+
+    private void onFailure(State current) {
+        long now = System.nanoTime();
+        if (current == CLOSED) {
+            if (record(now) >= threshold) {
+                state.compareAndSet(CLOSED, new State(false, now, 0));
+            }
+        } else {
+            state.compareAndSet(current, new State(false, now, 0));
+        }
+    }
+
+    private void onSuccess(State current) {
+        if (current != CLOSED && current.succeeded.incrementAndGet() == probes
+                && state.compareAndSet(current, CLOSED)) {
+            clearWindow();
+        }
+    }
+
+    private void shortCircuit() {
+        if (fallback != null) {
+            errorHandler.run(fallback);
+        } else {
+            errorHandler.handle(openException);
+        }
+    }
+
+    /**
+     * Count a failure in the bucket of {@code now}, and sum up the failures of the buckets within the window.
+     * Each bucket packs its epoch and its count in a single long, so that moving it to a new epoch and counting
+     * the failure take a single compare and set.
+     */
+    private int record(long now) {
+        long epoch = (now - origin) / bucketNanos;
+        int index = (int) (epoch % BUCKETS);
+        for (;;) {
+            long bucket = buckets.get(index);
+            long next = bucket >>> COUNT_BITS == epoch
+                    ? Math.min(bucket + 1, (epoch << COUNT_BITS) | COUNT_MASK)
+                    : (epoch << COUNT_BITS) | 1;
+            if (buckets.compareAndSet(index, bucket, next)) {
+                break;
+            }
+        }
+
+        long failures = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucket = buckets.get(i);
+            if (epoch - (bucket >>> COUNT_BITS) < BUCKETS) {
+                failures += bucket & COUNT_MASK;
+            }
+        }
+        return (int) Math.min(failures, Integer.MAX_VALUE);
+    }
+
+    private void clearWindow() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0L);
+        }
+    }
+
+    /**
+     * An open or half open circuit, {@code openedAt} being the time it opened or started letting probes through.
+     * Every change of state creates a new one, so that late results of probes belonging to an older state
+     * cannot affect the current one.
+     */
+    private static final class State {
+        final boolean halfOpen;
+        final long openedAt;
+        final AtomicInteger permits;
+        final AtomicInteger succeeded = new AtomicInteger();
+
+        State(boolean halfOpen, long openedAt, int probes) {
+            this.halfOpen = halfOpen;
+            this.openedAt = openedAt;
+            this.permits = new AtomicInteger(probes);
+        }
+
+        boolean tryProbe() {
+            for (;;) {
+                int left = permits.get();
+                if (left <= 0) {
+                    return false;
+                }
+                if (permits.compareAndSet(left, left - 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builder of circuit breakers, see {@link CircuitBreaker#builder(ErrorHandler)}.
+     * By default, any exception trips the circuit, and 5 failures within 10 seconds open it for 30 seconds,
+     * before a single probe is let through.
+     */
+    public static final class Builder {
+
+        private final ErrorHandler errorHandler;
+        private Matcher matcher = new ExceptionMatcher(Exception.class);
+        private int threshold = 5;
+        private long windowNanos = TimeUnit.SECONDS.toNanos(10);
+        private long openNanos = TimeUnit.SECONDS.toNanos(30);
+        private long probeTimeoutNanos = -1;
+        private int probes = 1;
+        private BlockExecutor fallback;
+
+        private Builder(ErrorHandler errorHandler) {
+            this.errorHandler = errorHandler;
+        }
+
+        /**
+         * Count failures matching {@code matcher} towards opening the circuit. Other failures are handled
+         * but not counted, and let a half open circuit close.
+         *
+         * @param matcher the matcher of failures
+         * @return this builder
+         */
+        public Builder trip(Matcher matcher) {
+            if (matcher == null) {
+                throw new IllegalArgumentException("matcher cannot be null");
+            }
+            this.matcher = matcher;
+            return this;
+        }
+
+        /**
+         * Count failures of type {@code errorType} towards opening the circuit
+         *
+         * @param errorType the type of failures
+         * @return this builder
+         */
+        public Builder trip(Class<? extends Exception> errorType) {
+            return trip(new ExceptionMatcher(errorType));
+        }
+
+        /**
+         * Open the circuit once {@code failures} matching failures happen within {@code window}
+         *
+         * @param failures the number of failures
+         * @param window   the length of the sliding window
+         * @param unit     the unit of {@code window}
+         * @return this builder
+         */
+        public Builder threshold(int failures, long window, TimeUnit unit) {
+            if (failures < 1 || failures > COUNT_MASK || window < 1) {
+                throw new IllegalArgumentException("failures must be between 1 and 2^20 and window positive");
+            }
+            this.threshold = failures;
+            this.windowNanos = unit.toNanos(window);
+            return this;
+        }
+
+        /**
+         * Keep the circuit open for {@code duration} before letting probes through
+         *
+         * @param duration the open duration
+         * @param unit     the unit of {@code duration}
+         * @return this builder
+         */
+        public Builder openFor(long duration, TimeUnit unit) {
+            if (duration < 0) {
+                throw new IllegalArgumentException("duration cannot be negative");
+            }
+            this.openNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Let {@code probes} runs through a half open circuit, all of which have to succeed for it to close
+         *
+         * @param probes the number of probes
+         * @return this builder
+         */
+        public Builder halfOpenProbes(int probes) {
+            if (probes < 1) {
+                throw new IllegalArgumentException("probes must be positive");
+            }
+            this.probes = probes;
+            return this;
+        }
+
+        /**
+         * Let a new round of probes through a half open circuit if the last round has not completed within
+         * {@code timeout}, so that a probe that hangs cannot keep the circuit half open. Defaults to the open
+         * duration.
+         *
+         * @param timeout the probe timeout
+         * @param unit    the unit of {@code timeout}
+         * @return this builder
+         */
+        public Builder probeTimeout(long timeout, TimeUnit unit) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("timeout cannot be negative");
+            }
+            this.probeTimeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * Run {@code fallback} in place of blocks while the circuit is open, instead of handling
+         * a {@link CircuitOpenException}. Failures of the fallback are handled as well.
+         *
+         * @param fallback the fallback block
+         * @return this builder
+         */
+        public Builder fallback(BlockExecutor fallback) {
+            this.fallback = fallback;
+            return this;
+        }
+
+        /**
+         * @return the circuit breaker
+         */
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
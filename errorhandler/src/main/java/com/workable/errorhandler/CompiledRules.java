@@ -0,0 +1,46 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler;
+
+/**
+ * The actions registered via {@code on} on a frozen ErrorHandler, compiled by a {@link RuleCompiler}.
+ * <p>
+ * {@link ErrorHandler#handle(Throwable)} uses them in place of matching the registered actions one by one,
+ * unless a listener is installed, the ErrorHandler is in deferred mode or the error is an error code
+ * handled via {@link ErrorHandler#handleCode(Object)}.
+ */
+public interface CompiledRules {
+
+    /**
+     * Execute the actions that match {@code error} via {@link HandlingContext#execute(Action, Throwable)},
+     * in registration order. {@link HandlingContext#isSkipFollowing()} is checked before each action and
+     * {@link ContextMatcher}s are handed the {@code context}.
+     *
+     * @param error   the error being handled
+     * @param context the context of the current {@code handle} call
+     * @return true if any action was executed
+     */
+    boolean dispatch(Throwable error, HandlingContext context);
+}
@@ -0,0 +1,271 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs blocks through an {@link ErrorHandler}, no more of them at once than a limit that adapts to overload.
+ * <p>
+ * Failures of blocks run through the limiter count as overload when an {@code on} rule executes the
+ * {@link #overloaded()} action for them, so the limiter follows the classification already configured on the
+ * ErrorHandler, for example of 429 and 503 responses or timeouts. Errors the ErrorHandler gets from anywhere else
+ * leave the limit alone. The limit grows additively while blocks succeed with the limiter in use, and shrinks
+ * multiplicatively on overload, once for all the blocks admitted before it shrank, so that a burst of failures
+ * from a single outage shrinks it only once. Blocks over the limit do not run, and an {@link OverloadException}
+ * is handled in their place, so load is shed before requests queue up downstream.
+ *
+ * <pre>
+ * {@code
+ *   ConcurrencyLimiter limiter = ConcurrencyLimiter
+ *      .builder(errorHandler)
+ *      .limit(20, 1, 200)
+ *      .build();
+ *
+ *   errorHandler
+ *      .on(Range.of(429, 429), limiter.overloaded())
+ *      .on(Range.of(503, 503), limiter.overloaded())
+ *      .on(SocketTimeoutException.class, limiter.overloaded())
+ *      .on(OverloadException.class, (throwable, handler) -> showTryLater());
+ *
+ *   limiter.run(() -> loadFeed());
+ * }
+ * </pre>
+ *
+ * The limit and the number of blocks running are atomic fields, updated without locks.
+ */
+public final class ConcurrencyLimiter {
+
+    /**
+     * The limiter that ran the failed block, and the generation of the limit when it was admitted
+     */
+    private static final ContextKey<ConcurrencyLimiter> LIMITER = ContextKey.create("concurrencyLimiter");
+    private static final ContextKey.Counter GENERATION = ContextKey.counter("concurrencyLimiter.generation");
+
+    private final ErrorHandler errorHandler;
+    private final double minLimit;
+    private final double maxLimit;
+    private final double backoff;
+    private final AtomicLong limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong generation = new AtomicLong();
+    private final OverloadException overloadException = new OverloadException(this);
+    private final Action overloaded = ErrorHandler.withContext(new ContextAction() {
+        @Override
+        public void execute(Throwable throwable, HandlingContext context) {
+            if (context.get(LIMITER) == ConcurrencyLimiter.this) {
+                decrease(context.getCount(GENERATION));
+            }
+        }
+    });
+
+    private ConcurrencyLimiter(Builder builder) {
+        this.errorHandler = builder.errorHandler;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoff = builder.backoff;
+        this.limit = new AtomicLong(Double.doubleToRawLongBits(builder.initialLimit));
+    }
+
+    /**
+     * @param errorHandler the ErrorHandler to handle failures and rejections with
+     * @return a new {@link Builder}
+     */
+    public static Builder builder(ErrorHandler errorHandler) {
+        if (errorHandler == null) {
+            throw new IllegalArgumentException("errorHandler cannot be null");
+        }
+        return new Builder(errorHandler);
+    }
+
+    /**
+     * Run {@code blockExecutor} if fewer blocks than the limit are running, and handle its failure if any.
+     * Otherwise handle an {@link OverloadException} without running it.
+     *
+     * @param blockExecutor the block to run
+     */
+    public void run(BlockExecutor blockExecutor) {
+        long admitted = generation.get();
+        int running = tryAcquire();
+        if (running < 0) {
+            errorHandler.handle(overloadException);
+            return;
+        }
+
+        Exception failure = null;
+        try {
+            blockExecutor.invoke();
+        } catch (Exception exception) {
+            failure = exception;
+        } finally {
+            inFlight.decrementAndGet();
+        }
+
+        if (failure != null) {
+            HandlingContext context = new HandlingContext();
+            context.put(LIMITER, this);
+            context.setCount(GENERATION, admitted);
+            errorHandler.handle(failure, context);
+        } else {
+            increase(running);
+        }
+    }
+
+    /**
+     * The action to register on the rules of overload errors, so that they shrink the limit.
+     * It only acts on the failures of blocks run through this limiter. The same instance is returned on every call.
+     *
+     * @return the overload action
+     */
+    public Action overloaded() {
+        return overloaded;
+    }
+
+    /**
+     * @return the current limit
+     */
+    public int getLimit() {
+        return (int) currentLimit();
+    }
+
+    /**
+     * @return the number of blocks running
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the number of blocks running including this one, or -1 if the limit is reached
+     */
+    private int tryAcquire() {
+        int max = (int) currentLimit();
+        for (;;) {
+            int running = inFlight.get();
+            if (running >= max) {
+                return -1;
+            }
+            if (inFlight.compareAndSet(running, running + 1)) {
+                return running + 1;
+            }
+        }
+    }
+
+    /**
+     * Grow the limit by one per limit's worth of successes, as long as at least half of it was in use,
+     * so that an idle limiter does not grow without bound.
+     */
+    private void increase(int running) {
+        for (;;) {
+            long bits = limit.get();
+            double current = Double.longBitsToDouble(bits);
+            if (running * 2 < current || current >= maxLimit) {
+                return;
+            }
+            double next = Math.min(maxLimit, current + 1.0 / current);
+            if (limit.compareAndSet(bits, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Shrink the limit, unless it already shrank since the failed block was admitted: that block ran under the
+     * old limit, so its failure is part of the overload that the last decrease answered.
+     *
+     * @param admitted the generation of the limit when the failed block was admitted
+     */
+    private void decrease(long admitted) {
+        if (!generation.compareAndSet(admitted, admitted + 1)) {
+            return;
+        }
+        for (;;) {
+            long bits = limit.get();
+            double current = Double.longBitsToDouble(bits);
+            double next = Math.max(minLimit, current * backoff);
+            if (next == current || limit.compareAndSet(bits, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    private double currentLimit() {
+        return Double.longBitsToDouble(limit.get());
+    }
+
+    /**
+     * Builder of concurrency limiters, see {@link ConcurrencyLimiter#builder(ErrorHandler)}.
+     * By default, the limit starts at 20 and stays between 1 and 1000, and each overload error
+     * shrinks it by 10%.
+     */
+    public static final class Builder {
+
+        private final ErrorHandler errorHandler;
+        private double initialLimit = 20;
+        private double minLimit = 1;
+        private double maxLimit = 1000;
+        private double backoff = 0.9;
+
+        private Builder(ErrorHandler errorHandler) {
+            this.errorHandler = errorHandler;
+        }
+
+        /**
+         * @param initial the limit to start with
+         * @param min     the lowest the limit can shrink to
+         * @param max     the highest the limit can grow to
+         * @return this builder
+         */
+        public Builder limit(int initial, int min, int max) {
+            if (min < 1 || initial < min || max < initial) {
+                throw new IllegalArgumentException("limits must satisfy 1 <= min <= initial <= max");
+            }
+            this.initialLimit = initial;
+            this.minLimit = min;
+            this.maxLimit = max;
+            return this;
+        }
+
+        /**
+         * @param ratio the ratio the limit is multiplied with on every overload error
+         * @return this builder
+         */
+        public Builder backoff(double ratio) {
+            if (!(ratio > 0 && ratio < 1)) {
+                throw new IllegalArgumentException("ratio must be between 0 and 1");
+            }
+            this.backoff = ratio;
+            return this;
+        }
+
+        /**
+         * @return the concurrency limiter
+         */
+        public ConcurrencyLimiter build() {
+            return new ConcurrencyLimiter(this);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A typed key to share data between the actions executed for the same error, through a {@link HandlingContext}.
+ * <p>
+ * Every key is assigned a fixed slot when created, so keys are meant to be created once and kept in constants:
+ * <pre>
+ * {@code
+ *   static final ContextKey<ErrorBody> ERROR_BODY = ContextKey.create("errorBody");
+ *   static final ContextKey.Counter RETRIES = ContextKey.counter("retries");
+ *   static final ContextKey.Flag REPORTED = ContextKey.flag("reported");
+ * }
+ * </pre>
+ *
+ * @param <T> the type of the value
+ */
+public final class ContextKey<T> {
+
+    /**
+     * Flags are packed in the bits of a single {@code long}
+     */
+    static final int MAX_FLAGS = 64;
+
+    private static final AtomicInteger valueSlots = new AtomicInteger();
+    private static final AtomicInteger counterSlots = new AtomicInteger();
+    private static final AtomicInteger flagSlots = new AtomicInteger();
+
+    final int slot;
+    private final String name;
+
+    private ContextKey(int slot, String name) {
+        this.slot = slot;
+        this.name = name;
+    }
+
+    /**
+     * Create a key for values of type {@code T}
+     *
+     * @param <T>  the type of the value
+     * @param name a name for the key, for debugging purposes only
+     * @return a new key
+     */
+    public static <T> ContextKey<T> create(String name) {
+        return new ContextKey<>(valueSlots.getAndIncrement(), name);
+    }
+
+    /**
+     * Create a key for a {@code long} counter, which starts from zero on every error
+     *
+     * @param name a name for the key, for debugging purposes only
+     * @return a new counter key
+     */
+    public static Counter counter(String name) {
+        return new Counter(counterSlots.getAndIncrement(), name);
+    }
+
+    /**
+     * Create a key for a flag, which is unset on every error
+     *
+     * @param name a name for the key, for debugging purposes only
+     * @return a new flag key
+     * @throws IllegalStateException if {@value #MAX_FLAGS} flags have already been created
+     */
+    public static Flag flag(String name) {
+        int slot = flagSlots.getAndIncrement();
+        if (slot >= MAX_FLAGS) {
+            throw new IllegalStateException("cannot create more than " + MAX_FLAGS + " flags");
+        }
+        return new Flag(slot, name);
+    }
+
+    static int valueSlotCount() {
+        return valueSlots.get();
+    }
+
+    static int counterSlotCount() {
+        return counterSlots.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ContextKey(" + name + ")";
+    }
+
+    /**
+     * A key for a {@code long} counter, see {@link #counter(String)}
+     */
+    public static final class Counter {
+
+        final int slot;
+        private final String name;
+
+        private Counter(int slot, String name) {
+            this.slot = slot;
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return "ContextKey.Counter(" + name + ")";
+        }
+    }
+
+    /**
+     * A key for a flag, see {@link #flag(String)}
+     */
+    public static final class Flag {
+
+        final long mask;
+        private final String name;
+
+        private Flag(int slot, String name) {
+            this.mask = 1L << slot;
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return "ContextKey.Flag(" + name + ")";
+        }
+    }
+}
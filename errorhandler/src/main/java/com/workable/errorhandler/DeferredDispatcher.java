@@ -0,0 +1,267 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A dedicated thread that handles errors on behalf of the threads that got them,
+ * for {@link ErrorHandler}s in deferred mode, see {@link ErrorHandler#deferTo(DeferredDispatcher)}.
+ * <p>
+ * Errors are passed to the thread through a lock-free, multi-producer single-consumer queue, so that handing
+ * an error over costs a single atomic swap. The thread parks while the queue is empty.
+ *
+ * <pre>
+ * {@code
+ *   DeferredDispatcher dispatcher = DeferredDispatcher.start();
+ *
+ *   ErrorHandler
+ *      .create()
+ *      .deferTo(dispatcher)
+ *      .on(AuthException.class, ErrorHandler.inline((throwable, errorHandler) -> session.invalidate()))
+ *      .always((throwable, errorHandler) -> crashReporter.send(throwable));
+ * }
+ * </pre>
+ *
+ * Deferral applies to the errors handled through the instance it is set on, along with the actions of its
+ * parents. It is not inherited, so setting it on the default ErrorHandler leaves handlers created from it
+ * handling errors on the calling thread.
+ * <p>
+ * Errors are handled one at a time, in the order they were handed over. An action that throws aborts the
+ * handling of its error only; the exception is passed to the uncaught exception handler of the thread.
+ */
+public final class DeferredDispatcher implements Closeable {
+
+    private final AtomicReference<Node> tail;
+    private Node head;
+
+    private final AtomicBoolean parked = new AtomicBoolean();
+    private volatile boolean closed;
+
+    /**
+     * Guards the queue once the dispatcher thread is done with it, see {@link #terminate()}
+     */
+    private final Object drainLock = new Object();
+    private boolean terminated;
+
+    private final Thread thread;
+
+    /**
+     * Captured up front, as a thread that has terminated no longer reports its handler,
+     * while errors may still be handled on its behalf, see {@link #terminate()}
+     */
+    private final Thread.UncaughtExceptionHandler uncaughtExceptionHandler;
+
+    private DeferredDispatcher(ThreadFactory threadFactory) {
+        Node stub = new Node(null, null);
+        this.head = stub;
+        this.tail = new AtomicReference<>(stub);
+        this.thread = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                dispatchLoop();
+                terminate();
+            }
+        });
+        Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+        this.uncaughtExceptionHandler = handler != null ? handler : Thread.getDefaultUncaughtExceptionHandler();
+        this.thread.start();
+    }
+
+    /**
+     * Start a dispatcher on a new daemon thread
+     *
+     * @return the started dispatcher
+     */
+    public static DeferredDispatcher start() {
+        return start(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setName("error-handler-dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Start a dispatcher on a thread created by {@code threadFactory}
+     *
+     * @param threadFactory creates the dispatcher thread
+     * @return the started dispatcher
+     */
+    public static DeferredDispatcher start(ThreadFactory threadFactory) {
+        if (threadFactory == null) {
+            throw new IllegalArgumentException("threadFactory cannot be null");
+        }
+        return new DeferredDispatcher(threadFactory);
+    }
+
+    /**
+     * Hand the rest of a dispatch over to the dispatcher thread. Once closed,
+     * the dispatch is completed on the calling thread instead.
+     *
+     * @param context the context of the dispatch, positioned by {@link HandlingContext#next()}
+     * @param action  the action returned by the last call to {@code next()}, or null if not called yet
+     */
+    void submit(HandlingContext context, Action action) {
+        if (closed) {
+            ErrorHandler.dispatch(context, action);
+            return;
+        }
+
+        Node node = new Node(context, action);
+        Node previous = tail.getAndSet(node);
+        previous.next = node;
+
+        if (closed) {
+            // closed while handing over, the dispatcher thread may have stopped before seeing the node
+            synchronized (drainLock) {
+                if (terminated) {
+                    drain();
+                }
+            }
+            return;
+        }
+
+        if (parked.get() && parked.compareAndSet(true, false)) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Handle the errors already handed over and stop the dispatcher thread.
+     * Errors handed over from then on are handled on the calling thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+
+        boolean interrupted = false;
+        while (thread.isAlive() && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread != Thread.currentThread()) {
+            terminate();
+        }
+    }
+
+    /**
+     * Take over the queue once the dispatcher loop has stopped, and handle the errors left in it, including
+     * those of producers that saw the dispatcher open but handed their error over after it stopped. Those
+     * producers handle their own errors from then on, see {@link #submit(HandlingContext, Action)}.
+     */
+    private void terminate() {
+        synchronized (drainLock) {
+            terminated = true;
+            drain();
+        }
+    }
+
+    /**
+     * Handle every error in the queue, waiting for producers that swapped the tail to link their node
+     */
+    private void drain() {
+        for (;;) {
+            Node node = head.next;
+            if (node != null) {
+                head = node;
+                dispatch(node);
+            } else if (tail.get() == head) {
+                return;
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private void dispatchLoop() {
+        for (;;) {
+            Node node = head.next;
+            if (node != null) {
+                head = node;
+                dispatch(node);
+                continue;
+            }
+
+            if (closed && isEmpty()) {
+                return;
+            }
+
+            parked.set(true);
+            if (isEmpty() && !closed) {
+                LockSupport.park(this);
+            }
+            parked.set(false);
+        }
+    }
+
+    private void dispatch(Node node) {
+        HandlingContext context = node.context;
+        Action action = node.action;
+        node.context = null;
+        node.action = null;
+        try {
+            ErrorHandler.dispatch(context, action);
+        } catch (Throwable throwable) {
+            if (uncaughtExceptionHandler != null) {
+                uncaughtExceptionHandler.uncaughtException(thread, throwable);
+            }
+        }
+    }
+
+    /**
+     * A producer may have swapped the tail without linking its node yet, in which case
+     * the queue is not empty even though there is nothing to poll.
+     */
+    private boolean isEmpty() {
+        return head.next == null && tail.get() == head;
+    }
+
+    private static final class Node {
+        HandlingContext context;
+        Action action;
+        volatile Node next;
+
+        Node(HandlingContext context, Action action) {
+            this.context = context;
+            this.action = action;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Indexes the {@link ActionEntry} list of an {@link ErrorHandler} by the concrete class of the error.
+ * <p>
+ * Entries registered with a plain {@link ExceptionMatcher} are resolved once per error class, via
+ * {@link Class#isAssignableFrom(Class)}, and the result is cached. Entries with any other {@link Matcher}
+ * cannot be decided by class alone, so they are kept in place and evaluated on every dispatch.
+ * Either way the registration order of the entries is preserved.
+ * <p>
+ * Entries registered with an error code are also indexed by that code, for {@link ErrorHandler#handleCode(Object)}.
+ * <p>
+ * The caches are bounded to {@link #MAX_CACHED_CLASSES} error classes and {@link #MAX_CACHED_CODES} error codes.
+ * Once full, each new class or code evicts one that was not looked up recently, see {@link BoundedCache}.
+ * {@link ClassValue} would need no bound for classes on the JVM, but the core module also targets Android,
+ * which lacks it before API level 34.
+ */
+final class DispatchIndex {
+
+    static final int MAX_CACHED_CLASSES = 256;
+    static final int MAX_CACHED_CODES = 256;
+
+    private final ActionEntry[] entries;
+    private final BoundedCache<Class<?>, Dispatch> cache;
+    private final BoundedCache<Object, Dispatch> codeCache;
+
+    DispatchIndex(ActionEntry[] entries) {
+        this.entries = entries;
+        this.cache = new BoundedCache<>(MAX_CACHED_CLASSES);
+        this.codeCache = new BoundedCache<>(MAX_CACHED_CODES);
+    }
+
+    /**
+     * Get the entries that may match an error of the given class, in registration order.
+     *
+     * @param errorClass the concrete class of the error
+     * @return the matching candidates
+     */
+    Dispatch lookup(Class<? extends Throwable> errorClass) {
+        Dispatch dispatch = cache.get(errorClass);
+
+        if (dispatch != null) {
+            return dispatch;
+        }
+
+        return cache.putIfAbsent(errorClass, build(errorClass));
+    }
+
+    /**
+     * Get the entries registered with an error code equal to {@code errorCode}, in registration order.
+     *
+     * @param errorCode the error code
+     * @return the matching entries
+     */
+    Dispatch lookupCode(Object errorCode) {
+        Dispatch dispatch = codeCache.get(errorCode);
+
+        if (dispatch != null) {
+            return dispatch;
+        }
+
+        return codeCache.putIfAbsent(errorCode, buildCode(errorCode));
+    }
+
+    private Dispatch buildCode(Object errorCode) {
+        List<ActionEntry> matches = new ArrayList<>();
+
+        for (ActionEntry entry : entries) {
+            if (errorCode.equals(entry.errorCode)) {
+                matches.add(entry);
+            }
+        }
+
+        boolean[] matched = new boolean[matches.size()];
+        Arrays.fill(matched, true);
+
+        return new Dispatch(matches.toArray(new ActionEntry[matches.size()]), matched);
+    }
+
+    private Dispatch build(Class<? extends Throwable> errorClass) {
+        List<ActionEntry> candidates = new ArrayList<>();
+        List<Boolean> resolved = new ArrayList<>();
+
+        for (ActionEntry entry : entries) {
+            if (isIndexable(entry.matcher)) {
+                if (((ExceptionMatcher) entry.matcher).getErrorClass().isAssignableFrom(errorClass)) {
+                    candidates.add(entry);
+                    resolved.add(Boolean.TRUE);
+                }
+            } else {
+                candidates.add(entry);
+                resolved.add(Boolean.FALSE);
+            }
+        }
+
+        boolean[] matched = new boolean[resolved.size()];
+        for (int i = 0; i < matched.length; i++) {
+            matched[i] = resolved.get(i);
+        }
+
+        return new Dispatch(candidates.toArray(new ActionEntry[candidates.size()]), matched);
+    }
+
+    /**
+     * Subclasses of {@link ExceptionMatcher} may override {@link Matcher#matches(Throwable)},
+     * so only the exact class is safe to decide by error class alone.
+     */
+    private static boolean isIndexable(Matcher matcher) {
+        return matcher.getClass() == ExceptionMatcher.class;
+    }
+
+    /**
+     * The candidate entries for a single error class.
+     * <p>
+     * {@code matched[i]} is true when {@code entries[i]} is already known to match,
+     * otherwise its {@link Matcher} must still be evaluated against the actual error.
+     * <p>
+     * A dispatch may span the levels of a {@link FlatChain}, in which case the entries of level {@code l}
+     * end right before {@code ends[l]}.
+     */
+    static final class Dispatch {
+
+        final ActionEntry[] entries;
+        final boolean[] matched;
+        final int[] ends;
+
+        Dispatch(ActionEntry[] entries, boolean[] matched) {
+            this(entries, matched, new int[]{entries.length});
+        }
+
+        private Dispatch(ActionEntry[] entries, boolean[] matched, int[] ends) {
+            this.entries = entries;
+            this.matched = matched;
+            this.ends = ends;
+        }
+
+        /**
+         * @param levels the single level dispatches to merge, in dispatch order
+         * @return a dispatch spanning all {@code levels}
+         */
+        static Dispatch concat(List<Dispatch> levels) {
+            int length = 0;
+            for (Dispatch level : levels) {
+                length += level.entries.length;
+            }
+
+            ActionEntry[] entries = new ActionEntry[length];
+            boolean[] matched = new boolean[length];
+            int[] ends = new int[levels.size()];
+            int end = 0;
+            for (int i = 0; i < ends.length; i++) {
+                Dispatch level = levels.get(i);
+                System.arraycopy(level.entries, 0, entries, end, level.entries.length);
+                System.arraycopy(level.matched, 0, matched, end, level.matched.length);
+                end += level.entries.length;
+                ends[i] = end;
+            }
+            return new Dispatch(entries, matched, ends);
+        }
+    }
+}
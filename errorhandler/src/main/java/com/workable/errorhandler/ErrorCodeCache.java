@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches how error codes resolve to a {@link MatcherFactory} through an {@link ErrorHandler} and its parents.
+ * <p>
+ * Value bindings, made via {@link ErrorHandler#bind(Object, MatcherFactory)}, and class bindings, made via
+ * {@link ErrorHandler#bindClass(Class, MatcherFactory)}, are cached separately, as the closest
+ * {@link Resolution} of each along the parent chain. The closest of the two wins, a value binding
+ * when both are made on the same ErrorHandler.
+ * <p>
+ * A cache is only valid for the {@code version} of the chain it was built for, see
+ * {@link ErrorHandler#chainVersion()}. Each map is bounded to {@link #MAX_ENTRIES} entries.
+ */
+final class ErrorCodeCache {
+
+    static final int MAX_ENTRIES = 1024;
+
+    final int version;
+
+    private final ConcurrentMap<Object, Resolution> byValue = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, Resolution> byClass = new ConcurrentHashMap<>();
+
+    ErrorCodeCache(int version) {
+        this.version = version;
+    }
+
+    Resolution getByValue(Object errorCode) {
+        return byValue.get(errorCode);
+    }
+
+    Resolution getByClass(Class<?> errorCodeClass) {
+        return byClass.get(errorCodeClass);
+    }
+
+    void putByValue(Object errorCode, Resolution resolution) {
+        if (byValue.size() < MAX_ENTRIES) {
+            byValue.putIfAbsent(errorCode, resolution);
+        }
+    }
+
+    void putByClass(Class<?> errorCodeClass, Resolution resolution) {
+        if (byClass.size() < MAX_ENTRIES) {
+            byClass.putIfAbsent(errorCodeClass, resolution);
+        }
+    }
+
+    /**
+     * A {@link MatcherFactory} found {@code depth} levels up the parent chain
+     */
+    static final class Resolution {
+
+        static final Resolution NONE = new Resolution(Integer.MAX_VALUE, null);
+
+        final int depth;
+        final MatcherFactory matcherFactory;
+
+        Resolution(int depth, MatcherFactory matcherFactory) {
+            this.depth = depth;
+            this.matcherFactory = matcherFactory;
+        }
+    }
+}
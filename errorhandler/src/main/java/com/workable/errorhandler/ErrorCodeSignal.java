@@ -0,0 +1,53 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler;
+
+/**
+ * The error handed to actions by {@link ErrorHandler#handleCode(Object)}, in place of an actual Throwable.
+ * <p>
+ * It carries the error code only. It has no stack trace, cause or suppressed exceptions,
+ * so creating one costs no more than any small object.
+ */
+public final class ErrorCodeSignal extends Throwable {
+
+    private final Object errorCode;
+
+    ErrorCodeSignal(Object errorCode) {
+        super(null, null, false, false);
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * @return the error code being handled
+     */
+    public Object getErrorCode() {
+        return errorCode;
+    }
+
+    @Override
+    public String toString() {
+        return "ErrorCodeSignal: " + errorCode;
+    }
+}
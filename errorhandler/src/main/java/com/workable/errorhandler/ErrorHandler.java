@@ -25,14 +25,21 @@
 package com.workable.errorhandler;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
  * An ErrorHandler is responsible for handling an error by executing one or more actions,
  * instances of {@link Action}, that are found to match the error.
+ * <p>
+ * Actions and bindings can be registered while other threads handle errors. Registration copies them into
+ * immutable snapshots, and each dispatch works on the snapshots of the chain as they were when it started.
+ * </p>
  *
  * @author Stratos Pavlakis - pavlakis@workable.com
  * @author Pavlos-Petros Tournaris - tournaris@workable.com
@@ -42,32 +49,72 @@ public class ErrorHandler {
 
     private static ErrorHandler defaultInstance = null;
 
-    private Map<ErrorCodeIdentifier, MatcherFactory> errorCodeMap;
+    /**
+     * The context of the dispatch in progress, set only while an {@link Action} is executed
+     * so that its calls to {@link #skipFollowing()} and friends reach the right {@link HandlingContext}.
+     */
+    private static final ThreadLocal<HandlingContext> currentContext = new ThreadLocal<>();
+
+    /**
+     * Bumped by every registration on any instance, so that a {@link FlatChain} needs to check
+     * the versions of its levels only after one, see {@link #flatChain()}.
+     */
+    private static final AtomicInteger rulesEpoch = new AtomicInteger();
 
-    private List<ActionEntry> actions;
-    private List<Action> otherwiseActions;
-    private List<Action> alwaysActions;
+    /**
+     * When using custom objects as error codes, make sure you implement {@link Object#equals(Object)}
+     * and {@link Object#hashCode()} to allow ErrorHandler perform equality comparisons between instances.
+     */
+    private volatile Map<Object, MatcherFactory> errorCodes;
+    private volatile Map<Class<?>, MatcherFactory> errorCodeClasses;
 
-    private ThreadLocal<Context> localContext;
+    private volatile int bindingsVersion;
+    private volatile ErrorCodeCache errorCodeCache;
+
+    /**
+     * Guards registration. The lists below are only read and written while holding it, and dispatch reads
+     * the immutable {@link Snapshot} they are copied into instead.
+     */
+    private final Object lock = new Object();
+
+    private final List<ActionEntry> actions;
+    private final List<Action> otherwiseActions;
+    private final List<Action> alwaysActions;
+
+    private volatile Snapshot snapshot;
+    private volatile int rulesVersion;
+    private volatile FlatChain flatChain;
+
+    private volatile boolean alwaysSkipDefaults;
+    private volatile boolean alwaysSkipFollowing;
+    private volatile boolean alwaysSkipAlways;
 
     private ErrorHandler parentErrorHandler;
 
+    private volatile ErrorHandlerListener listener;
+
+    private volatile DeferredDispatcher deferredDispatcher;
+
+    private final boolean frozen;
+
+    /**
+     * The {@code on} actions of a frozen instance, as compiled via {@link #freeze(RuleCompiler)}
+     */
+    final CompiledRules compiledRules;
+
     /**
      * Need a private constructor as we want new instances created
      * only via the {@link #create} methods.
      */
     private ErrorHandler() {
         super();
+        this.frozen = false;
+        this.compiledRules = null;
         this.actions = new ArrayList<>();
         this.otherwiseActions = new ArrayList<>();
         this.alwaysActions = new ArrayList<>();
-        this.errorCodeMap = new HashMap<>();
-        this.localContext = new ThreadLocal<Context>(){
-            @Override
-            protected Context initialValue() {
-                return new Context();
-            }
-        };
+        this.errorCodes = Collections.emptyMap();
+        this.errorCodeClasses = Collections.emptyMap();
     }
 
     /**
@@ -80,6 +127,33 @@ public class ErrorHandler {
         this.parentErrorHandler = parentErrorHandler;
     }
 
+    /**
+     * Create a frozen copy of the given ErrorHandler.
+     *
+     * @param source   the {@link ErrorHandler} to copy
+     * @param parent   the frozen copy of its parent, if any
+     * @param compiler the compiler of the {@code on} actions, if any
+     */
+    private ErrorHandler(ErrorHandler source, ErrorHandler parent, RuleCompiler compiler) {
+        super();
+        this.frozen = true;
+        this.actions = Collections.emptyList();
+        this.otherwiseActions = Collections.emptyList();
+        this.alwaysActions = Collections.emptyList();
+        this.snapshot = source.snapshot();
+        this.compiledRules = compiler == null || snapshot.actions.length == 0
+                ? null
+                : compiler.compile(Collections.unmodifiableList(Arrays.asList(snapshot.actions)));
+        this.errorCodes = source.errorCodes;
+        this.errorCodeClasses = source.errorCodeClasses;
+        this.alwaysSkipDefaults = source.alwaysSkipDefaults;
+        this.alwaysSkipFollowing = source.alwaysSkipFollowing;
+        this.alwaysSkipAlways = source.alwaysSkipAlways;
+        this.listener = source.listener;
+        this.deferredDispatcher = source.deferredDispatcher;
+        this.parentErrorHandler = parent;
+    }
+
     /**
      * Create a new @{link ErrorHandler}, isolated from the default one.
      * <p>
@@ -103,6 +177,23 @@ public class ErrorHandler {
         return new ErrorHandler(defaultErrorHandler());
     }
 
+    /**
+     * Create a new @{link ErrorHandler}, that delegates to {@code parent}.
+     * <p>
+     * Meant for hierarchies deeper than the default one, e.g. one handler per module delegating to
+     * the default one and one per screen delegating to its module's. Actions of {@code parent},
+     * and of its own parents, are executed after the ones registered on this one.
+     *
+     * @param parent the parent @{link ErrorHandler}
+     * @return returns a new {@code ErrorHandler} instance
+     */
+    public static ErrorHandler create(ErrorHandler parent) {
+        if (parent == null) {
+            throw new IllegalArgumentException("parent cannot be null");
+        }
+        return new ErrorHandler(parent);
+    }
+
     /**
      * Get the default @{link ErrorHandler}, a singleton object
      * to which all other instances by default delegate to.
@@ -125,11 +216,15 @@ public class ErrorHandler {
      * @return the current {@code ErrorHandler} instance - to use in command chains
      */
     public ErrorHandler on(Matcher matcher, Action action) {
+        assertNotFrozen();
         if (matcher == null) {
             throw new IllegalArgumentException("matcher cannot be null");
         }
         assertNotNullAction(action);
-        this.actions.add(ActionEntry.from(matcher, action));
+        synchronized (lock) {
+            actions.add(ActionEntry.from(matcher, action));
+            rulesChanged();
+        }
         return this;
     }
 
@@ -142,11 +237,15 @@ public class ErrorHandler {
      * @return the current {@code ErrorHandler} instance - to use in command chains
      */
     public ErrorHandler on(Class<? extends Exception> exceptionClass, Action action) {
+        assertNotFrozen();
         if (exceptionClass == null) {
             throw new IllegalArgumentException("exceptionClass cannot be null");
         }
         assertNotNullAction(action);
-        actions.add(ActionEntry.from(new ExceptionMatcher(exceptionClass), action));
+        synchronized (lock) {
+            actions.add(ActionEntry.from(new ExceptionMatcher(exceptionClass), action));
+            rulesChanged();
+        }
         return this;
     }
 
@@ -157,12 +256,15 @@ public class ErrorHandler {
      * See {@link #bindClass(Class, MatcherFactory)} and {@link #bind(Object, MatcherFactory)}
      * on how to associate arbitrary error codes with actual Throwables via {@link Matcher}.
      * </p>
+     * Such actions are also executed by {@link #handleCode(Object)} for an equal {@code errorCode}.
+     *
      * @param <T> the error code type
      * @param errorCode the error code
      * @param action    the associated action
      * @return the current {@code ErrorHandler} instance - to use in command chains
      */
     public <T> ErrorHandler on(T errorCode, Action action) {
+        assertNotFrozen();
         if (errorCode == null) {
             throw new IllegalArgumentException("errorCode cannot be null");
         }
@@ -172,7 +274,11 @@ public class ErrorHandler {
             throw new UnknownErrorCodeException(errorCode);
         }
 
-        actions.add(ActionEntry.from(matcherFactory.build(errorCode), action));
+        ActionEntry entry = new ActionEntry(matcherFactory.build(errorCode), action, errorCode);
+        synchronized (lock) {
+            actions.add(entry);
+            rulesChanged();
+        }
         return this;
     }
 
@@ -184,8 +290,12 @@ public class ErrorHandler {
      * @return the current {@code ErrorHandler} instance - to use in command chains
      */
     public ErrorHandler otherwise(Action action) {
+        assertNotFrozen();
         assertNotNullAction(action);
-        otherwiseActions.add(action);
+        synchronized (lock) {
+            otherwiseActions.add(action);
+            rulesChanged();
+        }
         return this;
     }
 
@@ -196,77 +306,321 @@ public class ErrorHandler {
      * @return the current {@code ErrorHandler} instance - to use in command chains
      */
     public ErrorHandler always(Action action) {
+        assertNotFrozen();
         assertNotNullAction(action);
-        alwaysActions.add(action);
+        synchronized (lock) {
+            alwaysActions.add(action);
+            rulesChanged();
+        }
         return this;
     }
 
     /**
      * Skip all following actions registered via an {@code on} method
+     * <p>
+     * When called from within an {@link Action} it applies to the error being handled only,
+     * otherwise it applies to every error handled by this instance.
+     * </p>
      * @return the current {@code ErrorHandler} instance - to use in command chains
      */
     public ErrorHandler skipFollowing() {
-        if (localContext != null) {
-            localContext.get().skipFollowing = true;
+        HandlingContext context = currentContext.get();
+        if (context != null) {
+            context.skipFollowing();
+        } else {
+            assertNotFrozen();
+            alwaysSkipFollowing = true;
         }
         return this;
     }
 
     /**
      * Skip all actions registered via {@link #always(Action)}
+     * <p>
+     * When called from within an {@link Action} it applies to the error being handled only,
+     * otherwise it applies to every error handled by this instance.
+     * </p>
      * @return the current {@code ErrorHandler} instance - to use in command chains
      */
     public ErrorHandler skipAlways() {
-        if (localContext != null) {
-            localContext.get().skipAlways = true;
+        HandlingContext context = currentContext.get();
+        if (context != null) {
+            context.skipAlways();
+        } else {
+            assertNotFrozen();
+            alwaysSkipAlways = true;
         }
         return this;
     }
 
     /**
      * Skip the default matching actions if any
+     * <p>
+     * When called from within an {@link Action} it applies to the error being handled only,
+     * otherwise it applies to every error handled by this instance.
+     * </p>
      * @return the current {@code ErrorHandler} instance - to use in command chains
      */
     public ErrorHandler skipDefaults() {
-        if (localContext != null) {
-            localContext.get().skipDefaults = true;
+        HandlingContext context = currentContext.get();
+        if (context != null) {
+            context.skipDefaults();
+        } else {
+            assertNotFrozen();
+            alwaysSkipDefaults = true;
         }
         return this;
     }
 
-    protected void handle(Throwable error, ThreadLocal<Context> context) {
+    /**
+     * Adapt a {@link ContextAction} to an {@link Action}, so that it can be registered through
+     * any of the {@code on}, {@code otherwise} and {@code always} methods.
+     * <p>
+     * The adapted action is handed the {@link HandlingContext} of the error being handled,
+     * without any {@link ThreadLocal} lookups. Calls it makes to {@link #skipFollowing()} and friends,
+     * e.g. through {@link HandlingContext#getErrorHandler()}, apply to that error only, as for any {@link Action}.
+     * </p>
+     *
+     * @param action the action that needs the handling context
+     * @return an {@link Action} to register
+     */
+    public static Action withContext(ContextAction action) {
+        if (action == null) {
+            throw new IllegalArgumentException("action cannot be null");
+        }
+        return new ContextualAction(action);
+    }
+
+    /**
+     * Mark {@code action} to be executed on the thread handling the error, even when
+     * the ErrorHandler is in deferred mode, see {@link #deferTo(DeferredDispatcher)}.
+     * <p>
+     * Meant for actions whose effects the caller of {@link #handle(Throwable)} depends on.
+     * Outside deferred mode the mark makes no difference.
+     * </p>
+     *
+     * @param action the action to execute inline
+     * @return an {@link Action} to register
+     */
+    public static Action inline(Action action) {
+        if (action == null) {
+            throw new IllegalArgumentException("action cannot be null");
+        }
+        return action instanceof InlineAction ? action : new InlineAction(action);
+    }
+
+    /**
+     * Handle {@code error} with a {@code context} that may already hold values for the actions, see
+     * {@link ConcurrencyLimiter}
+     */
+    void handle(Throwable error, HandlingContext context) {
+        start(error, context);
+
+        DeferredDispatcher dispatcher = deferredDispatcher;
+        if (dispatcher == null) {
+            context.compiled = !(error instanceof ErrorCodeSignal);
+            dispatch(context, null);
+            return;
+        }
+
+        Action action = null;
+        if (context.chain.hasInlineActions) {
+            while ((action = context.next()) instanceof InlineAction) {
+                context.errorHandler.execute(action, error, context);
+            }
+            if (action == null) {
+                return;
+            }
+        }
+        dispatcher.submit(context, action);
+    }
+
+    /**
+     * Execute the actions of a started dispatch until it completes
+     *
+     * @param context the context of the dispatch
+     * @param action  the action returned by the last call to {@link HandlingContext#next()} and not executed yet,
+     *                or null to start with the next one
+     */
+    static void dispatch(HandlingContext context, Action action) {
+        if (action == null) {
+            action = context.next();
+        }
+        for (; action != null; action = context.next()) {
+            context.errorHandler.execute(action, context.error, context);
+        }
+    }
+
+
+    /**
+     * Position {@code context} at the first action of this instance, for {@code error}
+     */
+    private void start(Throwable error, HandlingContext context) {
+        context.start(flatChain(), error);
+    }
+
+    /**
+     * Apply the settings of this instance to {@code context}, as the dispatch reaches it,
+     * and notify the listener of this instance, if any, of the error
+     */
+    void enter(HandlingContext context) {
+        context.skipDefaults |= alwaysSkipDefaults;
+        context.skipFollowing |= alwaysSkipFollowing;
+        context.skipAlways |= alwaysSkipAlways;
+        ErrorHandlerListener current = listener;
+        context.listener = current;
+        if (current != null) {
+            current.onDispatch(this, context.error);
+        }
+    }
+
+    /**
+     * Start handling {@code error} one action at a time, through a {@link HandlingCursor}.
+     * <p>
+     * Meant for extensions that need to control when each action gets executed,
+     * for example to wait for an asynchronous action before moving to the next one.
+     * Use {@link #handle(Throwable)} otherwise.
+     * </p>
+     *
+     * @param error the error as a {@link Throwable}
+     * @return a cursor positioned before the first action
+     */
+    public HandlingCursor cursor(Throwable error) {
         if (error == null)
             throw new IllegalArgumentException("error to be checked can not be null");
 
-        localContext = context;
+        HandlingContext context = new HandlingContext();
+        start(error, context);
+        return new HandlingCursor(context);
+    }
 
-        Context ctx = localContext.get();
+    /**
+     * Execute {@code action}, timing it if the {@code context} has a listener.
+     */
+    void execute(Action action, Throwable error, HandlingContext context) {
+        ErrorHandlerListener listener = context.listener;
+        if (listener == null) {
+            invoke(action, error, context);
+            return;
+        }
 
-        for (ActionEntry actionEntry : actions) {
-            if (ctx.skipFollowing) break;
-            if (actionEntry.matcher.matches(error)) {
-                actionEntry.action.execute(error, this);
-                ctx.handled = true;
-            }
+        long start = System.nanoTime();
+        try {
+            invoke(action, error, context);
+        } finally {
+            listener.onAction(this, action, error, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Execute {@code action}, handing it the {@code context} either directly or,
+     * for a plain {@link Action}, through {@link #currentContext}. The latter is set for as long as
+     * any action runs, so that calls to {@link #skipFollowing()} and friends apply to this error only.
+     */
+    private void invoke(Action action, Throwable error, HandlingContext context) {
+        if (action instanceof InlineAction) {
+            action = ((InlineAction) action).delegate;
         }
 
-        if (!ctx.handled && !otherwiseActions.isEmpty()) {
-            for (Action action : otherwiseActions) {
+        HandlingContext previous = currentContext.get();
+        currentContext.set(context);
+        try {
+            if (action instanceof ContextualAction) {
+                ((ContextualAction) action).delegate.execute(error, context);
+            } else {
                 action.execute(error, this);
-                ctx.handled = true;
+            }
+        } finally {
+            if (previous == null) {
+                currentContext.remove();
+            } else {
+                currentContext.set(previous);
             }
         }
+    }
 
-        if (!ctx.skipAlways) {
-            for (Action action : alwaysActions) {
-                action.execute(error, this);
-                ctx.handled = true;
+    /**
+     * Get the {@link Snapshot} of the registered actions, building it if
+     * it was invalidated by a registration since the last dispatch.
+     * <p>
+     * The snapshot is built while holding the registration lock, so that it never misses a registration
+     * that invalidated it. Dispatches that find it built read it without locking.
+     * </p>
+     *
+     * @return the current snapshot
+     */
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (lock) {
+                current = snapshot;
+                if (current == null) {
+                    current = new Snapshot(actions, otherwiseActions, alwaysActions);
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Registering or clearing actions makes the snapshot of this instance and
+     * the flattened chains that include it out of date. Called while holding the registration lock.
+     */
+    private void rulesChanged() {
+        snapshot = null;
+        rulesVersion++;
+        rulesEpoch.incrementAndGet();
+    }
+
+    /**
+     * Get the {@link FlatChain} of this instance and its parents, rebuilding it if any of them
+     * registered or cleared actions since it was built. A frozen chain never changes.
+     * <p>
+     * The versions of the levels are only summed up again once any instance has registered or cleared actions
+     * since the chain was last checked, so that dispatch does not walk the parent chain while rules stay put.
+     * </p>
+     *
+     * @return the current flattened chain
+     */
+    private FlatChain flatChain() {
+        FlatChain chain = flatChain;
+        if (chain != null && frozen) {
+            return chain;
+        }
+
+        int epoch = rulesEpoch.get();
+        if (chain != null && chain.epoch == epoch) {
+            return chain;
+        }
+
+        int version = rulesChainVersion();
+        if (chain == null || chain.version != version) {
+            List<ErrorHandler> handlers = new ArrayList<>();
+            List<Snapshot> snapshots = new ArrayList<>();
+            for (ErrorHandler handler = this; handler != null; handler = handler.parentErrorHandler) {
+                handlers.add(handler);
+                snapshots.add(handler.snapshot());
             }
+            chain = new FlatChain(version, handlers, snapshots);
+            flatChain = chain;
         }
+        // all the registrations counted by the epoch were made before the versions were read
+        chain.epoch = epoch;
+        return chain;
+    }
 
-        if (parentErrorHandler != null && !ctx.skipDefaults) {
-            parentErrorHandler.handle(error, localContext);
+    /**
+     * Like {@link #chainVersion()}, for the registered actions rather than the bindings.
+     *
+     * @return the version of the actions of this instance and its parents
+     */
+    private int rulesChainVersion() {
+        int version = 0;
+        for (ErrorHandler handler = this; handler != null; handler = handler.parentErrorHandler) {
+            version += handler.rulesVersion;
         }
+        return version;
     }
 
     /**
@@ -279,7 +633,7 @@ public class ErrorHandler {
         try {
             blockExecutor.invoke();
         } catch (Exception exception) {
-            handle(exception, localContext);
+            handle(exception);
         }
     }
 
@@ -289,7 +643,28 @@ public class ErrorHandler {
      * @param error the error as a {@link Throwable}
      */
     public void handle(Throwable error) {
-        this.handle(error, localContext);
+        if (error == null)
+            throw new IllegalArgumentException("error to be checked can not be null");
+
+        this.handle(error, new HandlingContext());
+    }
+
+    /**
+     * Handle {@code errorCode} without an actual error, by executing the actions registered
+     * via {@link #on(Object, Action)} for an equal error code.
+     * <p>
+     * No Throwable is created. Actions receive an {@link ErrorCodeSignal} instead, which carries the error code
+     * and no stack trace. The {@code otherwise} and {@code always} actions and the parent ErrorHandlers take part
+     * the same way they do in {@link #handle(Throwable)}, while actions registered with a {@link Matcher} or an
+     * exception class are skipped, as there is no error for them to match.
+     *
+     * @param errorCode the error code
+     */
+    public void handleCode(Object errorCode) {
+        if (errorCode == null)
+            throw new IllegalArgumentException("errorCode cannot be null");
+
+        this.handle(new ErrorCodeSignal(errorCode), new HandlingContext());
     }
 
     /**
@@ -326,7 +701,13 @@ public class ErrorHandler {
      * @return the current {@code ErrorHandler} instance - to use in command chains
      */
     public <T> ErrorHandler bind(T errorCode, MatcherFactory<? super T> matcherFactory) {
-        errorCodeMap.put(new ErrorCodeIdentifier<>(errorCode), matcherFactory);
+        assertNotFrozen();
+        synchronized (lock) {
+            Map<Object, MatcherFactory> bound = new HashMap<>(errorCodes);
+            bound.put(errorCode, matcherFactory);
+            errorCodes = Collections.unmodifiableMap(bound);
+            bindingsVersion++;
+        }
         return this;
     }
 
@@ -365,122 +746,264 @@ public class ErrorHandler {
      * @return the current {@code ErrorHandler} instance - to use in command chains
      */
     public <T> ErrorHandler bindClass(Class<T> errorCodeClass, MatcherFactory<? super T> matcherFactory) {
-        errorCodeMap.put(new ErrorCodeIdentifier<>(errorCodeClass), matcherFactory);
+        assertNotFrozen();
+        synchronized (lock) {
+            Map<Class<?>, MatcherFactory> bound = new HashMap<Class<?>, MatcherFactory>(errorCodeClasses);
+            bound.put(errorCodeClass, matcherFactory);
+            errorCodeClasses = Collections.unmodifiableMap(bound);
+            bindingsVersion++;
+        }
         return this;
     }
 
     @SuppressWarnings("unchecked")
     protected <T> MatcherFactory<? super T> getMatcherFactoryForErrorCode(T errorCode) {
-        MatcherFactory<T> matcherFactory;
-        matcherFactory = errorCodeMap.get(new ErrorCodeIdentifier<>(errorCode));
+        if (errorCodes.isEmpty() && errorCodeClasses.isEmpty() && parentErrorHandler != null) {
+            // Nothing to add to the resolution of the parent, so share its cache
+            return parentErrorHandler.getMatcherFactoryForErrorCode(errorCode);
+        }
+
+        ErrorCodeCache cache = errorCodeCache();
 
-        if (matcherFactory != null) {
-            return matcherFactory;
+        ErrorCodeCache.Resolution byValue = cache.getByValue(errorCode);
+        if (byValue == null) {
+            byValue = resolveByValue(errorCode);
+            cache.putByValue(errorCode, byValue);
         }
 
-        matcherFactory = errorCodeMap.get(new ErrorCodeIdentifier(errorCode.getClass()));
+        if (byValue.depth == 0) {
+            return byValue.matcherFactory;
+        }
 
-        if (matcherFactory != null) {
-            return matcherFactory;
+        Class<?> errorCodeClass = errorCode.getClass();
+        ErrorCodeCache.Resolution byClass = cache.getByClass(errorCodeClass);
+        if (byClass == null) {
+            byClass = resolveByClass(errorCodeClass);
+            cache.putByClass(errorCodeClass, byClass);
         }
 
-        if (parentErrorHandler != null) {
-            return parentErrorHandler.getMatcherFactoryForErrorCode(errorCode);
+        return byValue.depth <= byClass.depth ? byValue.matcherFactory : byClass.matcherFactory;
+    }
+
+    private ErrorCodeCache.Resolution resolveByValue(Object errorCode) {
+        int depth = 0;
+        for (ErrorHandler handler = this; handler != null; handler = handler.parentErrorHandler, depth++) {
+            MatcherFactory matcherFactory = handler.errorCodes.get(errorCode);
+            if (matcherFactory != null) {
+                return new ErrorCodeCache.Resolution(depth, matcherFactory);
+            }
         }
+        return ErrorCodeCache.Resolution.NONE;
+    }
 
-        return null;
+    private ErrorCodeCache.Resolution resolveByClass(Class<?> errorCodeClass) {
+        int depth = 0;
+        for (ErrorHandler handler = this; handler != null; handler = handler.parentErrorHandler, depth++) {
+            MatcherFactory matcherFactory = handler.errorCodeClasses.get(errorCodeClass);
+            if (matcherFactory != null) {
+                return new ErrorCodeCache.Resolution(depth, matcherFactory);
+            }
+        }
+        return ErrorCodeCache.Resolution.NONE;
     }
 
     /**
-     * Clear ErrorHandler instance from all its registered Actions and Matchers.
+     * Get the {@link ErrorCodeCache} for the current bindings of this instance and its parents,
+     * replacing the cached one if any of them has changed since it was built.
+     *
+     * @return the current error code cache
      */
-    public void clear() {
-        actions.clear();
-        errorCodeMap.clear();
-        otherwiseActions.clear();
-        alwaysActions.clear();
-        if (localContext != null) {
-            localContext.get().clear();
+    private ErrorCodeCache errorCodeCache() {
+        int version = chainVersion();
+        ErrorCodeCache cache = errorCodeCache;
+        if (cache == null || cache.version != version) {
+            cache = new ErrorCodeCache(version);
+            errorCodeCache = cache;
         }
+        return cache;
     }
 
     /**
-     * Throws if {@code action} is null
+     * Every {@code bind}, {@code bindClass} and {@code clear} call increments the version of the
+     * instance it's made on, so the sum of the versions along the parent chain changes whenever
+     * any binding of the chain does.
      *
-     * @param action the action to assert against
+     * @return the version of the bindings of this instance and its parents
      */
-    private void assertNotNullAction(Action action) {
-        if (action == null) {
-            throw new IllegalArgumentException("action cannot be null");
+    int chainVersion() {
+        int version = 0;
+        for (ErrorHandler handler = this; handler != null; handler = handler.parentErrorHandler) {
+            version += handler.bindingsVersion;
         }
+        return version;
     }
 
-    private static class Context {
-        private HashMap<String, Object> keys = new HashMap<>();
+    /**
+     * Freeze this ErrorHandler, along with its parent chain, into an immutable copy.
+     * <p>
+     * The frozen copy reflects the registrations made up to this point. Any {@code on}, {@code otherwise},
+     * {@code always}, {@code bind}, {@code bindClass} or {@code clear} call on it throws an
+     * {@link IllegalStateException}, while later registrations on this instance or on the default
+     * ErrorHandler are not seen by it. In return it can be shared by any number of threads that call
+     * {@link #handle(Throwable)} concurrently, without any locking.
+     * </p>
+     *
+     * @return a frozen copy of this {@code ErrorHandler}, or this instance if already frozen
+     */
+    public ErrorHandler freeze() {
+        if (frozen) {
+            return this;
+        }
 
-        boolean handled;
-        boolean skipDefaults = false;
-        boolean skipFollowing = false;
-        boolean skipAlways = false;
+        ErrorHandler frozenParent = parentErrorHandler == null ? null : parentErrorHandler.freeze();
+        return new ErrorHandler(this, frozenParent, null);
+    }
 
-        public Object get(Object key) {
-            return keys.get(key);
+    /**
+     * Freeze this ErrorHandler, along with its parent chain, like {@link #freeze()}, compiling the actions
+     * registered via {@code on} on each of them through {@code compiler}.
+     * <p>
+     * Meant for rule sets that are fixed once configured, to match errors through code specialized for them
+     * instead of checking the registered matchers one by one. Where {@code compiler} returns null the frozen
+     * copy matches errors as usual.
+     * </p>
+     *
+     * @param compiler the compiler, e.g. {@code Specializer} of the {@code error-handler-specializer} module
+     * @return a frozen copy of this {@code ErrorHandler}, even if already frozen
+     */
+    public ErrorHandler freeze(RuleCompiler compiler) {
+        if (compiler == null) {
+            throw new IllegalArgumentException("compiler cannot be null");
         }
 
-        public Object put(String key, Object value) {
-            return keys.put(key, value);
-        }
+        ErrorHandler frozenParent = parentErrorHandler == null ? null : parentErrorHandler.freeze(compiler);
+        return new ErrorHandler(this, frozenParent, compiler);
+    }
 
-        public Object remove(Object key) {
-            return keys.remove(key);
-        }
+    /**
+     * @return true if this instance was created by {@link #freeze()} and accepts no registrations
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Switch to deferred mode, where {@link #handle(Throwable)} hands the error over to {@code dispatcher}
+     * and returns, and the actions of this ErrorHandler and its parents are executed on the dispatcher thread.
+     * <p>
+     * Actions marked via {@link #inline(Action)} that would be executed first for an error are still executed
+     * by the calling thread, before handing the error over. This way they can decide on skipping the
+     * actions that follow. Any action after the first deferred one runs on the dispatcher thread.
+     * <p>
+     * Only errors handled through this instance are deferred. Instances created with this one as their parent
+     * don't inherit the dispatcher and need their own call.
+     *
+     * @param dispatcher the dispatcher, or null to handle errors on the calling thread again
+     * @return the current {@code ErrorHandler} instance
+     */
+    public ErrorHandler deferTo(DeferredDispatcher dispatcher) {
+        assertNotFrozen();
+        this.deferredDispatcher = dispatcher;
+        return this;
+    }
+
+    /**
+     * Install a listener to get notified as this ErrorHandler handles errors, for metrics and tracing.
+     * <p>
+     * Only the part of the dispatch that this ErrorHandler takes part in is reported to it;
+     * parent ErrorHandlers report to their own listeners. Handling costs a single null check
+     * per step while no listener is installed.
+     *
+     * @param listener the listener, or null to remove the current one
+     * @return the current {@code ErrorHandler} instance
+     */
+    public ErrorHandler listener(ErrorHandlerListener listener) {
+        assertNotFrozen();
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * @return the installed {@link ErrorHandlerListener}, or null if none
+     */
+    public ErrorHandlerListener getListener() {
+        return listener;
+    }
 
-        void clear() {
-            keys.clear();
-            skipDefaults = false;
-            skipFollowing = false;
-            skipAlways = false;
+    /**
+     * Clear ErrorHandler instance from all its registered Actions and Matchers.
+     */
+    public void clear() {
+        assertNotFrozen();
+        synchronized (lock) {
+            actions.clear();
+            otherwiseActions.clear();
+            alwaysActions.clear();
+            rulesChanged();
+            errorCodes = Collections.emptyMap();
+            errorCodeClasses = Collections.emptyMap();
+            bindingsVersion++;
+            alwaysSkipDefaults = false;
+            alwaysSkipFollowing = false;
+            alwaysSkipAlways = false;
         }
     }
 
     /**
-     * Used to identify an error code either by its "literal" value
-     * or by its Class.
-     * <p/>
-     * When using custom objects as error codes,
-     * make sure you implement {@link Object#equals(Object)} to allow ErrorHandler
-     * perform equality comparisons between instances.
+     * Throws if {@code action} is null
+     *
+     * @param action the action to assert against
      */
-    private static final class ErrorCodeIdentifier<T> {
-        private T errorCode;
-        private Class<T> errorCodeClass;
+    private void assertNotNullAction(Action action) {
+        if (action == null) {
+            throw new IllegalArgumentException("action cannot be null");
+        }
+    }
 
-        ErrorCodeIdentifier(T errorCode) {
-            this.errorCode = errorCode;
+    /**
+     * Throws if this instance is frozen
+     */
+    private void assertNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("ErrorHandler is frozen");
         }
+    }
+
+    /**
+     * An {@link Action} marked to run on the thread handling the error, see {@link #inline(Action)}.
+     */
+    static final class InlineAction implements Action {
+        private final Action delegate;
 
-        ErrorCodeIdentifier(Class<T> errorCodeClass) {
-            this.errorCodeClass = errorCodeClass;
+        InlineAction(Action delegate) {
+            this.delegate = delegate;
         }
 
         @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            ErrorCodeIdentifier that = (ErrorCodeIdentifier) o;
+        public void execute(Throwable throwable, ErrorHandler errorHandler) {
+            delegate.execute(throwable, errorHandler);
+        }
+    }
 
-            if (errorCode != null ? !errorCode.equals(that.errorCode) : that.errorCode != null)
-                return false;
-            return errorCodeClass != null ? errorCodeClass.equals(that.errorCodeClass) : that.errorCodeClass == null;
+    /**
+     * An {@link Action} adapter for a {@link ContextAction}, see {@link #withContext(ContextAction)}.
+     */
+    private static final class ContextualAction implements Action {
+        private final ContextAction delegate;
 
+        ContextualAction(ContextAction delegate) {
+            this.delegate = delegate;
         }
 
         @Override
-        public int hashCode() {
-            int result = errorCode != null ? errorCode.hashCode() : 0;
-            result = 31 * result + (errorCodeClass != null ? errorCodeClass.hashCode() : 0);
-            return result;
+        public void execute(Throwable throwable, ErrorHandler errorHandler) {
+            HandlingContext context = currentContext.get();
+            if (context == null) {
+                context = new HandlingContext();
+                context.errorHandler = errorHandler;
+                context.error = throwable;
+            }
+            delegate.execute(throwable, context);
         }
     }
 }
@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler;
+
+/**
+ * Gets notified by an {@link ErrorHandler} as it handles an error, for metrics and tracing.
+ * <p>
+ * Install it via {@link ErrorHandler#listener(ErrorHandlerListener)}. Each ErrorHandler notifies only its own
+ * listener, for the part of the dispatch it takes part in, so a listener on the default ErrorHandler also sees
+ * the errors that its children pass on to it.
+ * <p>
+ * Methods are called on the thread handling the error, in the middle of the dispatch, and should return quickly.
+ */
+public interface ErrorHandlerListener {
+
+    /**
+     * Called once per error, as the dispatch reaches the {@link ErrorHandler}, whether it got the error itself
+     * or from one of its children, before any of its matchers is checked.
+     *
+     * @param errorHandler the {@link ErrorHandler} that got the error
+     * @param error        the error being handled
+     */
+    void onDispatch(ErrorHandler errorHandler, Throwable error);
+
+    /**
+     * Called when the matcher of an action registered via an {@code on} method matches the error,
+     * right before its action is executed.
+     *
+     * @param errorHandler the {@link ErrorHandler} the action is registered on
+     * @param actionEntry  the matching entry
+     * @param error        the error being handled
+     */
+    void onMatch(ErrorHandler errorHandler, ActionEntry actionEntry, Throwable error);
+
+    /**
+     * Called when no {@code on} action matched and the {@code otherwise} actions are about to be executed.
+     *
+     * @param errorHandler the {@link ErrorHandler} the actions are registered on
+     * @param error        the error being handled
+     */
+    void onOtherwise(ErrorHandler errorHandler, Throwable error);
+
+    /**
+     * Called when the {@code always} actions are about to be executed.
+     *
+     * @param errorHandler the {@link ErrorHandler} the actions are registered on
+     * @param error        the error being handled
+     */
+    void onAlways(ErrorHandler errorHandler, Throwable error);
+
+    /**
+     * Called when the dispatch moves on to the parent {@link ErrorHandler}.
+     *
+     * @param errorHandler the {@link ErrorHandler} done with the error
+     * @param parent       the parent taking over
+     * @param error        the error being handled
+     */
+    void onParent(ErrorHandler errorHandler, ErrorHandler parent, Throwable error);
+
+    /**
+     * Called after an action has been executed, whether it returned or threw.
+     *
+     * @param errorHandler  the {@link ErrorHandler} that executed the action
+     * @param action        the action
+     * @param error         the error being handled
+     * @param durationNanos how long the action took, in nanoseconds
+     */
+    void onAction(ErrorHandler errorHandler, Action action, Throwable error, long durationNanos);
+}
@@ -26,7 +26,7 @@ package com.workable.errorhandler;
 
 public class ExceptionMatcher implements Matcher {
 
-    private Class<? extends Exception> errorClass;
+    private final Class<? extends Exception> errorClass;
 
     public ExceptionMatcher(Class<? extends Exception> errorClass) {
         this.errorClass = errorClass;
@@ -36,4 +36,11 @@ public class ExceptionMatcher implements Matcher {
     public boolean matches(Throwable throwable) {
         return errorClass.isInstance(throwable);
     }
+
+    /**
+     * @return the class of the errors this matcher matches
+     */
+    public Class<? extends Exception> getErrorClass() {
+        return errorClass;
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The merged view of an {@link ErrorHandler} and all of its parents, so that dispatch costs a single
+ * lookup and a single pass over the candidate actions, no matter how deep the chain is.
+ * <p>
+ * For each error class, the candidate entries of every level are concatenated in dispatch order, child first,
+ * into one {@link DispatchIndex.Dispatch} whose {@code ends} mark where each level stops. The per-level lookups
+ * it is built from stay cached by the {@link DispatchIndex} of each level, so merging costs one array copy.
+ * <p>
+ * A chain is built for a given {@link #version}, the sum of the rules versions of all its levels,
+ * and is replaced as soon as any level registers or clears a rule. The {@link #epoch} it was last checked at
+ * spares that check while no instance registers anything.
+ */
+final class FlatChain {
+
+    static final int MAX_CACHED_CLASSES = DispatchIndex.MAX_CACHED_CLASSES;
+    static final int MAX_CACHED_CODES = DispatchIndex.MAX_CACHED_CODES;
+
+    final int version;
+    // The registration epoch the version was last found current at, see ErrorHandler.flatChain()
+    volatile int epoch = -1;
+    final ErrorHandler[] handlers;
+    final Snapshot[] snapshots;
+    final boolean hasInlineActions;
+
+    private final BoundedCache<Class<?>, DispatchIndex.Dispatch> cache;
+    private final BoundedCache<Object, DispatchIndex.Dispatch> codeCache;
+
+    FlatChain(int version, List<ErrorHandler> handlers, List<Snapshot> snapshots) {
+        this.version = version;
+        this.handlers = handlers.toArray(new ErrorHandler[handlers.size()]);
+        this.snapshots = snapshots.toArray(new Snapshot[snapshots.size()]);
+
+        boolean inline = false;
+        for (Snapshot snapshot : this.snapshots) {
+            inline |= snapshot.hasInlineActions;
+        }
+        this.hasInlineActions = inline;
+
+        this.cache = this.snapshots.length > 1
+                ? new BoundedCache<Class<?>, DispatchIndex.Dispatch>(MAX_CACHED_CLASSES) : null;
+        this.codeCache = this.snapshots.length > 1
+                ? new BoundedCache<Object, DispatchIndex.Dispatch>(MAX_CACHED_CODES) : null;
+    }
+
+    /**
+     * @param errorClass the concrete class of the error
+     * @return the candidate entries of all levels, in dispatch order
+     */
+    DispatchIndex.Dispatch lookup(Class<? extends Throwable> errorClass) {
+        if (cache == null) {
+            return snapshots[0].dispatchIndex.lookup(errorClass);
+        }
+
+        DispatchIndex.Dispatch dispatch = cache.get(errorClass);
+        if (dispatch != null) {
+            return dispatch;
+        }
+
+        List<DispatchIndex.Dispatch> levels = new ArrayList<>(snapshots.length);
+        for (Snapshot snapshot : snapshots) {
+            levels.add(snapshot.dispatchIndex.lookup(errorClass));
+        }
+        return cache.putIfAbsent(errorClass, DispatchIndex.Dispatch.concat(levels));
+    }
+
+    /**
+     * @param errorCode the error code
+     * @return the entries registered with {@code errorCode} on all levels, in dispatch order
+     */
+    DispatchIndex.Dispatch lookupCode(Object errorCode) {
+        if (codeCache == null) {
+            return snapshots[0].dispatchIndex.lookupCode(errorCode);
+        }
+
+        DispatchIndex.Dispatch dispatch = codeCache.get(errorCode);
+        if (dispatch != null) {
+            return dispatch;
+        }
+
+        List<DispatchIndex.Dispatch> levels = new ArrayList<>(snapshots.length);
+        for (Snapshot snapshot : snapshots) {
+            levels.add(snapshot.dispatchIndex.lookupCode(errorCode));
+        }
+        return codeCache.putIfAbsent(errorCode, DispatchIndex.Dispatch.concat(levels));
+    }
+}
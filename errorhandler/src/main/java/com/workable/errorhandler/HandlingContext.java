@@ -0,0 +1,368 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler;
+
+import java.util.Arrays;
+
+/**
+ * The state of a single {@link ErrorHandler#handle(Throwable)} call.
+ * <p>
+ * A new context is created for every error handled and is shared by all the actions
+ * that get executed for it, including the ones of the parent ErrorHandlers.
+ * Pass it around through a {@link ContextAction}, see {@link ErrorHandler#withContext(ContextAction)}.
+ * <p>
+ * Actions share data through it using {@link ContextKey}s. Each key owns a fixed slot, so values,
+ * counters and flags are read and written by index, without hashing or boxing.
+ */
+public final class HandlingContext {
+
+    private static final int PHASE_ON = 0;
+    private static final int PHASE_OTHERWISE = 1;
+    private static final int PHASE_ALWAYS_CHECK = 2;
+    private static final int PHASE_ALWAYS = 3;
+    private static final int PHASE_PARENT = 4;
+    private static final int PHASE_DONE = 5;
+
+    private Object[] values;
+    private long[] counters;
+    private long flags;
+
+    ErrorHandler errorHandler;
+    ErrorHandlerListener listener;
+
+    boolean handled;
+    boolean skipDefaults;
+    boolean skipFollowing;
+    boolean skipAlways;
+
+    // Position of the dispatch, see next()
+    Throwable error;
+    private CauseChain causeChain;
+    FlatChain chain;
+    Snapshot snapshot;
+    DispatchIndex.Dispatch dispatch;
+    private int level;
+    private int phase;
+    private int position;
+    private Action current;
+    // Set by ErrorHandler.handle, to execute the on actions of levels with CompiledRules directly
+    boolean compiled;
+
+    HandlingContext() {
+    }
+
+    /**
+     * Position the dispatch of {@code error} at the first {@code on} action of the first level of {@code chain}.
+     */
+    void start(FlatChain chain, Throwable error) {
+        this.error = error;
+        this.chain = chain;
+        this.dispatch = error instanceof ErrorCodeSignal
+                ? chain.lookupCode(((ErrorCodeSignal) error).getErrorCode())
+                : chain.lookup(error.getClass());
+        enterLevel(0);
+    }
+
+    private void enterLevel(int level) {
+        this.level = level;
+        this.errorHandler = chain.handlers[level];
+        this.snapshot = chain.snapshots[level];
+        this.phase = PHASE_ON;
+        this.position = level == 0 ? 0 : dispatch.ends[level - 1];
+        errorHandler.enter(this);
+    }
+
+    /**
+     * Advance the dispatch to the next action to execute.
+     * <p>
+     * The action returned by the previous call is taken to have been executed, which marks the error as handled.
+     * The skip flags are checked at the same points {@link ErrorHandler#handle(Throwable)} always did:
+     * {@code skipFollowing} before each {@code on} action, {@code skipAlways} before the {@code always}
+     * actions and {@code skipDefaults} before moving to the parent.
+     *
+     * @return the next action to execute, or null when the dispatch is complete
+     */
+    Action next() {
+        if (current != null) {
+            handled = true;
+            current = null;
+        }
+
+        for (;;) {
+            switch (phase) {
+                case PHASE_ON:
+                    if (compiled && listener == null && errorHandler.compiledRules != null) {
+                        if (!skipFollowing && errorHandler.compiledRules.dispatch(error, this)) {
+                            handled = true;
+                        }
+                        position = 0;
+                        phase = handled ? PHASE_ALWAYS_CHECK : PHASE_OTHERWISE;
+                        break;
+                    }
+                    while (!skipFollowing && position < dispatch.ends[level]) {
+                        int i = position++;
+                        ActionEntry actionEntry = dispatch.entries[i];
+                        if (dispatch.matched[i] || matches(actionEntry.matcher)) {
+                            if (listener != null) {
+                                listener.onMatch(errorHandler, actionEntry, error);
+                            }
+                            return current = actionEntry.action;
+                        }
+                    }
+                    position = 0;
+                    phase = handled ? PHASE_ALWAYS_CHECK : PHASE_OTHERWISE;
+                    break;
+                case PHASE_OTHERWISE:
+                    if (position < snapshot.otherwiseActions.length) {
+                        if (position == 0 && listener != null) {
+                            listener.onOtherwise(errorHandler, error);
+                        }
+                        return current = snapshot.otherwiseActions[position++];
+                    }
+                    position = 0;
+                    phase = PHASE_ALWAYS_CHECK;
+                    break;
+                case PHASE_ALWAYS_CHECK:
+                    phase = skipAlways ? PHASE_PARENT : PHASE_ALWAYS;
+                    break;
+                case PHASE_ALWAYS:
+                    if (position < snapshot.alwaysActions.length) {
+                        if (position == 0 && listener != null) {
+                            listener.onAlways(errorHandler, error);
+                        }
+                        return current = snapshot.alwaysActions[position++];
+                    }
+                    position = 0;
+                    phase = PHASE_PARENT;
+                    break;
+                case PHASE_PARENT:
+                    phase = PHASE_DONE;
+                    if (!skipDefaults && level + 1 < chain.handlers.length) {
+                        if (listener != null) {
+                            listener.onParent(errorHandler, chain.handlers[level + 1], error);
+                        }
+                        enterLevel(level + 1);
+                    }
+                    break;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private boolean matches(Matcher matcher) {
+        return Matchers.matches(matcher, error, this);
+    }
+
+    /**
+     * @return the cause chain of the error being handled, computed on first use
+     */
+    public CauseChain getCauseChain() {
+        if (causeChain == null) {
+            causeChain = CauseChain.of(error);
+        }
+        return causeChain;
+    }
+
+    /**
+     * @return the {@link ErrorHandler} whose action is currently executed
+     */
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    /**
+     * @return true if any action has been executed for this error so far
+     */
+    public boolean isHandled() {
+        return handled;
+    }
+
+    /**
+     * Execute {@code action} as part of handling this error, the way {@link ErrorHandler} executes the actions
+     * registered on it. Meant for composite actions that decide themselves which actions to execute.
+     *
+     * @param action    the action to execute
+     * @param throwable the error being handled
+     */
+    public void execute(Action action, Throwable throwable) {
+        errorHandler.execute(action, throwable, this);
+    }
+
+    /**
+     * @return true if the actions following the current one, registered via an {@code on} method, are skipped
+     */
+    public boolean isSkipFollowing() {
+        return skipFollowing;
+    }
+
+    /**
+     * @return true if the actions registered via {@link ErrorHandler#always(Action)} are skipped
+     */
+    public boolean isSkipAlways() {
+        return skipAlways;
+    }
+
+    /**
+     * @return true if the actions of the parent ErrorHandlers are skipped
+     */
+    public boolean isSkipDefaults() {
+        return skipDefaults;
+    }
+
+    /**
+     * Skip all following actions registered via an {@code on} method
+     *
+     * @return this context
+     */
+    public HandlingContext skipFollowing() {
+        skipFollowing = true;
+        return this;
+    }
+
+    /**
+     * Skip all actions registered via {@link ErrorHandler#always(Action)}
+     *
+     * @return this context
+     */
+    public HandlingContext skipAlways() {
+        skipAlways = true;
+        return this;
+    }
+
+    /**
+     * Skip the default matching actions if any
+     *
+     * @return this context
+     */
+    public HandlingContext skipDefaults() {
+        skipDefaults = true;
+        return this;
+    }
+
+    /**
+     * @param <T> the type of the value
+     * @param key the key
+     * @return the value stored for {@code key}, or null if none
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(ContextKey<T> key) {
+        return values == null || key.slot >= values.length ? null : (T) values[key.slot];
+    }
+
+    /**
+     * @param <T>   the type of the value
+     * @param key   the key
+     * @param value the value to store
+     * @return the value previously stored for {@code key}, or null if none
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T put(ContextKey<T> key, T value) {
+        if (values == null || key.slot >= values.length) {
+            values = grow(values, key.slot);
+        }
+        T previous = (T) values[key.slot];
+        values[key.slot] = value;
+        return previous;
+    }
+
+    /**
+     * @param <T> the type of the value
+     * @param key the key
+     * @return the value previously stored for {@code key}, or null if none
+     */
+    public <T> T remove(ContextKey<T> key) {
+        T previous = get(key);
+        if (previous != null) {
+            values[key.slot] = null;
+        }
+        return previous;
+    }
+
+    /**
+     * @param counter the counter key
+     * @return the current value of {@code counter}, zero if never set
+     */
+    public long getCount(ContextKey.Counter counter) {
+        return counters == null || counter.slot >= counters.length ? 0L : counters[counter.slot];
+    }
+
+    /**
+     * @param counter the counter key
+     * @param count   the new value of {@code counter}
+     */
+    public void setCount(ContextKey.Counter counter, long count) {
+        if (counters == null || counter.slot >= counters.length) {
+            counters = grow(counters, counter.slot);
+        }
+        counters[counter.slot] = count;
+    }
+
+    /**
+     * @param counter the counter key
+     * @return the value of {@code counter} after incrementing it by one
+     */
+    public long increment(ContextKey.Counter counter) {
+        if (counters == null || counter.slot >= counters.length) {
+            counters = grow(counters, counter.slot);
+        }
+        return ++counters[counter.slot];
+    }
+
+    /**
+     * @param flag the flag key
+     * @return true if {@code flag} is set
+     */
+    public boolean isSet(ContextKey.Flag flag) {
+        return (flags & flag.mask) != 0;
+    }
+
+    /**
+     * @param flag  the flag key
+     * @param value true to set the flag, false to unset it
+     */
+    public void set(ContextKey.Flag flag, boolean value) {
+        if (value) {
+            flags |= flag.mask;
+        } else {
+            flags &= ~flag.mask;
+        }
+    }
+
+    /**
+     * Slots are sized to all the keys created so far, so that a single allocation
+     * serves every key used for the same error.
+     */
+    private static Object[] grow(Object[] array, int slot) {
+        int length = Math.max(slot + 1, ContextKey.valueSlotCount());
+        return array == null ? new Object[length] : Arrays.copyOf(array, length);
+    }
+
+    private static long[] grow(long[] array, int slot) {
+        int length = Math.max(slot + 1, ContextKey.counterSlotCount());
+        return array == null ? new long[length] : Arrays.copyOf(array, length);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler;
+
+/**
+ * Steps through the actions that handle an error, one at a time, in the exact order
+ * and with the same skip rules as {@link ErrorHandler#handle(Throwable)}.
+ * <p>
+ * Create one via {@link ErrorHandler#cursor(Throwable)}. A cursor is not thread-safe, but it can be
+ * handed from thread to thread as long as each step happens-before the next one.
+ */
+public final class HandlingCursor {
+
+    private final HandlingContext context;
+    private Action action;
+
+    HandlingCursor(HandlingContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Advance to the next action to execute.
+     * <p>
+     * The action returned by the previous call is taken to have been executed,
+     * either via {@link #execute()} or by the caller itself.
+     *
+     * @return the next action, or null when there are no more actions to execute
+     */
+    public Action next() {
+        action = context.next();
+        return action;
+    }
+
+    /**
+     * Execute the action returned by the last {@link #next()} call, on the calling thread.
+     */
+    public void execute() {
+        if (action == null) {
+            throw new IllegalStateException("no action to execute");
+        }
+        context.errorHandler.execute(action, context.error, context);
+    }
+
+    /**
+     * @return the context of the error being handled
+     */
+    public HandlingContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return the error being handled
+     */
+    public Throwable getError() {
+        return context.error;
+    }
+}
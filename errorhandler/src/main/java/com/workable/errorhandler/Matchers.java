@@ -0,0 +1,434 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Factory methods to build and combine {@link Matcher}s.
+ * <p>
+ * Matchers may declare how expensive they are through a {@link Cost} hint, see {@link #withCost(Cost, Matcher)}.
+ * Combinators evaluate their cheapest operands first, so that e.g. a type check rules an error out before its
+ * body gets parsed. Matchers without a hint are taken to be the most expensive ones.
+ * <p>
+ * Operands of equal cost are evaluated in the order given. Reordering assumes that matchers have no side
+ * effects and accept any {@link Throwable}, which is why guards such as {@link #instanceOf(Class)} are the
+ * cheapest: a matcher that casts the error is always evaluated after the type checks of the same {@code and}.
+ *
+ * <pre>
+ * {@code
+ *   static final Matcher VALIDATION_ERROR = Matchers.shared(Matchers.withCost(Matchers.Cost.PARSE,
+ *      throwable -> parseBody((HttpException) throwable).isValidationError()));
+ *
+ *   ErrorHandler
+ *      .create()
+ *      .on(Matchers.and(Matchers.instanceOf(HttpException.class), VALIDATION_ERROR), showValidationErrors)
+ *      .on(Matchers.and(Matchers.instanceOf(HttpException.class), Matchers.not(VALIDATION_ERROR)), showError);
+ * }
+ * </pre>
+ */
+public final class Matchers {
+
+    /**
+     * How expensive a matcher is, from the cheapest to the most expensive
+     */
+    public enum Cost {
+        /**
+         * e.g. {@code instanceof}
+         */
+        TYPE_CHECK,
+        /**
+         * e.g. comparing a status code
+         */
+        COMPARE,
+        /**
+         * e.g. matching the message against a regular expression
+         */
+        PATTERN,
+        /**
+         * e.g. parsing the body of a response
+         */
+        PARSE
+    }
+
+    /**
+     * A {@link Matcher} that declares its {@link Cost}
+     */
+    public interface Costed extends Matcher {
+
+        /**
+         * @return how expensive this matcher is
+         */
+        Cost getCost();
+    }
+
+    private static final Comparator<Matcher> CHEAPEST_FIRST = new Comparator<Matcher>() {
+        @Override
+        public int compare(Matcher first, Matcher second) {
+            return costOf(first).compareTo(costOf(second));
+        }
+    };
+
+    private Matchers() {
+        // no instances
+    }
+
+    /**
+     * @param errorClass the class of the error
+     * @return a matcher for instances of {@code errorClass}, equal to every other one for the same class
+     */
+    public static Matcher instanceOf(Class<? extends Throwable> errorClass) {
+        if (errorClass == null) {
+            throw new IllegalArgumentException("errorClass cannot be null");
+        }
+        return new InstanceOfMatcher(errorClass);
+    }
+
+    /**
+     * @param errorClasses the classes of the error
+     * @return a matcher for instances of any of {@code errorClasses}
+     */
+    @SafeVarargs
+    public static Matcher anyOf(Class<? extends Throwable>... errorClasses) {
+        List<Matcher> matchers = new ArrayList<>(errorClasses.length);
+        for (Class<? extends Throwable> errorClass : errorClasses) {
+            matchers.add(instanceOf(errorClass));
+        }
+        return or(matchers);
+    }
+
+    /**
+     * @param regex a regular expression
+     * @return a matcher for errors with a message that contains a match of {@code regex}
+     */
+    public static Matcher messageMatches(String regex) {
+        final Pattern pattern = Pattern.compile(regex);
+        return withCost(Cost.PATTERN, new Matcher() {
+            @Override
+            public boolean matches(Throwable throwable) {
+                String message = throwable.getMessage();
+                return message != null && pattern.matcher(message).find();
+            }
+        });
+    }
+
+    /**
+     * @param cost    how expensive {@code matcher} is
+     * @param matcher the matcher
+     * @return a matcher that matches the same errors as {@code matcher}, with a cost hint
+     */
+    public static Matcher withCost(Cost cost, Matcher matcher) {
+        if (cost == null) {
+            throw new IllegalArgumentException("cost cannot be null");
+        }
+        assertNotNull(matcher);
+        return new CostedMatcher(cost, matcher);
+    }
+
+    /**
+     * Share the result of {@code matcher} between all the rules that use it, so that it's evaluated
+     * at most once per handled error. Meant for expensive matchers, kept in constants as each shared
+     * matcher takes up a slot of every {@link HandlingContext}.
+     *
+     * @param matcher the matcher
+     * @return a matcher that matches the same errors as {@code matcher}
+     */
+    public static Matcher shared(Matcher matcher) {
+        assertNotNull(matcher);
+        return new SharedMatcher(matcher);
+    }
+
+    /**
+     * @param matchers the operands
+     * @return a matcher for errors that match all of {@code matchers}
+     */
+    public static Matcher and(Matcher... matchers) {
+        return and(Arrays.asList(matchers));
+    }
+
+    /**
+     * @param matchers the operands
+     * @return a matcher for errors that match all of {@code matchers}
+     */
+    public static Matcher and(List<? extends Matcher> matchers) {
+        return new AndMatcher(compile(matchers, AndMatcher.class));
+    }
+
+    /**
+     * @param matchers the operands
+     * @return a matcher for errors that match any of {@code matchers}
+     */
+    public static Matcher or(Matcher... matchers) {
+        return or(Arrays.asList(matchers));
+    }
+
+    /**
+     * @param matchers the operands
+     * @return a matcher for errors that match any of {@code matchers}
+     */
+    public static Matcher or(List<? extends Matcher> matchers) {
+        return new OrMatcher(compile(matchers, OrMatcher.class));
+    }
+
+    /**
+     * @param matcher the operand
+     * @return a matcher for errors that do not match {@code matcher}
+     */
+    public static Matcher not(Matcher matcher) {
+        assertNotNull(matcher);
+        if (matcher instanceof NotMatcher) {
+            return ((NotMatcher) matcher).matcher;
+        }
+        return new NotMatcher(matcher);
+    }
+
+    /**
+     * @param matcher a matcher
+     * @return the declared cost of {@code matcher}, {@link Cost#PARSE} if it declares none
+     */
+    public static Cost costOf(Matcher matcher) {
+        if (matcher instanceof Costed) {
+            return ((Costed) matcher).getCost();
+        }
+        if (matcher.getClass() == ExceptionMatcher.class) {
+            return Cost.TYPE_CHECK;
+        }
+        return Cost.PARSE;
+    }
+
+    static boolean matches(Matcher matcher, Throwable throwable, HandlingContext context) {
+        if (context != null && matcher instanceof ContextMatcher) {
+            return ((ContextMatcher) matcher).matches(throwable, context);
+        }
+        return matcher.matches(throwable);
+    }
+
+    /**
+     * Inline nested operands of the same combinator, drop duplicates and order the rest cheapest first
+     */
+    private static Matcher[] compile(List<? extends Matcher> matchers, Class<? extends Combinator> type) {
+        if (matchers.isEmpty()) {
+            throw new IllegalArgumentException("matchers cannot be empty");
+        }
+
+        List<Matcher> operands = new ArrayList<>();
+        for (Matcher matcher : matchers) {
+            assertNotNull(matcher);
+            List<Matcher> inlined = type.isInstance(matcher)
+                    ? Arrays.asList(((Combinator) matcher).operands)
+                    : Collections.singletonList(matcher);
+            for (Matcher operand : inlined) {
+                if (!operands.contains(operand)) {
+                    operands.add(operand);
+                }
+            }
+        }
+
+        Collections.sort(operands, CHEAPEST_FIRST);
+        return operands.toArray(new Matcher[operands.size()]);
+    }
+
+    private static Cost maxCost(Matcher[] matchers) {
+        Cost max = Cost.TYPE_CHECK;
+        for (Matcher matcher : matchers) {
+            Cost cost = costOf(matcher);
+            if (cost.compareTo(max) > 0) {
+                max = cost;
+            }
+        }
+        return max;
+    }
+
+    private static void assertNotNull(Matcher matcher) {
+        if (matcher == null) {
+            throw new IllegalArgumentException("matcher cannot be null");
+        }
+    }
+
+    private static final class InstanceOfMatcher implements Costed {
+        private final Class<? extends Throwable> errorClass;
+
+        InstanceOfMatcher(Class<? extends Throwable> errorClass) {
+            this.errorClass = errorClass;
+        }
+
+        @Override
+        public boolean matches(Throwable throwable) {
+            return errorClass.isInstance(throwable);
+        }
+
+        @Override
+        public Cost getCost() {
+            return Cost.TYPE_CHECK;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof InstanceOfMatcher && ((InstanceOfMatcher) other).errorClass == errorClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return errorClass.hashCode();
+        }
+    }
+
+    private static final class CostedMatcher implements Costed, ContextMatcher {
+        private final Cost cost;
+        private final Matcher matcher;
+
+        CostedMatcher(Cost cost, Matcher matcher) {
+            this.cost = cost;
+            this.matcher = matcher;
+        }
+
+        @Override
+        public boolean matches(Throwable throwable) {
+            return matcher.matches(throwable);
+        }
+
+        @Override
+        public boolean matches(Throwable throwable, HandlingContext context) {
+            return Matchers.matches(matcher, throwable, context);
+        }
+
+        @Override
+        public Cost getCost() {
+            return cost;
+        }
+    }
+
+    private static final class SharedMatcher implements Costed, ContextMatcher {
+        private final Matcher matcher;
+        private final ContextKey<Boolean> result;
+
+        SharedMatcher(Matcher matcher) {
+            this.matcher = matcher;
+            this.result = ContextKey.create("shared matcher");
+        }
+
+        @Override
+        public boolean matches(Throwable throwable) {
+            return matcher.matches(throwable);
+        }
+
+        @Override
+        public boolean matches(Throwable throwable, HandlingContext context) {
+            Boolean matched = context.get(result);
+            if (matched == null) {
+                matched = Matchers.matches(matcher, throwable, context);
+                context.put(result, matched);
+            }
+            return matched;
+        }
+
+        @Override
+        public Cost getCost() {
+            return costOf(matcher);
+        }
+    }
+
+    private abstract static class Combinator implements Costed, ContextMatcher {
+        final Matcher[] operands;
+        private final Cost cost;
+
+        Combinator(Matcher[] operands) {
+            this.operands = operands;
+            this.cost = maxCost(operands);
+        }
+
+        @Override
+        public boolean matches(Throwable throwable) {
+            return matches(throwable, null);
+        }
+
+        @Override
+        public Cost getCost() {
+            return cost;
+        }
+    }
+
+    private static final class AndMatcher extends Combinator {
+
+        AndMatcher(Matcher[] operands) {
+            super(operands);
+        }
+
+        @Override
+        public boolean matches(Throwable throwable, HandlingContext context) {
+            for (Matcher operand : operands) {
+                if (!Matchers.matches(operand, throwable, context)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class OrMatcher extends Combinator {
+
+        OrMatcher(Matcher[] operands) {
+            super(operands);
+        }
+
+        @Override
+        public boolean matches(Throwable throwable, HandlingContext context) {
+            for (Matcher operand : operands) {
+                if (Matchers.matches(operand, throwable, context)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class NotMatcher implements Costed, ContextMatcher {
+        private final Matcher matcher;
+
+        NotMatcher(Matcher matcher) {
+            this.matcher = matcher;
+        }
+
+        @Override
+        public boolean matches(Throwable throwable) {
+            return !matcher.matches(throwable);
+        }
+
+        @Override
+        public boolean matches(Throwable throwable, HandlingContext context) {
+            return !Matchers.matches(matcher, throwable, context);
+        }
+
+        @Override
+        public Cost getCost() {
+            return costOf(matcher);
+        }
+    }
+}
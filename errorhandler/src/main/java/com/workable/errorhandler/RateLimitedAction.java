@@ -0,0 +1,346 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Limits how often an {@link Action} gets executed for the same kind of error, so that logging and reporting
+ * actions do not amplify an error storm.
+ * <p>
+ * Each error is reduced to a fingerprint, by default its class and top stack frames, and every fingerprint gets
+ * its own limit: either a token bucket of {@code permits} per period, or a sample of one in every {@code n} errors.
+ * Errors over the limit skip the action. The number of errors skipped since the last one let through is available
+ * to the action through the {@link #SUPPRESSED} counter of the {@link HandlingContext}.
+ *
+ * <pre>
+ * {@code
+ *   ErrorHandler
+ *      .defaultErrorHandler()
+ *      .on(500, RateLimitedAction
+ *          .builder(ErrorHandler.withContext((throwable, context) ->
+ *              crashReporter.send(throwable, context.getCount(RateLimitedAction.SUPPRESSED))))
+ *          .rate(10, 1, TimeUnit.MINUTES)
+ *          .build());
+ * }
+ * </pre>
+ *
+ * Fingerprints are kept in a fixed size table, updated without locks. When the table is crowded, the fingerprint
+ * seen least recently is evicted and its limit and suppressed count start over.
+ */
+public final class RateLimitedAction implements ContextAction {
+
+    /**
+     * The number of errors with the same fingerprint that skipped the action since it was last executed
+     */
+    public static final ContextKey.Counter SUPPRESSED = ContextKey.counter("suppressed");
+
+    /**
+     * Slots checked for a fingerprint before evicting one
+     */
+    private static final int PROBES = 4;
+
+    private final Action action;
+    private final Fingerprinter fingerprinter;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int sampleRate;
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final int mask;
+
+    private RateLimitedAction(Builder builder) {
+        this.action = builder.action;
+        this.fingerprinter = builder.fingerprinter;
+        this.intervalNanos = builder.intervalNanos;
+        this.toleranceNanos = builder.toleranceNanos;
+        this.sampleRate = builder.sampleRate;
+        this.buckets = new AtomicReferenceArray<>(builder.capacity);
+        this.mask = builder.capacity - 1;
+    }
+
+    /**
+     * @param action the action to limit
+     * @return a new {@link Builder}
+     */
+    public static Builder builder(Action action) {
+        if (action == null) {
+            throw new IllegalArgumentException("action cannot be null");
+        }
+        return new Builder(action);
+    }
+
+    /**
+     * Compute the default fingerprint of {@code throwable}, from its class and its top {@code frames} stack frames.
+     * Meant for custom {@link Fingerprinter}s to combine with other details, such as an error code.
+     *
+     * @param throwable the error
+     * @param frames    the number of stack frames to take into account
+     * @return the fingerprint
+     */
+    public static long fingerprint(Throwable throwable, int frames) {
+        long hash = mix(throwable.getClass().getName().hashCode());
+        if (frames > 0) {
+            StackTraceElement[] stackTrace = throwable.getStackTrace();
+            for (int i = 0; i < frames && i < stackTrace.length; i++) {
+                StackTraceElement frame = stackTrace[i];
+                hash = mix(hash * 31 + frame.getClassName().hashCode());
+                hash = mix(hash * 31 + frame.getMethodName().hashCode());
+                hash = mix(hash * 31 + frame.getLineNumber());
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public void execute(Throwable throwable, HandlingContext context) {
+        long fingerprint = fingerprinter.fingerprint(throwable);
+        long now = System.nanoTime();
+        Bucket bucket = bucket(fingerprint, now);
+
+        if (!bucket.tryAcquire(now)) {
+            bucket.suppressed.incrementAndGet();
+            return;
+        }
+
+        context.setCount(SUPPRESSED, bucket.suppressed.getAndSet(0));
+        context.execute(action, throwable);
+    }
+
+    /**
+     * Find the bucket of {@code fingerprint}, creating it if missing.
+     */
+    private Bucket bucket(long fingerprint, long now) {
+        int start = (int) fingerprint & mask;
+        for (;;) {
+            int victim = -1;
+            long oldest = 0;
+
+            for (int i = 0; i < PROBES; i++) {
+                int index = (start + i) & mask;
+                Bucket bucket = buckets.get(index);
+                if (bucket == null) {
+                    Bucket created = new Bucket(fingerprint, now);
+                    if (buckets.compareAndSet(index, null, created)) {
+                        return created;
+                    }
+                    bucket = buckets.get(index);
+                }
+                if (bucket.fingerprint == fingerprint) {
+                    bucket.lastSeen = now;
+                    return bucket;
+                }
+                if (victim < 0 || bucket.lastSeen - oldest < 0) {
+                    victim = index;
+                    oldest = bucket.lastSeen;
+                }
+            }
+
+            Bucket evicted = buckets.get(victim);
+            if (evicted.lastSeen == oldest) {
+                Bucket created = new Bucket(fingerprint, now);
+                if (buckets.compareAndSet(victim, evicted, created)) {
+                    return created;
+                }
+            }
+        }
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * The limit of a single fingerprint. {@code state} is the time the next permit is due for token buckets,
+     * based on the generic cell rate algorithm, and the number of errors seen for samples.
+     */
+    private final class Bucket {
+        final long fingerprint;
+        final AtomicLong state;
+        final AtomicLong suppressed = new AtomicLong();
+        volatile long lastSeen;
+
+        Bucket(long fingerprint, long now) {
+            this.fingerprint = fingerprint;
+            this.state = new AtomicLong(sampleRate > 0 ? 0L : now);
+            this.lastSeen = now;
+        }
+
+        boolean tryAcquire(long now) {
+            if (sampleRate > 0) {
+                return state.getAndIncrement() % sampleRate == 0;
+            }
+            for (;;) {
+                long due = state.get();
+                long next = (due - now < 0 ? now : due) + intervalNanos;
+                if (next - now > toleranceNanos) {
+                    return false;
+                }
+                if (state.compareAndSet(due, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reduces an error to a fingerprint. Errors with the same fingerprint share the same limit.
+     */
+    public interface Fingerprinter {
+
+        /**
+         * @param throwable the error
+         * @return the fingerprint of {@code throwable}
+         */
+        long fingerprint(Throwable throwable);
+    }
+
+    /**
+     * Builder of rate limited actions, see {@link RateLimitedAction#builder(Action)}.
+     * Without a call to {@link #rate(int, long, TimeUnit)} or {@link #sample(int)}, the action is executed
+     * once per second per fingerprint.
+     */
+    public static final class Builder {
+
+        private static final int DEFAULT_FRAMES = 3;
+        private static final int DEFAULT_CAPACITY = 1024;
+        /**
+         * The longest period, about 73 years, that keeps due times within range of {@link System#nanoTime()}
+         */
+        private static final long MAX_PERIOD_NANOS = Long.MAX_VALUE / 4;
+
+        private final Action action;
+        private Fingerprinter fingerprinter;
+        private long intervalNanos = TimeUnit.SECONDS.toNanos(1);
+        private long toleranceNanos = TimeUnit.SECONDS.toNanos(1);
+        private int sampleRate;
+        private int capacity = DEFAULT_CAPACITY;
+
+        private Builder(Action action) {
+            this.action = action;
+            this.fingerprinter = frames(DEFAULT_FRAMES);
+        }
+
+        /**
+         * Execute the action at most {@code permits} times per {@code period}, for each fingerprint.
+         * Permits are replenished evenly over the period, and up to {@code permits} can be used at once.
+         *
+         * @param permits the number of executions allowed per period
+         * @param period  the period
+         * @param unit    the unit of {@code period}, which cannot be longer than about 73 years
+         * @return this builder
+         */
+        public Builder rate(int permits, long period, TimeUnit unit) {
+            if (permits < 1 || period < 1) {
+                throw new IllegalArgumentException("permits and period must be positive");
+            }
+            long interval = Math.max(1L, unit.toNanos(period) / permits);
+            // checked by division, so that the product of the two cannot overflow
+            if (interval > MAX_PERIOD_NANOS / permits) {
+                throw new IllegalArgumentException("period cannot be longer than " + MAX_PERIOD_NANOS + " nanoseconds");
+            }
+            this.intervalNanos = interval;
+            this.toleranceNanos = interval * permits;
+            this.sampleRate = 0;
+            return this;
+        }
+
+        /**
+         * Execute the action for the first error, and then once every {@code n} errors, of each fingerprint
+         *
+         * @param n the sampling rate
+         * @return this builder
+         */
+        public Builder sample(int n) {
+            if (n < 1) {
+                throw new IllegalArgumentException("sampling rate must be positive");
+            }
+            this.sampleRate = n;
+            return this;
+        }
+
+        /**
+         * Fingerprint errors by their class and their top {@code frames} stack frames, which is the default
+         * with {@value #DEFAULT_FRAMES} frames. Zero frames fingerprint errors by class only.
+         *
+         * @param frames the number of stack frames to take into account
+         * @return this builder
+         */
+        public Builder fingerprintFrames(int frames) {
+            if (frames < 0) {
+                throw new IllegalArgumentException("frames cannot be negative");
+            }
+            this.fingerprinter = frames(frames);
+            return this;
+        }
+
+        /**
+         * @param fingerprinter a custom {@link Fingerprinter}
+         * @return this builder
+         */
+        public Builder fingerprinter(Fingerprinter fingerprinter) {
+            if (fingerprinter == null) {
+                throw new IllegalArgumentException("fingerprinter cannot be null");
+            }
+            this.fingerprinter = fingerprinter;
+            return this;
+        }
+
+        /**
+         * Set the number of fingerprints tracked at once, {@value #DEFAULT_CAPACITY} by default.
+         * Rounded up to a power of two.
+         *
+         * @param capacity the number of fingerprints
+         * @return this builder
+         */
+        public Builder capacity(int capacity) {
+            if (capacity < 1 || capacity > 1 << 30) {
+                throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+            }
+            this.capacity = Math.max(PROBES, Integer.highestOneBit(capacity - 1) << 1);
+            return this;
+        }
+
+        /**
+         * @return the rate limited action, ready to be registered on an {@link ErrorHandler}
+         */
+        public Action build() {
+            return ErrorHandler.withContext(new RateLimitedAction(this));
+        }
+
+        private static Fingerprinter frames(final int frames) {
+            return new Fingerprinter() {
+                @Override
+                public long fingerprint(Throwable throwable) {
+                    return RateLimitedAction.fingerprint(throwable, frames);
+                }
+            };
+        }
+    }
+}
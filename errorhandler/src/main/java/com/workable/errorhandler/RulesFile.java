@@ -0,0 +1,436 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An ErrorHandler whose rules are read from a file, and replaced as a whole when the file changes.
+ * <p>
+ * Each line of the file maps an exception class or an error code onto one or more actions, registered by name
+ * on the {@link Builder}. Rules keep the order of the file, and lines starting with {@code #} are comments:
+ *
+ * <pre>
+ * # class:&lt;exception class&gt;, code:&lt;integer or string&gt; or &lt;code type&gt;:&lt;value&gt;
+ * class:java.net.SocketTimeoutException = showOffline
+ * code:401 = logout
+ * range:500-599 = showServerError, report
+ * otherwise = showGeneric
+ * always = log
+ * </pre>
+ *
+ * Error codes are matched through the bindings of the parent ErrorHandler, and code types other than
+ * {@code code} are turned into error codes by the {@link CodeParser} registered for them:
+ *
+ * <pre>
+ * {@code
+ *   RulesFile rules = RulesFile
+ *      .builder(new File(configDir, "error-rules.conf"))
+ *      .parent(ErrorHandler.defaultErrorHandler())
+ *      .action("logout", (throwable, errorHandler) -> session.logout())
+ *      .action("showServerError", (throwable, errorHandler) -> showErrorMessage("kaboom"))
+ *      .codeType("range", value -> Range.parse(value))
+ *      .build();
+ *
+ *   rules.watch(scheduler, 10, TimeUnit.SECONDS);
+ *   rules.run(() -> loadFeed());
+ * }
+ * </pre>
+ *
+ * Every load parses the file and compiles it into a new frozen ErrorHandler, off the threads handling errors,
+ * and then publishes it through a single volatile write. Handling reads the current ErrorHandler once, so
+ * an error is handled by either the old or the new rules as a whole. A file that fails to load leaves the
+ * current rules in place.
+ */
+public final class RulesFile implements Closeable {
+
+    private final File file;
+    private final ErrorHandler parent;
+    private final RuleCompiler compiler;
+    private final ClassLoader classLoader;
+    private final Map<String, Action> actions;
+    private final Map<String, CodeParser> codeTypes;
+
+    private volatile ErrorHandler current;
+    private long loadedModified;
+    private long loadedLength;
+    private ScheduledFuture<?> watch;
+
+    private RulesFile(Builder builder) {
+        this.file = builder.file;
+        this.parent = builder.parent;
+        this.compiler = builder.compiler;
+        this.classLoader = builder.classLoader;
+        this.actions = new HashMap<>(builder.actions);
+        this.codeTypes = new HashMap<>(builder.codeTypes);
+    }
+
+    /**
+     * @param file the rules file
+     * @return a new {@link Builder}
+     */
+    public static Builder builder(File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("file cannot be null");
+        }
+        return new Builder(file);
+    }
+
+    /**
+     * @return the frozen ErrorHandler of the rules loaded last
+     */
+    public ErrorHandler current() {
+        return current;
+    }
+
+    /**
+     * Handle {@code error} through the rules loaded last
+     *
+     * @param error the error
+     */
+    public void handle(Throwable error) {
+        current.handle(error);
+    }
+
+    /**
+     * Run {@code blockExecutor} and handle its failure, if any, through the rules loaded last
+     *
+     * @param blockExecutor the block to run
+     */
+    public void run(BlockExecutor blockExecutor) {
+        current.run(blockExecutor);
+    }
+
+    /**
+     * Load the file and replace the current rules with its rules
+     *
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if the file has an invalid rule, naming the line it is on
+     */
+    public synchronized void reload() throws IOException {
+        long modified = file.lastModified();
+        long length = file.length();
+
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            current = compile(reader);
+        } finally {
+            reader.close();
+        }
+        loadedModified = modified;
+        loadedLength = length;
+    }
+
+    /**
+     * Reload the file if it changed since it was last loaded
+     *
+     * @return true if the rules were replaced
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if the file has an invalid rule, naming the line it is on
+     */
+    public synchronized boolean reloadIfModified() throws IOException {
+        if (file.lastModified() == loadedModified && file.length() == loadedLength) {
+            return false;
+        }
+        reload();
+        return true;
+    }
+
+    /**
+     * Check the file for changes every {@code period} on {@code scheduler}, and reload it when it changes.
+     * Failures to reload are handled through the current rules, so that they get reported as any other error,
+     * and never stop the checks that follow.
+     * <p>
+     * Replace the file as a whole, e.g. by renaming a new file over it, so that a check never reads it half-written.
+     *
+     * @param scheduler the scheduler to check the file on
+     * @param period    the period between checks
+     * @param unit      the unit of {@code period}
+     * @return this instance
+     */
+    public synchronized RulesFile watch(ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+        if (watch != null) {
+            throw new IllegalStateException("already watching " + file);
+        }
+        watch = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                // anything escaping would cancel all later checks without a trace
+                try {
+                    reloadIfModified();
+                } catch (Throwable failure) {
+                    try {
+                        handle(failure);
+                    } catch (Throwable ignore) {
+                        // the rules failed to report it, keep watching regardless
+                    }
+                }
+            }
+        }, period, period, unit);
+        return this;
+    }
+
+    /**
+     * Stop watching the file for changes. The rules loaded last stay in use.
+     */
+    @Override
+    public synchronized void close() {
+        if (watch != null) {
+            watch.cancel(false);
+            watch = null;
+        }
+    }
+
+    private ErrorHandler compile(Reader reader) throws IOException {
+        ErrorHandler handler = parent == null ? ErrorHandler.createIsolated() : ErrorHandler.create(parent);
+
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int number = 0;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            int equals = line.indexOf('=');
+            if (equals < 0) {
+                throw invalid(number, "expected <rule> = <actions>");
+            }
+            String rule = line.substring(0, equals).trim();
+            List<Action> ruleActions = actions(number, line.substring(equals + 1));
+
+            for (Action action : ruleActions) {
+                if (rule.equals("otherwise")) {
+                    handler.otherwise(action);
+                } else if (rule.equals("always")) {
+                    handler.always(action);
+                } else {
+                    register(handler, number, rule, action);
+                }
+            }
+        }
+
+        return compiler == null ? handler.freeze() : handler.freeze(compiler);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void register(ErrorHandler handler, int number, String rule, Action action) {
+        int colon = rule.indexOf(':');
+        if (colon < 0) {
+            throw invalid(number, "expected otherwise, always or <type>:<value>, got '" + rule + "'");
+        }
+        String type = rule.substring(0, colon).trim();
+        String value = rule.substring(colon + 1).trim();
+
+        if (type.equals("class")) {
+            Class<?> errorClass;
+            try {
+                errorClass = Class.forName(value, false, classLoader);
+            } catch (ClassNotFoundException e) {
+                throw invalid(number, "unknown class '" + value + "'");
+            }
+            if (!Exception.class.isAssignableFrom(errorClass)) {
+                throw invalid(number, "'" + value + "' is not an Exception");
+            }
+            handler.on((Class<? extends Exception>) errorClass, action);
+            return;
+        }
+
+        Object errorCode;
+        if (type.equals("code")) {
+            errorCode = parseCode(value);
+        } else {
+            CodeParser parser = codeTypes.get(type);
+            if (parser == null) {
+                throw invalid(number, "unknown code type '" + type + "'");
+            }
+            try {
+                errorCode = parser.parse(value);
+            } catch (RuntimeException e) {
+                throw invalid(number, "invalid " + type + " '" + value + "': " + e.getMessage());
+            }
+        }
+
+        try {
+            handler.on(errorCode, action);
+        } catch (UnknownErrorCodeException e) {
+            throw invalid(number, "no binding for error code '" + value + "'");
+        }
+    }
+
+    private List<Action> actions(int number, String names) {
+        List<Action> result = new ArrayList<>();
+        for (String name : names.split(",")) {
+            name = name.trim();
+            Action action = actions.get(name);
+            if (action == null) {
+                throw invalid(number, "unknown action '" + name + "'");
+            }
+            result.add(action);
+        }
+        return result;
+    }
+
+    private static Object parseCode(String value) {
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+
+    private IllegalArgumentException invalid(int number, String reason) {
+        return new IllegalArgumentException(file.getName() + ":" + number + ": " + reason);
+    }
+
+    /**
+     * Turns the value of a rule of a custom code type into an error code, e.g. {@code 500-599} into a range
+     * of HTTP status codes.
+     */
+    public interface CodeParser {
+
+        /**
+         * @param value the value of the rule, after the colon
+         * @return the error code
+         * @throws RuntimeException if {@code value} is invalid
+         */
+        Object parse(String value);
+    }
+
+    /**
+     * Builder of rules files, see {@link RulesFile#builder(File)}
+     */
+    public static final class Builder {
+
+        private final File file;
+        private ErrorHandler parent;
+        private RuleCompiler compiler;
+        private ClassLoader classLoader = RulesFile.class.getClassLoader();
+        private final Map<String, Action> actions = new HashMap<>();
+        private final Map<String, CodeParser> codeTypes = new HashMap<>();
+
+        private Builder(File file) {
+            this.file = file;
+        }
+
+        /**
+         * Link the loaded rules to {@code parent}, the actions of which run after them and the bindings
+         * of which match their error codes. The rules are isolated by default.
+         * <p>
+         * Every load freezes {@code parent} as it is at the time, see {@link ErrorHandler#freeze()}.
+         *
+         * @param parent the parent ErrorHandler
+         * @return this builder
+         */
+        public Builder parent(ErrorHandler parent) {
+            this.parent = parent;
+            return this;
+        }
+
+        /**
+         * Make {@code action} available to the rules of the file as {@code name}
+         *
+         * @param name   the name of the action
+         * @param action the action
+         * @return this builder
+         */
+        public Builder action(String name, Action action) {
+            if (name == null || action == null) {
+                throw new IllegalArgumentException("name and action cannot be null");
+            }
+            actions.put(name, action);
+            return this;
+        }
+
+        /**
+         * Parse the values of rules of {@code type} into error codes through {@code parser}
+         *
+         * @param type   the code type, as it appears before the colon
+         * @param parser the parser
+         * @return this builder
+         */
+        public Builder codeType(String type, CodeParser parser) {
+            if (type == null || parser == null) {
+                throw new IllegalArgumentException("type and parser cannot be null");
+            }
+            if (type.equals("class") || type.equals("code")) {
+                throw new IllegalArgumentException("'" + type + "' is a built-in type");
+            }
+            codeTypes.put(type, parser);
+            return this;
+        }
+
+        /**
+         * Compile the loaded rules through {@code compiler}, see {@link ErrorHandler#freeze(RuleCompiler)}
+         *
+         * @param compiler the rule compiler
+         * @return this builder
+         */
+        public Builder compiler(RuleCompiler compiler) {
+            this.compiler = compiler;
+            return this;
+        }
+
+        /**
+         * @param classLoader the class loader of the exception classes named in the file
+         * @return this builder
+         */
+        public Builder classLoader(ClassLoader classLoader) {
+            if (classLoader == null) {
+                throw new IllegalArgumentException("classLoader cannot be null");
+            }
+            this.classLoader = classLoader;
+            return this;
+        }
+
+        /**
+         * Load the file for the first time
+         *
+         * @return the rules file
+         * @throws IOException              if the file cannot be read
+         * @throws IllegalArgumentException if the file has an invalid rule, naming the line it is on
+         */
+        public RulesFile build() throws IOException {
+            RulesFile rulesFile = new RulesFile(this);
+            rulesFile.reload();
+            return rulesFile;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.workable.errorhandler;
+
+import java.util.List;
+
+/**
+ * An immutable, array backed copy of the actions registered on an {@link ErrorHandler}.
+ * <p>
+ * Dispatch always iterates over a snapshot, never over the lists that registration mutates.
+ */
+final class Snapshot {
+
+    final ActionEntry[] actions;
+    final Action[] otherwiseActions;
+    final Action[] alwaysActions;
+    final DispatchIndex dispatchIndex;
+    final boolean hasInlineActions;
+
+    Snapshot(List<ActionEntry> actions, List<Action> otherwiseActions, List<Action> alwaysActions) {
+        this.actions = actions.toArray(new ActionEntry[actions.size()]);
+        this.otherwiseActions = otherwiseActions.toArray(new Action[otherwiseActions.size()]);
+        this.alwaysActions = alwaysActions.toArray(new Action[alwaysActions.size()]);
+        this.dispatchIndex = new DispatchIndex(this.actions);
+        this.hasInlineActions = hasInlineActions(this.actions, this.otherwiseActions, this.alwaysActions);
+    }
+
+    private static boolean hasInlineActions(ActionEntry[] actions, Action[] otherwiseActions, Action[] alwaysActions) {
+        for (ActionEntry entry : actions) {
+            if (entry.action instanceof ErrorHandler.InlineAction) {
+                return true;
+            }
+        }
+        for (Action action : otherwiseActions) {
+            if (action instanceof ErrorHandler.InlineAction) {
+                return true;
+            }
+        }
+        for (Action action : alwaysActions) {
+            if (action instanceof ErrorHandler.InlineAction) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
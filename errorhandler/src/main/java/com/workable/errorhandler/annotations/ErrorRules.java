@@ -0,0 +1,52 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016 Workable SA
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.workable.errorhandler.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class whose methods declare the rules of an ErrorHandler, through {@link OnError}, {@link OnCode},
+ * {@link Otherwise} and {@link Always}.
+ * <p>
+ * The {@code error-handler-compiler} annotation processor turns the class into a dispatcher named after it,
+ * e.g. {@code AppErrors_Dispatcher} for {@code AppErrors}, that matches errors through {@code instanceof} checks
+ * and a {@code switch} over error codes. Install it on an ErrorHandler instead of registering each rule:
+ *
+ * <pre>
+ * {@code
+ *   AppErrors_Dispatcher.install(ErrorHandler.defaultErrorHandler(), new AppErrors());
+ * }
+ * </pre>
+ * <p>
+ * Rule methods are executed in the order they are declared in and must not be private.
+ * Each may accept, in any order, the error, the {@code HandlingContext} and the {@code ErrorHandler}.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface ErrorRules {
+}
@@ -0,0 +1,270 @@
+package com.workable.errorhandler;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link BatchingAction} unit tests
+ */
+public class BatchingActionTest extends TestCase {
+
+    /**
+     * Copies the messages of each batch, blocking the flush until released
+     */
+    private static class RecordingSink implements BatchingAction.Sink {
+        final List<List<String>> batches = new ArrayList<>();
+        final CountDownLatch flushing = new CountDownLatch(1);
+        final CountDownLatch release;
+
+        RecordingSink(boolean blocked) {
+            this.release = new CountDownLatch(blocked ? 1 : 0);
+        }
+
+        @Override
+        public void flush(List<BatchingAction.ErrorRecord> records) throws Exception {
+            List<String> messages = new ArrayList<>();
+            for (BatchingAction.ErrorRecord record : records) {
+                messages.add(record.getMessage());
+            }
+            synchronized (batches) {
+                batches.add(messages);
+            }
+            flushing.countDown();
+            release.await();
+        }
+
+        List<String> all() {
+            List<String> messages = new ArrayList<>();
+            synchronized (batches) {
+                for (List<String> batch : batches) {
+                    messages.addAll(batch);
+                }
+            }
+            return messages;
+        }
+    }
+
+    @Test
+    public void testFlushesWhenBatchIsFull() throws InterruptedException {
+        RecordingSink sink = new RecordingSink(false);
+        BatchingAction action = BatchingAction
+                .builder(sink)
+                .batchSize(3)
+                .flushInterval(1, TimeUnit.HOURS)
+                .build();
+
+        ErrorHandler errorHandler = ErrorHandler.createIsolated().always(action);
+        errorHandler.handle(new FooException("1"));
+        errorHandler.handle(new FooException("2"));
+        errorHandler.handle(new FooException("3"));
+
+        assertTrue(sink.flushing.await(5, TimeUnit.SECONDS));
+        action.close();
+
+        assertEquals(1, sink.batches.size());
+        assertEquals(3, sink.batches.get(0).size());
+    }
+
+    @Test
+    public void testFlushesAfterInterval() throws InterruptedException {
+        RecordingSink sink = new RecordingSink(false);
+        BatchingAction action = BatchingAction
+                .builder(sink)
+                .batchSize(100)
+                .flushInterval(10, TimeUnit.MILLISECONDS)
+                .build();
+
+        action.execute(new FooException("1"), null);
+
+        assertTrue(sink.flushing.await(5, TimeUnit.SECONDS));
+        assertEquals(1, sink.all().size());
+        action.close();
+    }
+
+    @Test
+    public void testRecordsErrorFacts() throws InterruptedException {
+        final String threadName = Thread.currentThread().getName();
+        final List<Object> errorCodes = new ArrayList<>();
+        final CountDownLatch flushed = new CountDownLatch(1);
+        BatchingAction action = BatchingAction
+                .builder(new BatchingAction.Sink() {
+                    @Override
+                    public void flush(List<BatchingAction.ErrorRecord> records) {
+                        BatchingAction.ErrorRecord record = records.get(0);
+                        assertEquals(ErrorCodeSignal.class, record.getErrorClass());
+                        assertEquals(404, record.getErrorCode());
+                        assertEquals(threadName, record.getThreadName());
+                        assertTrue(record.getTimestamp() > 0);
+                        errorCodes.add(record.getErrorCode());
+                        flushed.countDown();
+                    }
+                })
+                .batchSize(1)
+                .build();
+
+        ErrorHandler.createIsolated().always(action).handleCode(404);
+
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        action.close();
+        assertEquals(1, errorCodes.size());
+    }
+
+    @Test
+    public void testDropNewest() throws InterruptedException {
+        RecordingSink sink = new RecordingSink(true);
+        BatchingAction action = BatchingAction
+                .builder(sink)
+                .capacity(2)
+                .batchSize(1)
+                .policy(BatchingAction.Policy.DROP_NEWEST)
+                .build();
+
+        action.execute(new FooException("1"), null);
+        assertTrue(sink.flushing.await(5, TimeUnit.SECONDS));
+        action.execute(new FooException("2"), null);
+        action.execute(new FooException("3"), null);
+        action.execute(new FooException("4"), null);
+
+        assertEquals(1, action.getDroppedCount());
+
+        sink.release.countDown();
+        action.close();
+
+        assertEquals(list("1", "2", "3"), sink.all());
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        RecordingSink sink = new RecordingSink(true);
+        BatchingAction action = BatchingAction
+                .builder(sink)
+                .capacity(2)
+                .batchSize(1)
+                .policy(BatchingAction.Policy.DROP_OLDEST)
+                .build();
+
+        action.execute(new FooException("1"), null);
+        assertTrue(sink.flushing.await(5, TimeUnit.SECONDS));
+        action.execute(new FooException("2"), null);
+        action.execute(new FooException("3"), null);
+        action.execute(new FooException("4"), null);
+
+        assertEquals(1, action.getDroppedCount());
+
+        sink.release.countDown();
+        action.close();
+
+        assertEquals(list("1", "3", "4"), sink.all());
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        final RecordingSink sink = new RecordingSink(true);
+        final BatchingAction action = BatchingAction
+                .builder(sink)
+                .capacity(1)
+                .batchSize(1)
+                .policy(BatchingAction.Policy.BLOCK)
+                .build();
+
+        action.execute(new FooException("1"), null);
+        assertTrue(sink.flushing.await(5, TimeUnit.SECONDS));
+        action.execute(new FooException("2"), null);
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                action.execute(new FooException("3"), null);
+            }
+        });
+        producer.start();
+        producer.join(50);
+        assertTrue(producer.isAlive());
+
+        sink.release.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        action.close();
+
+        assertEquals(list("1", "2", "3"), sink.all());
+        assertEquals(0, action.getDroppedCount());
+    }
+
+    @Test
+    public void testSinkThrowingErrorKeepsFlushing() throws InterruptedException {
+        final List<Throwable> uncaught = Collections.synchronizedList(new ArrayList<Throwable>());
+        final BatchingAction action = BatchingAction
+                .builder(new BatchingAction.Sink() {
+                    @Override
+                    public void flush(List<BatchingAction.ErrorRecord> records) {
+                        throw new Error("sink");
+                    }
+                })
+                .capacity(1)
+                .batchSize(1)
+                .policy(BatchingAction.Policy.BLOCK)
+                .threadFactory(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable);
+                        thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                            @Override
+                            public void uncaughtException(Thread thread, Throwable throwable) {
+                                uncaught.add(throwable);
+                            }
+                        });
+                        return thread;
+                    }
+                })
+                .build();
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 3; i++) {
+                    action.execute(new FooException(String.valueOf(i)), null);
+                }
+            }
+        });
+        producer.start();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        action.close();
+
+        assertEquals(3, uncaught.size());
+        assertEquals(0, action.getDroppedCount());
+    }
+
+    @Test
+    public void testCloseFlushesAndDropsLaterErrors() {
+        RecordingSink sink = new RecordingSink(false);
+        BatchingAction action = BatchingAction
+                .builder(sink)
+                .batchSize(100)
+                .flushInterval(1, TimeUnit.HOURS)
+                .build();
+
+        action.execute(new FooException("1"), null);
+        action.execute(new FooException("2"), null);
+        action.close();
+        action.execute(new FooException("3"), null);
+
+        assertEquals(list("1", "2"), sink.all());
+        assertEquals(1, action.getDroppedCount());
+    }
+
+    private static List<String> list(String... messages) {
+        List<String> list = new ArrayList<>();
+        for (String message : messages) {
+            list.add(message);
+        }
+        return list;
+    }
+}
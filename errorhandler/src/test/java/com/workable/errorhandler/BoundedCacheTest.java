@@ -0,0 +1,53 @@
+package com.workable.errorhandler;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * {@link BoundedCache} unit tests
+ */
+public class BoundedCacheTest extends TestCase {
+
+    @Test
+    public void testPutIfAbsentKeepsFirstValue() {
+        BoundedCache<String, String> cache = new BoundedCache<>(4);
+
+        assertNull(cache.get("a"));
+        assertEquals("first", cache.putIfAbsent("a", "first"));
+        assertEquals("first", cache.putIfAbsent("a", "second"));
+        assertEquals("first", cache.get("a"));
+    }
+
+    @Test
+    public void testEvictsEntriesNotUsedRecently() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(4);
+        for (int i = 0; i < 4; i++) {
+            cache.putIfAbsent(i, "value " + i);
+        }
+        cache.get(0);
+        cache.get(2);
+
+        cache.putIfAbsent(4, "value 4");
+        cache.putIfAbsent(5, "value 5");
+
+        assertEquals(4, cache.size());
+        assertEquals("value 0", cache.get(0));
+        assertEquals("value 2", cache.get(2));
+        assertNull(cache.get(1));
+        assertNull(cache.get(3));
+        assertEquals("value 5", cache.get(5));
+    }
+
+    @Test
+    public void testKeepsCachingPastCapacity() {
+        BoundedCache<Integer, Object> cache = new BoundedCache<>(8);
+
+        for (int i = 0; i < 100; i++) {
+            Object value = new Object();
+            assertSame(value, cache.putIfAbsent(i, value));
+            assertSame(value, cache.get(i));
+        }
+
+        assertEquals(8, cache.size());
+    }
+}
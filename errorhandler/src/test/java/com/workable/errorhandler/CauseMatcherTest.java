@@ -0,0 +1,111 @@
+package com.workable.errorhandler;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * {@link CauseMatcher} unit tests
+ */
+public class CauseMatcherTest extends TestCase {
+
+    /**
+     * Counts the calls to {@link #getCause()}
+     */
+    private static class CountingException extends RuntimeException {
+        int getCauseCalls;
+
+        CountingException(Throwable cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized Throwable getCause() {
+            getCauseCalls++;
+            return super.getCause();
+        }
+    }
+
+    private static final Matcher FOO = new ExceptionMatcher(FooException.class);
+    private static final Matcher BAR = new ExceptionMatcher(BarException.class);
+
+    @Test
+    public void testAnyCause() {
+        Throwable error = new RuntimeException(new IllegalStateException(new FooException("foo")));
+
+        assertTrue(CauseMatcher.anyCause(FOO).matches(error));
+        assertTrue(CauseMatcher.anyCause(FOO).matches(new FooException("foo")));
+        assertFalse(CauseMatcher.anyCause(BAR).matches(error));
+        assertFalse(CauseMatcher.anyCause(FOO).maxDepth(1).matches(error));
+        assertTrue(CauseMatcher.anyCause(FOO).maxDepth(2).matches(error));
+    }
+
+    @Test
+    public void testRootCause() {
+        Throwable error = new RuntimeException(new BarException("bar").initCause(new FooException("foo")));
+
+        assertTrue(CauseMatcher.rootCause(FOO).matches(error));
+        assertFalse(CauseMatcher.rootCause(BAR).matches(error));
+        assertTrue(CauseMatcher.rootCause(BAR).maxDepth(1).matches(error));
+        assertTrue(CauseMatcher.rootCause(FOO).matches(new FooException("foo")));
+    }
+
+    @Test
+    public void testSuppressed() {
+        RuntimeException cause = new RuntimeException();
+        cause.addSuppressed(new FooException("foo"));
+        Throwable error = new IllegalStateException(cause);
+
+        assertTrue(CauseMatcher.suppressed(FOO).matches(error));
+        assertFalse(CauseMatcher.suppressed(FOO).maxDepth(0).matches(error));
+        assertFalse(CauseMatcher.suppressed(BAR).matches(error));
+        assertFalse(CauseMatcher.suppressed(FOO).matches(cause.getSuppressed()[0]));
+    }
+
+    @Test
+    public void testCyclicCauses() {
+        IllegalStateException first = new IllegalStateException();
+        IllegalArgumentException second = new IllegalArgumentException(first);
+        first.initCause(second);
+
+        CauseChain chain = CauseChain.of(first);
+
+        assertEquals(2, chain.size());
+        assertSame(second, chain.getRootCause());
+        assertFalse(CauseMatcher.anyCause(FOO).matches(first));
+    }
+
+    @Test
+    public void testDepthLimit() {
+        Throwable error = new FooException("foo");
+        for (int i = 0; i < CauseChain.MAX_DEPTH * 2; i++) {
+            error = new RuntimeException(error);
+        }
+
+        assertEquals(CauseChain.MAX_DEPTH + 1, CauseChain.of(error).size());
+        assertFalse(CauseMatcher.anyCause(FOO).matches(error));
+    }
+
+    @Test
+    public void testCauseChainSharedPerHandle() {
+        final int[] executed = new int[1];
+        Action action = new Action() {
+            @Override
+            public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                executed[0]++;
+            }
+        };
+
+        CountingException error = new CountingException(new FooException("foo"));
+
+        ErrorHandler
+                .createIsolated()
+                .on(CauseMatcher.anyCause(FOO), action)
+                .on(CauseMatcher.rootCause(FOO), action)
+                .on(CauseMatcher.suppressed(FOO), action)
+                .on(CauseMatcher.anyCause(BAR), action)
+                .handle(error);
+
+        assertEquals(2, executed[0]);
+        assertEquals(1, error.getCauseCalls);
+    }
+}
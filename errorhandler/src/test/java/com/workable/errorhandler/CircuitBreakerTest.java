@@ -0,0 +1,228 @@
+package com.workable.errorhandler;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CircuitBreaker} unit tests
+ */
+public class CircuitBreakerTest extends TestCase {
+
+    private List<Class<?>> handled;
+    private ErrorHandler errorHandler;
+    private int runs;
+
+    protected void setUp() {
+        handled = new ArrayList<>();
+        runs = 0;
+        errorHandler = ErrorHandler
+                .createIsolated()
+                .always(new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        handled.add(throwable.getClass());
+                    }
+                });
+    }
+
+    @Test
+    public void testOpensAfterThresholdAndHandlesOpenException() {
+        CircuitBreaker breaker = CircuitBreaker
+                .builder(errorHandler)
+                .trip(FooException.class)
+                .threshold(3, 1, TimeUnit.MINUTES)
+                .openFor(1, TimeUnit.HOURS)
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            breaker.run(failWith(new FooException("foo")));
+        }
+
+        assertTrue(breaker.isOpen());
+        assertEquals(3, runs);
+        assertEquals(5, handled.size());
+        assertEquals(FooException.class, handled.get(2));
+        assertEquals(CircuitOpenException.class, handled.get(3));
+        assertEquals(CircuitOpenException.class, handled.get(4));
+    }
+
+    @Test
+    public void testOtherFailuresDoNotTrip() {
+        CircuitBreaker breaker = CircuitBreaker
+                .builder(errorHandler)
+                .trip(FooException.class)
+                .threshold(2, 1, TimeUnit.MINUTES)
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            breaker.run(failWith(new BarException("bar")));
+        }
+
+        assertFalse(breaker.isOpen());
+        assertEquals(5, runs);
+    }
+
+    @Test
+    public void testFallbackRunsWhileOpen() {
+        final int[] fallbacks = {0};
+        CircuitBreaker breaker = CircuitBreaker
+                .builder(errorHandler)
+                .threshold(1, 1, TimeUnit.MINUTES)
+                .openFor(1, TimeUnit.HOURS)
+                .fallback(new BlockExecutor() {
+                    @Override
+                    public void invoke() {
+                        fallbacks[0]++;
+                    }
+                })
+                .build();
+
+        breaker.run(failWith(new FooException("foo")));
+        breaker.run(failWith(new FooException("foo")));
+        breaker.run(failWith(new FooException("foo")));
+
+        assertEquals(1, runs);
+        assertEquals(2, fallbacks[0]);
+        assertEquals(1, handled.size());
+    }
+
+    @Test
+    public void testHalfOpenProbesCloseOrReopen() throws InterruptedException {
+        CircuitBreaker breaker = CircuitBreaker
+                .builder(errorHandler)
+                .threshold(1, 1, TimeUnit.MINUTES)
+                .openFor(20, TimeUnit.MILLISECONDS)
+                .halfOpenProbes(2)
+                .build();
+
+        breaker.run(failWith(new FooException("foo")));
+        assertTrue(breaker.isOpen());
+
+        Thread.sleep(40);
+        breaker.run(failWith(new FooException("foo")));
+        assertTrue(breaker.isOpen());
+        assertEquals(2, runs);
+
+        Thread.sleep(40);
+        breaker.run(succeed());
+        assertFalse(breaker.isOpen());
+        breaker.run(succeed());
+        breaker.run(succeed());
+        assertEquals(5, runs);
+        assertEquals(2, handled.size());
+    }
+
+    @Test
+    public void testProbeThrowingErrorReopens() throws InterruptedException {
+        CircuitBreaker breaker = CircuitBreaker
+                .builder(errorHandler)
+                .threshold(1, 1, TimeUnit.MINUTES)
+                .openFor(20, TimeUnit.MILLISECONDS)
+                .build();
+
+        breaker.run(failWith(new FooException("foo")));
+        Thread.sleep(40);
+
+        try {
+            breaker.run(new BlockExecutor() {
+                @Override
+                public void invoke() {
+                    throw new AssertionError("probe");
+                }
+            });
+            fail("expected the error to propagate");
+        } catch (AssertionError expected) {
+        }
+        assertTrue(breaker.isOpen());
+
+        Thread.sleep(40);
+        breaker.run(succeed());
+        breaker.run(succeed());
+
+        assertFalse(breaker.isOpen());
+        assertEquals(3, runs);
+    }
+
+    @Test
+    public void testHangingProbeTimesOut() throws InterruptedException {
+        final CircuitBreaker breaker = CircuitBreaker
+                .builder(errorHandler)
+                .threshold(1, 1, TimeUnit.MINUTES)
+                .openFor(20, TimeUnit.MILLISECONDS)
+                .probeTimeout(20, TimeUnit.MILLISECONDS)
+                .build();
+
+        breaker.run(failWith(new FooException("foo")));
+        Thread.sleep(40);
+
+        // the probe never completes while it is the only one let through
+        breaker.run(new BlockExecutor() {
+            @Override
+            public void invoke() throws InterruptedException {
+                breaker.run(succeed());
+                assertEquals(2, handled.size());
+                Thread.sleep(40);
+                breaker.run(succeed());
+            }
+        });
+
+        assertFalse(breaker.isOpen());
+        assertEquals(2, runs);
+        assertEquals(CircuitOpenException.class, handled.get(1));
+    }
+
+    @Test
+    public void testOldFailuresLeaveTheWindow() throws InterruptedException {
+        CircuitBreaker breaker = CircuitBreaker
+                .builder(errorHandler)
+                .threshold(2, 50, TimeUnit.MILLISECONDS)
+                .build();
+
+        breaker.run(failWith(new FooException("foo")));
+        Thread.sleep(100);
+        breaker.run(failWith(new FooException("foo")));
+
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void testReset() {
+        CircuitBreaker breaker = CircuitBreaker
+                .builder(errorHandler)
+                .threshold(1, 1, TimeUnit.MINUTES)
+                .openFor(1, TimeUnit.HOURS)
+                .build();
+
+        breaker.run(failWith(new FooException("foo")));
+        assertTrue(breaker.isOpen());
+
+        breaker.reset();
+        breaker.run(succeed());
+
+        assertFalse(breaker.isOpen());
+        assertEquals(2, runs);
+    }
+
+    private BlockExecutor failWith(final Exception exception) {
+        return new BlockExecutor() {
+            @Override
+            public void invoke() throws Exception {
+                runs++;
+                throw exception;
+            }
+        };
+    }
+
+    private BlockExecutor succeed() {
+        return new BlockExecutor() {
+            @Override
+            public void invoke() {
+                runs++;
+            }
+        };
+    }
+}
@@ -0,0 +1,180 @@
+package com.workable.errorhandler;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link ConcurrencyLimiter} unit tests
+ */
+public class ConcurrencyLimiterTest extends TestCase {
+
+    private List<Class<?>> handled;
+    private ErrorHandler errorHandler;
+
+    protected void setUp() {
+        handled = new ArrayList<>();
+        errorHandler = ErrorHandler
+                .createIsolated()
+                .always(new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        handled.add(throwable.getClass());
+                    }
+                });
+    }
+
+    @Test
+    public void testRejectsOverLimit() {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter
+                .builder(errorHandler)
+                .limit(2, 1, 10)
+                .build();
+        final int[] runs = {0};
+
+        limiter.run(new BlockExecutor() {
+            @Override
+            public void invoke() {
+                runs[0]++;
+                limiter.run(new BlockExecutor() {
+                    @Override
+                    public void invoke() {
+                        runs[0]++;
+                        assertEquals(2, limiter.getInFlight());
+                        limiter.run(new BlockExecutor() {
+                            @Override
+                            public void invoke() {
+                                runs[0]++;
+                            }
+                        });
+                    }
+                });
+            }
+        });
+
+        assertEquals(2, runs[0]);
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(1, handled.size());
+        assertEquals(OverloadException.class, handled.get(0));
+    }
+
+    @Test
+    public void testOverloadRulesShrinkLimit() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter
+                .builder(errorHandler)
+                .limit(10, 2, 10)
+                .backoff(0.5)
+                .build();
+        errorHandler.on(FooException.class, limiter.overloaded());
+
+        limiter.run(failWith(new FooException("foo")));
+        assertEquals(5, limiter.getLimit());
+
+        limiter.run(failWith(new BarException("bar")));
+        assertEquals(5, limiter.getLimit());
+
+        limiter.run(failWith(new FooException("foo")));
+        limiter.run(failWith(new FooException("foo")));
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testBurstOfOverloadShrinksLimitOnce() {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter
+                .builder(errorHandler)
+                .limit(10, 2, 10)
+                .backoff(0.5)
+                .build();
+        errorHandler.on(FooException.class, limiter.overloaded());
+
+        // both blocks are admitted before the limit shrinks, so only the first failure shrinks it
+        limiter.run(new BlockExecutor() {
+            @Override
+            public void invoke() throws Exception {
+                limiter.run(failWith(new FooException("inner")));
+                throw new FooException("outer");
+            }
+        });
+        assertEquals(5, limiter.getLimit());
+
+        limiter.run(failWith(new FooException("foo")));
+        assertEquals(2, limiter.getLimit());
+        assertEquals(3, handled.size());
+    }
+
+    @Test
+    public void testErrorsFromElsewhereKeepLimit() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter
+                .builder(errorHandler)
+                .limit(10, 2, 10)
+                .backoff(0.5)
+                .build();
+        errorHandler.on(FooException.class, limiter.overloaded());
+
+        errorHandler.handle(new FooException("foo"));
+        ConcurrencyLimiter
+                .builder(errorHandler)
+                .build()
+                .run(failWith(new FooException("foo")));
+
+        assertEquals(10, limiter.getLimit());
+        assertEquals(2, handled.size());
+    }
+
+    @Test
+    public void testSuccessGrowsLimitWhenInUse() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter
+                .builder(errorHandler)
+                .limit(1, 1, 3)
+                .build();
+
+        for (int i = 0; i < 10; i++) {
+            limiter.run(new BlockExecutor() {
+                @Override
+                public void invoke() {
+                }
+            });
+        }
+
+        // the limit stops growing once a single block at a time uses less than half of it
+        assertEquals(2, limiter.getLimit());
+        assertTrue(handled.isEmpty());
+    }
+
+    @Test
+    public void testErrorReleasesSlot() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter
+                .builder(errorHandler)
+                .limit(1, 1, 1)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                limiter.run(new BlockExecutor() {
+                    @Override
+                    public void invoke() {
+                        throw new AssertionError("block");
+                    }
+                });
+                fail("expected the error to propagate");
+            } catch (AssertionError expected) {
+            }
+        }
+
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(1, limiter.getLimit());
+        assertTrue(handled.isEmpty());
+    }
+
+    private BlockExecutor failWith(final Exception exception) {
+        return new BlockExecutor() {
+            @Override
+            public void invoke() throws Exception {
+                throw exception;
+            }
+        };
+    }
+}
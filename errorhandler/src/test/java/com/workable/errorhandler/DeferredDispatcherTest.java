@@ -0,0 +1,250 @@
+package com.workable.errorhandler;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link DeferredDispatcher} unit tests
+ */
+public class DeferredDispatcherTest extends TestCase {
+
+    private DeferredDispatcher dispatcher;
+    private List<Throwable> uncaught;
+    private List<String> executed;
+
+    protected void setUp() {
+        uncaught = Collections.synchronizedList(new ArrayList<Throwable>());
+        executed = Collections.synchronizedList(new ArrayList<String>());
+        dispatcher = DeferredDispatcher.start(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "dispatcher");
+                thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    @Override
+                    public void uncaughtException(Thread thread, Throwable throwable) {
+                        uncaught.add(throwable);
+                    }
+                });
+                return thread;
+            }
+        });
+    }
+
+    protected void tearDown() {
+        dispatcher.close();
+    }
+
+    @Test
+    public void testHandlesOnDispatcherThread() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        ErrorHandler
+                .createIsolated()
+                .deferTo(dispatcher)
+                .on(FooException.class, record("foo"))
+                .on(FooException.class, new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        await(release);
+                    }
+                })
+                .always(record("always"))
+                .handle(new FooException("foo error"));
+
+        assertTrue(executed.isEmpty() || executed.equals(Collections.singletonList("foo@dispatcher")));
+
+        release.countDown();
+        dispatcher.close();
+
+        assertEquals(list("foo@dispatcher", "always@dispatcher"), executed);
+    }
+
+    @Test
+    public void testInlineActionsRunOnCallingThread() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .deferTo(dispatcher)
+                .on(FooException.class, ErrorHandler.inline(new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        record("inline").execute(throwable, errorHandler);
+                        errorHandler.skipFollowing();
+                    }
+                }))
+                .on(FooException.class, record("skipped"))
+                .on(BarException.class, ErrorHandler.inline(record("bar")))
+                .always(record("always"));
+
+        errorHandler.handle(new FooException("foo error"));
+
+        String caller = Thread.currentThread().getName();
+        assertEquals("inline@" + caller, executed.get(0));
+
+        errorHandler.handle(new BarException("bar error"));
+        dispatcher.close();
+
+        // the calling thread and the dispatcher run concurrently, so only the order within each is known
+        assertEquals(4, executed.size());
+        assertTrue(executed.indexOf("bar@" + caller) > 0);
+        assertEquals(2, Collections.frequency(executed, "always@dispatcher"));
+    }
+
+    @Test
+    public void testParentActionsDeferred() {
+        ErrorHandler.defaultErrorHandler().on(FooException.class, record("default"));
+        try {
+            ErrorHandler
+                    .create()
+                    .deferTo(dispatcher)
+                    .on(FooException.class, record("child"))
+                    .handle(new FooException("foo error"));
+            dispatcher.close();
+        } finally {
+            ErrorHandler.defaultErrorHandler().clear();
+        }
+
+        assertEquals(list("child@dispatcher", "default@dispatcher"), executed);
+    }
+
+    @Test
+    public void testFailingActionDoesNotStopDispatcher() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .deferTo(dispatcher)
+                .on(FooException.class, new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        throw new IllegalStateException("boom");
+                    }
+                })
+                .on(BarException.class, record("bar"));
+
+        errorHandler.handle(new FooException("foo error"));
+        errorHandler.handle(new BarException("bar error"));
+        dispatcher.close();
+
+        assertEquals(1, uncaught.size());
+        assertEquals(list("bar@dispatcher"), executed);
+    }
+
+    @Test
+    public void testHandlesOnCallingThreadOnceClosed() {
+        dispatcher.close();
+
+        ErrorHandler
+                .createIsolated()
+                .deferTo(dispatcher)
+                .on(FooException.class, record("foo"))
+                .handle(new FooException("foo error"));
+
+        assertEquals(list("foo@" + Thread.currentThread().getName()), executed);
+    }
+
+    @Test
+    public void testNoErrorLostWhileClosing() throws InterruptedException {
+        final int producers = 4;
+        final int errors = 20000;
+        final AtomicInteger handled = new AtomicInteger();
+        final ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .deferTo(dispatcher)
+                .always(new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        handled.incrementAndGet();
+                    }
+                });
+        final CountDownLatch started = new CountDownLatch(producers);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < producers; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    for (int j = 0; j < errors; j++) {
+                        errorHandler.handle(new FooException("foo error"));
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        await(started);
+        dispatcher.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(producers * errors, handled.get());
+        assertTrue(uncaught.isEmpty());
+    }
+
+    @Test
+    public void testFailingActionWhileClosing() {
+        dispatcher.close();
+        // a dispatcher thread that stops before running the loop leaves every error to close()
+        dispatcher = DeferredDispatcher.start(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread("stopped");
+                thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    @Override
+                    public void uncaughtException(Thread thread, Throwable throwable) {
+                        uncaught.add(throwable);
+                    }
+                });
+                return thread;
+            }
+        });
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .deferTo(dispatcher)
+                .on(FooException.class, new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        throw new IllegalStateException("boom");
+                    }
+                })
+                .on(BarException.class, record("bar"));
+
+        errorHandler.handle(new FooException("foo error"));
+        errorHandler.handle(new BarException("bar error"));
+        dispatcher.close();
+
+        assertEquals(1, uncaught.size());
+        assertEquals(list("bar@" + Thread.currentThread().getName()), executed);
+    }
+
+    private Action record(final String name) {
+        return new Action() {
+            @Override
+            public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                executed.add(name + "@" + Thread.currentThread().getName());
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<String> list(String... names) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, names);
+        return list;
+    }
+}
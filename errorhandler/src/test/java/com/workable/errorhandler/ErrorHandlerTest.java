@@ -5,6 +5,13 @@ import org.junit.Test;
 import org.mockito.InOrder;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 import static org.mockito.Mockito.*;
 
 /**
@@ -41,6 +48,8 @@ public class ErrorHandlerTest extends TestCase {
         void defaultAlways();
     }
 
+    private static final ContextKey<String> DECISION = ContextKey.create("decision");
+
     private ActionDelegate actionDelegateMock;
 
     protected void setUp() {
@@ -72,6 +81,7 @@ public class ErrorHandlerTest extends TestCase {
     protected void tearDown() {
         ErrorHandler
                 .defaultErrorHandler()
+                .listener(null)
                 .clear();
     }
 
@@ -312,6 +322,478 @@ public class ErrorHandlerTest extends TestCase {
         testVerifier.verify(actionDelegateMock).defaultAction3();
     }
 
+    @Test
+    public void testIndexedDispatchKeepsRegistrationOrder() {
+        InOrder testVerifier = inOrder(actionDelegateMock);
+
+        ErrorHandler
+                .createIsolated()
+                .on(RuntimeException.class, (throwable, handler) -> actionDelegateMock.action1())
+                .on(FooException.class, (throwable, handler) -> actionDelegateMock.action2())
+                .on((throwable) -> throwable.getMessage().equals("closed"), (throwable, handler) -> actionDelegateMock.action3())
+                .on(Exception.class, (throwable, handler) -> actionDelegateMock.action4())
+                .on((throwable) -> false, (throwable, handler) -> actionDelegateMock.action5())
+                .handle(new BarException("closed", false));
+
+        testVerifier.verify(actionDelegateMock).action1();
+        testVerifier.verify(actionDelegateMock).action3();
+        testVerifier.verify(actionDelegateMock).action4();
+        testVerifier.verifyNoMoreInteractions();
+        Mockito.verifyNoMoreInteractions(actionDelegateMock);
+    }
+
+    @Test
+    public void testIndexedDispatchSeesLateRegistrations() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(FooException.class, (throwable, handler) -> actionDelegateMock.action1());
+
+        errorHandler.handle(new FooException("foo error"));
+
+        errorHandler.on(Exception.class, (throwable, handler) -> actionDelegateMock.action2());
+
+        errorHandler.handle(new FooException("foo error"));
+
+        Mockito.verify(actionDelegateMock, times(2)).action1();
+        Mockito.verify(actionDelegateMock, times(1)).action2();
+    }
+
+    @Test
+    public void testFrozenErrorHandlerDelegatesToFrozenDefaults() {
+        InOrder testVerifier = inOrder(actionDelegateMock);
+
+        ErrorHandler errorHandler = ErrorHandler
+                .create()
+                .on(FooException.class, (throwable, handler) -> actionDelegateMock.action1())
+                .always((throwable, handler) -> actionDelegateMock.always1());
+
+        ErrorHandler frozenErrorHandler = errorHandler.freeze();
+
+        errorHandler.on(FooException.class, (throwable, handler) -> actionDelegateMock.action2());
+        ErrorHandler.defaultErrorHandler().on(FooException.class, (throwable, handler) -> actionDelegateMock.defaultAction2());
+
+        frozenErrorHandler.handle(new FooException("foo error"));
+
+        testVerifier.verify(actionDelegateMock).action1();
+        testVerifier.verify(actionDelegateMock).always1();
+        testVerifier.verify(actionDelegateMock).defaultAction1();
+        testVerifier.verify(actionDelegateMock).defaultAlways();
+        testVerifier.verifyNoMoreInteractions();
+        Mockito.verifyNoMoreInteractions(actionDelegateMock);
+    }
+
+    @Test
+    public void testFrozenErrorHandlerRejectsRegistrations() {
+        ErrorHandler frozenErrorHandler = ErrorHandler.create().freeze();
+
+        assertTrue(frozenErrorHandler.isFrozen());
+        assertSame(frozenErrorHandler, frozenErrorHandler.freeze());
+
+        try {
+            frozenErrorHandler.on(FooException.class, (throwable, handler) -> actionDelegateMock.action1());
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException ignore) {
+        }
+
+        try {
+            frozenErrorHandler.bind("foo", errorCode -> throwable -> true);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException ignore) {
+        }
+
+        try {
+            frozenErrorHandler.clear();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException ignore) {
+        }
+    }
+
+    @Test
+    public void testConcurrentRegistrationAndDispatch() throws Exception {
+        final int threads = 4;
+        final int rules = 2000;
+        final ErrorHandler parent = ErrorHandler.createIsolated();
+        final AtomicInteger executed = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean registering = new AtomicBoolean(true);
+        List<Thread> workers = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            final int code = i;
+            workers.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < rules; j++) {
+                        parent.bind(code * rules + j, errorCode -> throwable -> false)
+                                .on(FooException.class, (throwable, handler) -> executed.incrementAndGet())
+                                .on(code * rules + j, (throwable, handler) -> actionDelegateMock.action1());
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+            workers.add(new Thread(() -> {
+                try {
+                    ErrorHandler child = ErrorHandler.create(parent);
+                    start.await();
+                    while (registering.get()) {
+                        child.handle(new FooException("foo error"));
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        start.countDown();
+        for (int i = 0; i < workers.size(); i += 2) {
+            workers.get(i).join();
+        }
+        registering.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertNull(failure.get());
+
+        executed.set(0);
+        parent.handle(new FooException("foo error"));
+
+        assertEquals(threads * rules, executed.get());
+        Mockito.verify(actionDelegateMock, never()).action1();
+    }
+
+    @Test
+    public void testSkipFlagsResetOnEveryHandle() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(FooException.class, (throwable, handler) -> {
+                    actionDelegateMock.action1();
+                    handler.skipFollowing();
+                })
+                .on(FooException.class, (throwable, handler) -> actionDelegateMock.action2())
+                .on(BarException.class, (throwable, handler) -> actionDelegateMock.action3())
+                .otherwise((throwable, handler) -> actionDelegateMock.otherwise1());
+
+        errorHandler.handle(new FooException("foo error"));
+        errorHandler.handle(new BarException("bar error"));
+        errorHandler.handle(new QuxException(500));
+
+        Mockito.verify(actionDelegateMock, times(1)).action1();
+        Mockito.verify(actionDelegateMock, never()).action2();
+        Mockito.verify(actionDelegateMock, times(1)).action3();
+        Mockito.verify(actionDelegateMock, times(1)).otherwise1();
+    }
+
+    @Test
+    public void testSkipThroughContextErrorHandlerAppliesToCurrentErrorOnly() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(FooException.class, ErrorHandler.withContext((throwable, context) -> {
+                    actionDelegateMock.action1();
+                    context.getErrorHandler().skipFollowing();
+                }))
+                .on(FooException.class, (throwable, handler) -> actionDelegateMock.action2())
+                .on(BarException.class, (throwable, handler) -> actionDelegateMock.action3())
+                .otherwise((throwable, handler) -> actionDelegateMock.otherwise1());
+
+        errorHandler.handle(new FooException("foo error"));
+        errorHandler.handle(new BarException("bar error"));
+        errorHandler.freeze().handle(new FooException("foo error"));
+
+        Mockito.verify(actionDelegateMock, times(2)).action1();
+        Mockito.verify(actionDelegateMock, never()).action2();
+        Mockito.verify(actionDelegateMock, times(1)).action3();
+        Mockito.verify(actionDelegateMock, never()).otherwise1();
+    }
+
+    @Test
+    public void testContextActionsShareHandlingContext() {
+        InOrder testVerifier = inOrder(actionDelegateMock);
+
+        ErrorHandler.defaultErrorHandler()
+                .on(FooException.class, ErrorHandler.withContext((throwable, context) -> {
+                    if ("retry".equals(context.get(DECISION))) {
+                        actionDelegateMock.defaultAction2();
+                    }
+                }));
+
+        ErrorHandler
+                .create()
+                .on(FooException.class, ErrorHandler.withContext((throwable, context) -> {
+                    actionDelegateMock.action1();
+                    context.put(DECISION, "retry");
+                    context.skipAlways();
+                }))
+                .always((throwable, handler) -> actionDelegateMock.always1())
+                .handle(new FooException("foo error"));
+
+        testVerifier.verify(actionDelegateMock).action1();
+        testVerifier.verify(actionDelegateMock).defaultAction1();
+        testVerifier.verify(actionDelegateMock).defaultAction2();
+        testVerifier.verifyNoMoreInteractions();
+        Mockito.verifyNoMoreInteractions(actionDelegateMock);
+    }
+
+    @Test
+    public void testErrorCodeResolutionFollowsBindingChanges() {
+        ErrorHandler
+                .create()
+                .on(500, (throwable, handler) -> actionDelegateMock.action1())
+                .handle(new QuxException(500));
+
+        Mockito.verify(actionDelegateMock, times(1)).action1();
+
+        ErrorHandler
+                .defaultErrorHandler()
+                .bind(500, errorCode -> throwable -> throwable instanceof FooException);
+
+        ErrorHandler errorHandler = ErrorHandler
+                .create()
+                .on(500, (throwable, handler) -> actionDelegateMock.action2());
+
+        errorHandler.handle(new QuxException(500));
+        errorHandler.handle(new FooException("foo error"));
+
+        Mockito.verify(actionDelegateMock, times(1)).action2();
+    }
+
+    @Test
+    public void testErrorCodeClassBindingOverridesParentValueBinding() {
+        ErrorHandler
+                .defaultErrorHandler()
+                .bind(404, errorCode -> throwable -> throwable instanceof FooException);
+
+        ErrorHandler errorHandler = ErrorHandler
+                .create()
+                .bindClass(Integer.class, errorCode -> throwable -> throwable instanceof BarException)
+                .on(404, (throwable, handler) -> actionDelegateMock.action1());
+
+        errorHandler.handle(new FooException("foo error"));
+        errorHandler.handle(new BarException("bar error"));
+
+        Mockito.verify(actionDelegateMock, times(1)).action1();
+    }
+
+    @Test
+    public void testListenerNotifiedAlongTheChain() {
+        ErrorHandlerListener listener = mock(ErrorHandlerListener.class);
+        ErrorHandlerListener defaultListener = mock(ErrorHandlerListener.class);
+        InOrder testVerifier = inOrder(listener, defaultListener);
+
+        Action fooAction = (throwable, handler) -> actionDelegateMock.action1();
+        Action alwaysAction = (throwable, handler) -> actionDelegateMock.always1();
+
+        ErrorHandler.defaultErrorHandler().listener(defaultListener);
+
+        ErrorHandler errorHandler = ErrorHandler
+                .create()
+                .listener(listener)
+                .on(FooException.class, fooAction)
+                .always(alwaysAction);
+
+        FooException error = new FooException("foo error");
+        errorHandler.handle(error);
+
+        ErrorHandler defaultErrorHandler = ErrorHandler.defaultErrorHandler();
+        testVerifier.verify(listener).onDispatch(errorHandler, error);
+        testVerifier.verify(listener).onMatch(eq(errorHandler), any(ActionEntry.class), eq(error));
+        testVerifier.verify(listener).onAction(eq(errorHandler), eq(fooAction), eq(error), anyLong());
+        testVerifier.verify(listener).onAlways(errorHandler, error);
+        testVerifier.verify(listener).onAction(eq(errorHandler), eq(alwaysAction), eq(error), anyLong());
+        testVerifier.verify(listener).onParent(errorHandler, defaultErrorHandler, error);
+        testVerifier.verify(defaultListener).onDispatch(defaultErrorHandler, error);
+        testVerifier.verify(defaultListener).onMatch(eq(defaultErrorHandler), any(ActionEntry.class), eq(error));
+        testVerifier.verify(defaultListener).onAction(eq(defaultErrorHandler), any(Action.class), eq(error), anyLong());
+        testVerifier.verify(defaultListener).onAlways(defaultErrorHandler, error);
+        testVerifier.verify(defaultListener).onAction(eq(defaultErrorHandler), any(Action.class), eq(error), anyLong());
+        testVerifier.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void testListenerNotifiedOfOtherwise() {
+        ErrorHandlerListener listener = mock(ErrorHandlerListener.class);
+
+        Action otherwiseAction = (throwable, handler) -> actionDelegateMock.otherwise1();
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(FooException.class, (throwable, handler) -> actionDelegateMock.action1())
+                .otherwise(otherwiseAction)
+                .listener(listener);
+
+        BarException error = new BarException("bar error");
+        errorHandler.handle(error);
+
+        Mockito.verify(listener).onDispatch(errorHandler, error);
+        Mockito.verify(listener).onOtherwise(errorHandler, error);
+        Mockito.verify(listener).onAction(eq(errorHandler), eq(otherwiseAction), eq(error), anyLong());
+        Mockito.verifyNoMoreInteractions(listener);
+    }
+
+    @Test
+    public void testHandleCode() {
+        InOrder testVerifier = inOrder(actionDelegateMock);
+
+        ErrorHandler
+                .create()
+                .on(500, (throwable, handler) -> {
+                    assertTrue(throwable instanceof ErrorCodeSignal);
+                    assertEquals(500, ((ErrorCodeSignal) throwable).getErrorCode());
+                    assertEquals(0, throwable.getStackTrace().length);
+                    actionDelegateMock.action1();
+                })
+                .on(FooException.class, (throwable, handler) -> actionDelegateMock.action2())
+                .on("closed:bar", (throwable, handler) -> actionDelegateMock.action3())
+                .otherwise((throwable, handler) -> actionDelegateMock.otherwise1())
+                .always((throwable, handler) -> actionDelegateMock.always1())
+                .handleCode(500);
+
+        testVerifier.verify(actionDelegateMock).action1();
+        testVerifier.verify(actionDelegateMock).always1();
+        testVerifier.verify(actionDelegateMock).defaultAction2();
+        testVerifier.verify(actionDelegateMock).defaultAlways();
+        testVerifier.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void testHandleUnknownCode() {
+        InOrder testVerifier = inOrder(actionDelegateMock);
+
+        ErrorHandler
+                .create()
+                .on(500, (throwable, handler) -> actionDelegateMock.action1())
+                .otherwise((throwable, handler) -> actionDelegateMock.otherwise1())
+                .handleCode(404);
+
+        testVerifier.verify(actionDelegateMock).otherwise1();
+        testVerifier.verify(actionDelegateMock).defaultAlways();
+        testVerifier.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void testDeepChain() {
+        InOrder testVerifier = inOrder(actionDelegateMock);
+
+        ErrorHandler module = ErrorHandler
+                .create()
+                .on(FooException.class, (throwable, handler) -> actionDelegateMock.action2())
+                .always((throwable, handler) -> actionDelegateMock.action3());
+
+        ErrorHandler screen = ErrorHandler
+                .create(module)
+                .on(FooException.class, (throwable, handler) -> actionDelegateMock.action1());
+
+        screen.handle(new FooException("foo error"));
+
+        testVerifier.verify(actionDelegateMock).action1();
+        testVerifier.verify(actionDelegateMock).action2();
+        testVerifier.verify(actionDelegateMock).action3();
+        testVerifier.verify(actionDelegateMock).defaultAction1();
+        testVerifier.verify(actionDelegateMock).defaultAlways();
+        testVerifier.verifyNoMoreInteractions();
+
+        module.on(FooException.class, (throwable, handler) -> {
+            actionDelegateMock.action4();
+            handler.skipDefaults();
+        });
+
+        screen.handle(new FooException("foo error"));
+
+        testVerifier.verify(actionDelegateMock).action1();
+        testVerifier.verify(actionDelegateMock).action2();
+        testVerifier.verify(actionDelegateMock).action4();
+        testVerifier.verify(actionDelegateMock).action3();
+        testVerifier.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void testChainFollowsParentRegistrations() {
+        ErrorHandler errorHandler = ErrorHandler
+                .create()
+                .on(BarException.class, (throwable, handler) -> actionDelegateMock.action1());
+
+        errorHandler.handle(new QuxException(404));
+
+        Mockito.verify(actionDelegateMock, times(1)).defaultOtherwise();
+
+        ErrorHandler
+                .defaultErrorHandler()
+                .on(QuxException.class, (throwable, handler) -> actionDelegateMock.defaultAction3());
+
+        errorHandler.handle(new QuxException(404));
+
+        Mockito.verify(actionDelegateMock, times(1)).defaultAction3();
+        Mockito.verify(actionDelegateMock, times(1)).defaultOtherwise();
+
+        ErrorHandler.defaultErrorHandler().clear();
+        errorHandler.handle(new QuxException(404));
+
+        Mockito.verify(actionDelegateMock, times(1)).defaultAction3();
+        Mockito.verify(actionDelegateMock, times(2)).defaultAlways();
+    }
+
+    @Test
+    public void testFrozenErrorHandlerUsesCompiledRules() {
+        InOrder testVerifier = inOrder(actionDelegateMock);
+        int[] dispatches = new int[1];
+
+        RuleCompiler compiler = entries -> (error, context) -> {
+            dispatches[0]++;
+            boolean handled = false;
+            for (ActionEntry entry : entries) {
+                if (context.isSkipFollowing()) {
+                    break;
+                }
+                if (entry.matcher.matches(error)) {
+                    context.execute(entry.action, error);
+                    handled = true;
+                }
+            }
+            return handled;
+        };
+
+        ErrorHandler frozenErrorHandler = ErrorHandler
+                .create()
+                .on(FooException.class, (throwable, handler) -> actionDelegateMock.action1())
+                .on(FooException.class, ErrorHandler.withContext((throwable, context) -> {
+                    actionDelegateMock.action2();
+                    context.skipFollowing();
+                }))
+                .on(FooException.class, (throwable, handler) -> actionDelegateMock.action3())
+                .always((throwable, handler) -> actionDelegateMock.always1())
+                .freeze(compiler);
+
+        frozenErrorHandler.handle(new FooException("foo error"));
+
+        testVerifier.verify(actionDelegateMock).action1();
+        testVerifier.verify(actionDelegateMock).action2();
+        testVerifier.verify(actionDelegateMock).always1();
+        testVerifier.verify(actionDelegateMock).defaultAlways();
+        testVerifier.verifyNoMoreInteractions();
+        assertEquals(1, dispatches[0]);
+
+        frozenErrorHandler.handle(new QuxException(500));
+
+        Mockito.verify(actionDelegateMock).defaultAction2();
+        assertEquals(3, dispatches[0]);
+
+        frozenErrorHandler.handleCode(500);
+
+        Mockito.verify(actionDelegateMock, times(2)).defaultAction2();
+        assertEquals(3, dispatches[0]);
+
+        ErrorHandler.createIsolated()
+                .on(FooException.class, (throwable, handler) -> actionDelegateMock.action4())
+                .freeze(entries -> null)
+                .handle(new FooException("foo error"));
+
+        Mockito.verify(actionDelegateMock).action4();
+    }
+
     private enum DBError {
         READ_ONLY,
         DEADLOCK,
@@ -0,0 +1,74 @@
+package com.workable.errorhandler;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * {@link HandlingContext} unit tests
+ */
+public class HandlingContextTest extends TestCase {
+
+    private static final ContextKey<String> BODY = ContextKey.create("body");
+    private static final ContextKey<Integer> STATUS = ContextKey.create("status");
+    private static final ContextKey.Counter RETRIES = ContextKey.counter("retries");
+    private static final ContextKey.Flag REPORTED = ContextKey.flag("reported");
+    private static final ContextKey.Flag LOGGED = ContextKey.flag("logged");
+
+    @Test
+    public void testValues() {
+        HandlingContext context = new HandlingContext();
+
+        assertNull(context.get(BODY));
+        assertNull(context.put(BODY, "not found"));
+        assertEquals("not found", context.put(BODY, "gone"));
+        assertEquals("gone", context.get(BODY));
+        assertNull(context.get(STATUS));
+
+        context.put(STATUS, 410);
+
+        assertEquals(Integer.valueOf(410), context.get(STATUS));
+        assertEquals("gone", context.remove(BODY));
+        assertNull(context.get(BODY));
+    }
+
+    @Test
+    public void testKeysCreatedAfterFirstUse() {
+        HandlingContext context = new HandlingContext();
+        context.put(BODY, "body");
+
+        ContextKey<String> late = ContextKey.create("late");
+        context.put(late, "late");
+
+        assertEquals("body", context.get(BODY));
+        assertEquals("late", context.get(late));
+    }
+
+    @Test
+    public void testCounters() {
+        HandlingContext context = new HandlingContext();
+
+        assertEquals(0L, context.getCount(RETRIES));
+        assertEquals(1L, context.increment(RETRIES));
+        assertEquals(2L, context.increment(RETRIES));
+
+        context.setCount(RETRIES, 10L);
+
+        assertEquals(10L, context.getCount(RETRIES));
+    }
+
+    @Test
+    public void testFlags() {
+        HandlingContext context = new HandlingContext();
+
+        assertFalse(context.isSet(REPORTED));
+
+        context.set(REPORTED, true);
+
+        assertTrue(context.isSet(REPORTED));
+        assertFalse(context.isSet(LOGGED));
+
+        context.set(REPORTED, false);
+
+        assertFalse(context.isSet(REPORTED));
+    }
+}
@@ -0,0 +1,147 @@
+package com.workable.errorhandler;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * {@link Matchers} unit tests
+ */
+public class MatchersTest extends TestCase {
+
+    /**
+     * Counts its calls and matches everything
+     */
+    private static class CountingMatcher implements Matcher {
+        int calls;
+
+        @Override
+        public boolean matches(Throwable throwable) {
+            calls++;
+            return true;
+        }
+    }
+
+    private static class CountingAction implements Action {
+        int calls;
+
+        @Override
+        public void execute(Throwable throwable, ErrorHandler errorHandler) {
+            calls++;
+        }
+    }
+
+    @Test
+    public void testInstanceOf() {
+        assertTrue(Matchers.instanceOf(FooException.class).matches(new FooException("foo")));
+        assertFalse(Matchers.instanceOf(FooException.class).matches(new BarException("bar")));
+        assertEquals(Matchers.instanceOf(FooException.class), Matchers.instanceOf(FooException.class));
+        assertFalse(Matchers.instanceOf(FooException.class).equals(Matchers.instanceOf(BarException.class)));
+        assertTrue(Matchers.anyOf(FooException.class, BarException.class).matches(new BarException("bar")));
+        assertFalse(Matchers.anyOf(FooException.class, BarException.class).matches(new QuxException(500)));
+    }
+
+    @Test
+    public void testMessageMatches() {
+        Matcher matcher = Matchers.messageMatches("time(d)? ?out");
+
+        assertTrue(matcher.matches(new FooException("connection timed out")));
+        assertFalse(matcher.matches(new FooException("refused")));
+        assertFalse(matcher.matches(new FooException(null)));
+        assertEquals(Matchers.Cost.PATTERN, Matchers.costOf(matcher));
+    }
+
+    @Test
+    public void testAndEvaluatesCheapestFirst() {
+        CountingMatcher expensive = new CountingMatcher();
+        Matcher matcher = Matchers.and(expensive, Matchers.instanceOf(FooException.class));
+
+        assertFalse(matcher.matches(new BarException("bar")));
+        assertEquals(0, expensive.calls);
+
+        assertTrue(matcher.matches(new FooException("foo")));
+        assertEquals(1, expensive.calls);
+        assertEquals(Matchers.Cost.PARSE, Matchers.costOf(matcher));
+    }
+
+    @Test
+    public void testOrEvaluatesCheapestFirst() {
+        CountingMatcher expensive = new CountingMatcher();
+        Matcher matcher = Matchers.or(
+                Matchers.withCost(Matchers.Cost.PARSE, expensive),
+                Matchers.withCost(Matchers.Cost.COMPARE, Matchers.instanceOf(FooException.class)));
+
+        assertTrue(matcher.matches(new FooException("foo")));
+        assertEquals(0, expensive.calls);
+
+        assertTrue(matcher.matches(new BarException("bar")));
+        assertEquals(1, expensive.calls);
+    }
+
+    @Test
+    public void testNot() {
+        Matcher foo = Matchers.instanceOf(FooException.class);
+
+        assertFalse(Matchers.not(foo).matches(new FooException("foo")));
+        assertTrue(Matchers.not(foo).matches(new BarException("bar")));
+        assertSame(foo, Matchers.not(Matchers.not(foo)));
+    }
+
+    @Test
+    public void testNestedCombinatorsAreFlattened() {
+        CountingMatcher counting = new CountingMatcher();
+        Matcher foo = Matchers.instanceOf(FooException.class);
+
+        Matcher matcher = Matchers.and(Matchers.and(counting, foo), Matchers.and(foo, counting));
+
+        assertTrue(matcher.matches(new FooException("foo")));
+        assertEquals(1, counting.calls);
+    }
+
+    @Test
+    public void testSharedMatcherIsEvaluatedOncePerHandle() {
+        CountingMatcher counting = new CountingMatcher();
+        Matcher shared = Matchers.shared(counting);
+        CountingAction first = new CountingAction();
+        CountingAction second = new CountingAction();
+
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(Matchers.and(Matchers.instanceOf(FooException.class), shared), first)
+                .on(Matchers.and(Matchers.instanceOf(FooException.class), Matchers.not(shared)), second)
+                .on(shared, first);
+
+        errorHandler.handle(new FooException("foo"));
+        assertEquals(2, first.calls);
+        assertEquals(0, second.calls);
+        assertEquals(1, counting.calls);
+
+        errorHandler.handle(new FooException("foo"));
+        assertEquals(4, first.calls);
+        assertEquals(2, counting.calls);
+    }
+
+    @Test
+    public void testContextMatcherIsHandedTheContext() {
+        final HandlingContext[] seen = new HandlingContext[1];
+        CountingAction action = new CountingAction();
+
+        ErrorHandler
+                .createIsolated()
+                .on(Matchers.and(Matchers.instanceOf(FooException.class), new ContextMatcher() {
+                    @Override
+                    public boolean matches(Throwable throwable, HandlingContext context) {
+                        seen[0] = context;
+                        return true;
+                    }
+
+                    @Override
+                    public boolean matches(Throwable throwable) {
+                        return false;
+                    }
+                }), action)
+                .handle(new FooException("foo"));
+
+        assertNotNull(seen[0]);
+        assertEquals(1, action.calls);
+    }
+}
@@ -0,0 +1,167 @@
+package com.workable.errorhandler;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RateLimitedAction} unit tests
+ */
+public class RateLimitedActionTest extends TestCase {
+
+    private List<Long> suppressed;
+    private Action recorder;
+
+    protected void setUp() {
+        suppressed = new ArrayList<>();
+        recorder = ErrorHandler.withContext(new ContextAction() {
+            @Override
+            public void execute(Throwable throwable, HandlingContext context) {
+                suppressed.add(context.getCount(RateLimitedAction.SUPPRESSED));
+            }
+        });
+    }
+
+    @Test
+    public void testRateReportsSuppressedOnNextExecution() throws InterruptedException {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(FooException.class, RateLimitedAction
+                        .builder(recorder)
+                        .rate(2, 100, TimeUnit.MILLISECONDS)
+                        .fingerprintFrames(1)
+                        .build());
+
+        handleFoo(errorHandler, 5);
+
+        assertEquals(2, suppressed.size());
+
+        Thread.sleep(60);
+        handleFoo(errorHandler, 1);
+
+        assertEquals(3, suppressed.size());
+        assertEquals(Long.valueOf(0), suppressed.get(0));
+        assertEquals(Long.valueOf(0), suppressed.get(1));
+        assertEquals(Long.valueOf(3), suppressed.get(2));
+    }
+
+    @Test
+    public void testLongPeriods() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(FooException.class, RateLimitedAction
+                        .builder(recorder)
+                        .rate(1000, 70 * 365, TimeUnit.DAYS)
+                        .fingerprintFrames(1)
+                        .build());
+
+        handleFoo(errorHandler, 1001);
+
+        assertEquals(1000, suppressed.size());
+
+        try {
+            RateLimitedAction.builder(recorder).rate(Integer.MAX_VALUE, Long.MAX_VALUE, TimeUnit.DAYS);
+            fail("expected a period that overflows to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            RateLimitedAction.builder(recorder).rate(1, 100 * 365, TimeUnit.DAYS);
+            fail("expected a period of a century to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testSampling() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(FooException.class, RateLimitedAction
+                        .builder(recorder)
+                        .sample(3)
+                        .build());
+
+        handleFoo(errorHandler, 7);
+
+        assertEquals(3, suppressed.size());
+        assertEquals(Long.valueOf(0), suppressed.get(0));
+        assertEquals(Long.valueOf(2), suppressed.get(1));
+        assertEquals(Long.valueOf(2), suppressed.get(2));
+    }
+
+    @Test
+    public void testFingerprintsLimitedSeparately() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(Exception.class, RateLimitedAction
+                        .builder(recorder)
+                        .rate(1, 1, TimeUnit.HOURS)
+                        .fingerprintFrames(0)
+                        .build());
+
+        errorHandler.handle(new FooException("foo"));
+        errorHandler.handle(new FooException("foo"));
+        errorHandler.handle(new BarException("bar"));
+        errorHandler.handle(new BarException("bar"));
+
+        assertEquals(2, suppressed.size());
+    }
+
+    @Test
+    public void testCustomFingerprinter() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(QuxException.class, RateLimitedAction
+                        .builder(recorder)
+                        .rate(1, 1, TimeUnit.HOURS)
+                        .fingerprinter(new RateLimitedAction.Fingerprinter() {
+                            @Override
+                            public long fingerprint(Throwable throwable) {
+                                return RateLimitedAction.fingerprint(throwable, 0) * 31
+                                        + ((QuxException) throwable).getErrorStatus();
+                            }
+                        })
+                        .build());
+
+        errorHandler.handle(new QuxException(500));
+        errorHandler.handle(new QuxException(500));
+        errorHandler.handle(new QuxException(503));
+
+        assertEquals(2, suppressed.size());
+    }
+
+    @Test
+    public void testEvictionKeepsTableBounded() {
+        ErrorHandler errorHandler = ErrorHandler
+                .createIsolated()
+                .on(QuxException.class, RateLimitedAction
+                        .builder(recorder)
+                        .rate(1, 1, TimeUnit.HOURS)
+                        .capacity(4)
+                        .fingerprinter(new RateLimitedAction.Fingerprinter() {
+                            @Override
+                            public long fingerprint(Throwable throwable) {
+                                return ((QuxException) throwable).getErrorStatus();
+                            }
+                        })
+                        .build());
+
+        for (int status = 0; status < 100; status++) {
+            errorHandler.handle(new QuxException(status));
+        }
+        errorHandler.handle(new QuxException(99));
+
+        assertEquals(100, suppressed.size());
+    }
+
+    /**
+     * Errors created here share the same fingerprint, up to the frame of this method
+     */
+    private static void handleFoo(ErrorHandler errorHandler, int times) {
+        for (int i = 0; i < times; i++) {
+            errorHandler.handle(new FooException("foo"));
+        }
+    }
+}
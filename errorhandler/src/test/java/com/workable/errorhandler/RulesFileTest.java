@@ -0,0 +1,224 @@
+package com.workable.errorhandler;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RulesFile} unit tests
+ */
+public class RulesFileTest extends TestCase {
+
+    private File file;
+    private List<String> executed;
+    private ErrorHandler parent;
+
+    protected void setUp() throws IOException {
+        file = File.createTempFile("error-rules", ".conf");
+        executed = new CopyOnWriteArrayList<>();
+        parent = ErrorHandler
+                .createIsolated()
+                .bindClass(Integer.class, new MatcherFactory<Integer>() {
+                    @Override
+                    public Matcher build(final Integer errorCode) {
+                        return new Matcher() {
+                            @Override
+                            public boolean matches(Throwable throwable) {
+                                return throwable instanceof QuxException
+                                        && ((QuxException) throwable).getErrorStatus() == errorCode;
+                            }
+                        };
+                    }
+                });
+    }
+
+    protected void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testRulesRunInFileOrder() throws IOException {
+        write("# comment",
+                "",
+                "code:401 = logout",
+                "class:com.workable.errorhandler.FooException = showFoo, report",
+                "otherwise = showGeneric",
+                "always = log");
+
+        RulesFile rules = builder().build();
+
+        rules.handle(new FooException("foo"));
+        rules.handle(new QuxException(401));
+        rules.handle(new BarException("bar"));
+
+        assertEquals(listOf("showFoo", "report", "log", "logout", "log", "showGeneric", "log"), executed);
+        assertTrue(rules.current().isFrozen());
+    }
+
+    @Test
+    public void testCustomCodeType() throws IOException {
+        write("status:4xx = logout");
+
+        RulesFile rules = builder()
+                .codeType("status", new RulesFile.CodeParser() {
+                    @Override
+                    public Object parse(String value) {
+                        return Integer.valueOf(value.replace("xx", "01"));
+                    }
+                })
+                .build();
+
+        rules.handle(new QuxException(401));
+
+        assertEquals(listOf("logout"), executed);
+    }
+
+    @Test
+    public void testReloadSwapsRulesAsAWhole() throws IOException {
+        write("class:com.workable.errorhandler.FooException = showFoo");
+        RulesFile rules = builder().build();
+        ErrorHandler before = rules.current();
+
+        assertFalse(rules.reloadIfModified());
+
+        write("class:com.workable.errorhandler.FooException = report, log");
+        assertTrue(rules.reloadIfModified());
+
+        before.handle(new FooException("foo"));
+        rules.handle(new FooException("foo"));
+
+        assertEquals(listOf("showFoo", "report", "log"), executed);
+    }
+
+    @Test
+    public void testInvalidFileKeepsCurrentRules() throws IOException {
+        write("class:com.workable.errorhandler.FooException = showFoo");
+        RulesFile rules = builder().build();
+
+        write("class:com.workable.errorhandler.FooException = showFoo",
+                "class:com.workable.errorhandler.BarException = missing");
+        try {
+            rules.reload();
+            fail("expected an invalid rule");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith(":2: unknown action 'missing'"));
+        }
+
+        rules.handle(new FooException("foo"));
+        rules.handle(new BarException("bar"));
+
+        assertEquals(listOf("showFoo"), executed);
+    }
+
+    @Test
+    public void testWatchSurvivesFailingReports() throws Exception {
+        write("always = explode");
+        RulesFile rules = builder()
+                .action("explode", new Action() {
+                    @Override
+                    public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                        executed.add("explode");
+                        throw new IllegalStateException("reporting failed");
+                    }
+                })
+                .build();
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            ErrorHandler initial = rules.current();
+            rules.watch(scheduler, 5, TimeUnit.MILLISECONDS);
+
+            write("always = missing");
+            awaitExecuted("explode");
+            assertSame(initial, rules.current());
+
+            write("always = log");
+            long deadline = System.currentTimeMillis() + 2000;
+            while (rules.current() == initial && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+
+            executed.clear();
+            rules.handle(new FooException("foo"));
+            assertEquals(listOf("log"), executed);
+        } finally {
+            rules.close();
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUnknownCodeType() throws IOException {
+        write("range:500-599 = logout");
+
+        try {
+            builder().build();
+            fail("expected an invalid rule");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith(":1: unknown code type 'range'"));
+        }
+    }
+
+    private void awaitExecuted(String name) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!executed.contains(name) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(executed.contains(name));
+    }
+
+    private RulesFile.Builder builder() {
+        RulesFile.Builder builder = RulesFile.builder(file).parent(parent);
+        for (String name : listOf("logout", "showFoo", "report", "showGeneric", "log")) {
+            builder.action(name, record(name));
+        }
+        return builder;
+    }
+
+    private Action record(final String name) {
+        return new Action() {
+            @Override
+            public void execute(Throwable throwable, ErrorHandler errorHandler) {
+                executed.add(name);
+            }
+        };
+    }
+
+    private void write(String... lines) throws IOException {
+        // replaced through a rename, so that a watch never reads it half-written
+        File next = new File(file.getPath() + ".next");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(next), "UTF-8");
+        try {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        // file systems with a coarse clock may not tell consecutive writes apart
+        next.setLastModified(file.lastModified() + 2000);
+        Files.move(next.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static List<String> listOf(String... values) {
+        List<String> list = new ArrayList<>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}